@@ -0,0 +1,217 @@
+package com.steatoda.nar;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Per-enum metadata shared by all structures describing fields of the same {@link NarField} type.</p>
+ * <p>Enum constants are resolved only once per type, so bit-indexed structures (like {@link NarGraph}) can translate
+ * ordinals back to fields without calling {@link Class#getEnumConstants()} (which clones on each call).</p>
+ *
+ * <p><b>INTERNAL</b></p>
+ *
+ * @param <F> field type
+ */
+final class FieldTable<F extends Enum<F> & NarField> {
+
+	/**
+	 * Returns (shared) table for given field type.
+	 *
+	 * @param clazz field type
+	 * @param <F> field type
+	 *
+	 * @return table describing {@code clazz}
+	 */
+	@SuppressWarnings("unchecked")
+	static <F extends Enum<F> & NarField> FieldTable<F> of(Class<F> clazz) {
+		FieldTable<?> table = Tables.get(clazz);
+		if (table == null) {
+			table = new FieldTable<>(clazz);
+			FieldTable<?> existing = Tables.putIfAbsent(clazz, table);
+			if (existing != null)
+				table = existing;
+		}
+		return (FieldTable<F>) table;
+	}
+
+	private FieldTable(Class<F> clazz) {
+		this.clazz = clazz;
+		this.values = clazz.getEnumConstants();
+		this.wordCount = (values.length + 63) >>> 6;
+		// open-addressing name lookup table, at most half full
+		int capacity = Integer.highestOneBit(Math.max(values.length, 1) * 2) << 1;
+		this.slots = new int[capacity];
+		this.hashes = new int[capacity];
+		for (F value : values) {
+			int hash = value.name().hashCode();
+			int slot = spread(hash) & (capacity - 1);
+			while (slots[slot] != 0)
+				slot = (slot + 1) & (capacity - 1);
+			slots[slot] = value.ordinal() + 1;
+			hashes[slot] = hash;
+		}
+	}
+
+	/** Returns field type described by this table. */
+	Class<F> getDeclaringClass() { return clazz; }
+
+	/** Returns number of fields in described type. */
+	int size() { return values.length; }
+
+	/**
+	 * Returns field with given ordinal.
+	 *
+	 * @param ordinal field's ordinal
+	 *
+	 * @return field with given ordinal
+	 */
+	F get(int ordinal) { return values[ordinal]; }
+
+	/** Returns {@code true} if all fields fit into single {@code long} bitmask. */
+	boolean isRegular() { return values.length <= 64; }
+
+	/** Returns number of {@code long} words needed to hold bitmask of all fields. */
+	int getWordCount() { return wordCount; }
+
+	/** Returns bitmask of all fields for regular types (see {@link #isRegular()}). */
+	long getRegularMask() { return values.length == 64 ? -1L : (1L << values.length) - 1; }
+
+	/**
+	 * Returns mask of all valid bits within given word for jumbo types.
+	 *
+	 * @param word word index
+	 *
+	 * @return mask of valid bits
+	 */
+	long getWordMask(int word) {
+		int bits = values.length - (word << 6);
+		return bits >= 64 ? -1L : (1L << bits) - 1;
+	}
+
+	/** Returns (shared) empty graph of described field type. */
+	NarGraph<F> getEmptyGraph() {
+		NarGraph<F> graph = emptyGraph;
+		if (graph == null)
+			emptyGraph = graph = new NarGraph<>(this, 0L, isRegular() ? null : new long[wordCount], null);
+		return graph;
+	}
+
+	/**
+	 * <p>Returns graph of all fields of described type, recursively descending into sub-objects {@code depth} levels deep
+	 * (depth {@code 1} covers only fields of this type, with empty subgraphs).</p>
+	 * <p>Expansions are memoized per field type and depth, and built from memoized expansions of sub-types, so each distinct
+	 * (type, depth) level is materialized only once and shared by all graphs (and all levels within them) that need it.
+	 * Returned graphs are interned.</p>
+	 *
+	 * @param depth number of levels to expand (at least {@code 1})
+	 *
+	 * @return expanded graph
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	NarGraph<F> getExpandedGraph(int depth) {
+		NarGraph<F> graph = expansions.get(depth);
+		if (graph != null)
+			return graph;
+		NarGraph<?>[] subgraphs = null;
+		if (depth > 1) {
+			for (F value : values) {
+				Class subClass = value.getNarFieldClass();
+				if (subClass == null)
+					continue;
+				if (subgraphs == null)
+					subgraphs = new NarGraph<?>[values.length];
+				// NOTE: can't use computeIfAbsent, since expansion may recurse into this very table (at lower depth)
+				subgraphs[value.ordinal()] = FieldTable.of(subClass).getExpandedGraph(depth - 1);
+			}
+		}
+		long[] words = null;
+		if (!isRegular()) {
+			words = new long[wordCount];
+			for (int word = 0; word < wordCount; ++word)
+				words[word] = getWordMask(word);
+		}
+		graph = new NarGraph<>(this, isRegular() ? getRegularMask() : 0L, words, subgraphs).intern();
+		NarGraph<F> existing = expansions.putIfAbsent(depth, graph);
+		return existing != null ? existing : graph;
+	}
+
+	/**
+	 * Finds field by its name.
+	 *
+	 * @param name field name
+	 *
+	 * @return field with given name or {@code null} if there is no such field
+	 */
+	F lookup(CharSequence name) {
+		return lookup(name, 0, name.length());
+	}
+
+	/**
+	 * Finds field by its name, failing same way {@link Enum#valueOf(Class, String)} does.
+	 *
+	 * @param name field name
+	 *
+	 * @return field with given name
+	 *
+	 * @throws IllegalArgumentException if there is no such field
+	 */
+	F parse(String name) {
+		F field = lookup(name);
+		if (field == null)
+			throw new IllegalArgumentException("No enum constant " + clazz.getCanonicalName() + "." + name);
+		return field;
+	}
+
+	/**
+	 * Finds field whose name equals to {@code value}'s region between {@code start} (inclusive) and {@code end} (exclusive),
+	 * without extracting that region.
+	 *
+	 * @param value string containing field name
+	 * @param start field name's start offset
+	 * @param end field name's end offset
+	 *
+	 * @return field with given name or {@code null} if there is no such field
+	 */
+	F lookup(CharSequence value, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; ++i)
+			hash = 31 * hash + value.charAt(i);	// same as String.hashCode()
+		int mask = slots.length - 1;
+		for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+			if (hashes[slot] != hash)
+				continue;
+			F candidate = values[slots[slot] - 1];
+			if (regionEquals(candidate.name(), value, start, end))
+				return candidate;
+		}
+		return null;
+	}
+
+	private static boolean regionEquals(String name, CharSequence value, int start, int end) {
+		if (name.length() != end - start)
+			return false;
+		for (int i = 0; i < name.length(); ++i)
+			if (name.charAt(i) != value.charAt(start + i))
+				return false;
+		return true;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private static final Map<Class<?>, FieldTable<?>> Tables = new ConcurrentHashMap<>();
+
+	private final Class<F> clazz;
+	private final F[] values;
+	private final int wordCount;
+	/** Name lookup table: field ordinal + 1 (or {@code 0} for empty slot) */
+	private final int[] slots;
+	/** Name lookup table: hash of name in corresponding slot */
+	private final int[] hashes;
+	/** Memoized {@link #getExpandedGraph(int)} results by depth */
+	private final Map<Integer, NarGraph<F>> expansions = new ConcurrentHashMap<>();
+	/** Lazily created empty graph (graphs are immutable, so racing threads may safely create it more than once) */
+	private NarGraph<F> emptyGraph = null;
+
+}
@@ -0,0 +1,399 @@
+package com.steatoda.nar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>Walks field value (single {@link NarObject} or arbitrarily nested {@link Collection}s, {@link Map}s and object arrays
+ * of them) and hands every {@link NarObject} found to a {@link Visitor}.</p>
+ *
+ * <p>Containers are walked depth-first, in iteration order, using explicit stack of iterators instead of recursion, so
+ * nesting depth costs heap instead of call stack. Which parts of map entries are walked is described by field's
+ * {@link NarField#getNarMapContent()}; with {@link NarField.MapContent#Detect} side of entry holding value that's neither
+ * {@link NarObject} nor container (at any depth) is skipped for the rest of that map (no exceptions are used for probing).</p>
+ *
+ * <p>Also holds {@link NarTraversalExecutor#getDefault() default executor} used to process found objects.</p>
+ *
+ * <p><b>INTERNAL</b></p>
+ */
+final class FieldTraversal {
+
+	/** Receives {@link NarObject}s found while walking field value */
+	@FunctionalInterface
+	interface Visitor {
+
+		/**
+		 * Visits found object.
+		 *
+		 * @param object object found
+		 *
+		 * @return {@code true} to continue walking, {@code false} to stop
+		 */
+		boolean visit(NarObject<?, ?> object);
+
+	}
+
+	/**
+	 * Walks {@code value}, visiting every {@link NarObject} found. {@code null}s (both as value and inside containers) are skipped.
+	 *
+	 * @param value field value to walk
+	 * @param field field describing {@code value} (may be {@code null}, in which case map content is detected)
+	 * @param visitor visitor to hand found objects to
+	 *
+	 * @return {@code false} if visitor stopped walking, {@code true} otherwise
+	 *
+	 * @throws IllegalStateException if {@code value} holds anything but {@link NarObject}s, containers of them or {@code null}s
+	 */
+	static boolean walk(Object value, NarField field, Visitor visitor) {
+
+		if (value == null)
+			return true;
+
+		if (value instanceof NarObject)
+			return visitor.visit((NarObject<?, ?>) value);
+
+		NarField.MapContent mapContent = field != null ? field.getNarMapContent() : NarField.MapContent.Detect;
+
+		Deque<Frame> stack = new ArrayDeque<>();
+		stack.push(new Frame(iterator(value, field, mapContent), null));
+
+		while (!stack.isEmpty()) {
+
+			Frame frame = stack.peek();
+			if (!frame.iterator.hasNext()) {
+				stack.pop();
+				continue;
+			}
+
+			Object item = frame.iterator.next();
+
+			if (item == null)
+				continue;
+
+			if (item instanceof NarObject) {
+				if (!visitor.visit((NarObject<?, ?>) item))
+					return false;
+				continue;
+			}
+
+			if (isContainer(item)) {
+				stack.push(new Frame(iterator(item, field, mapContent), frame.isDetecting() ? frame : frame.owner));
+				continue;
+			}
+
+			// plain value: drop whole map side it was found under (if that map is detecting its content)
+			Frame owner = frame.isDetecting() ? frame : frame.owner;
+			while (owner != null) {
+				while (stack.peek() != owner)
+					stack.pop();
+				if (((EntryIterator) owner.iterator).reject())
+					break;
+				// neither side holds Nar objects, so map itself is plain value under its owner's side
+				stack.pop();
+				owner = owner.owner;
+			}
+			if (owner == null)
+				throw new IllegalStateException("Field " + field + " holds value of type " + item.getClass().getName() + " which doesn't support field access");
+
+		}
+
+		return true;
+
+	}
+
+	/**
+	 * Collects every distinct (by identity) {@link NarObject} found in {@code value}, in walking order.
+	 *
+	 * @param value field value to walk
+	 * @param field field describing {@code value}
+	 *
+	 * @return objects found
+	 *
+	 * @throws IllegalStateException if {@code value} holds anything but {@link NarObject}s, containers of them or {@code null}s
+	 */
+	static List<NarObject<?, ?>> collect(Object value, NarField field) {
+		List<NarObject<?, ?>> objects = new ArrayList<>();
+		Set<NarObject<?, ?>> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		walk(value, field, object -> {
+			if (seen.add(object))
+				objects.add(object);
+			return true;
+		});
+		return objects;
+	}
+
+	/**
+	 * Cheaply estimates number of {@link NarObject}s in {@code value}, without walking it. Container's size is multiplied
+	 * by estimate for its first item, i.e. nested containers are assumed to be of similar sizes. Meant for deciding
+	 * whether it's worth to {@link #collect} objects for concurrent processing at all.
+	 *
+	 * @param value field value to estimate
+	 * @param field field describing {@code value} (may be {@code null}, in which case map content is detected)
+	 *
+	 * @return estimated number of objects (capped at {@link Integer#MAX_VALUE})
+	 */
+	static int estimateCount(Object value, NarField field) {
+		NarField.MapContent mapContent = field != null ? field.getNarMapContent() : NarField.MapContent.Detect;
+		long count = value != null ? 1 : 0;
+		while (isContainer(value) && count > 0 && count < Integer.MAX_VALUE) {
+			if (value instanceof Collection) {
+				Collection<?> collection = (Collection<?>) value;
+				count *= collection.size();
+				value = collection.isEmpty() ? null : collection.iterator().next();
+			} else if (value instanceof Object[]) {
+				Object[] array = (Object[]) value;
+				count *= array.length;
+				value = array.length == 0 ? null : array[0];
+			} else {
+				Map<?, ?> map = (Map<?, ?>) value;
+				Map.Entry<?, ?> entry = map.isEmpty() ? null : map.entrySet().iterator().next();
+				count *= mapContent == NarField.MapContent.Both ? 2L * map.size() : map.size();
+				if (entry == null)
+					value = null;
+				else if (mapContent == NarField.MapContent.Keys || (mapContent != NarField.MapContent.Values && !isContainer(entry.getValue())))
+					value = entry.getKey();
+				else
+					value = entry.getValue();
+			}
+		}
+		return (int) Math.min(count, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Checks if {@code objects} may be modified concurrently (as described by {@code graph}), i.e. if none of their
+	 * sub-objects (at any depth reachable through fields in {@code graph} holding {@link NarObject}s) is shared with
+	 * another one of them, or is one of them.
+	 *
+	 * @param objects distinct (by identity) objects to check
+	 * @param graph graph describing fields objects are modified by (may be {@code null})
+	 *
+	 * @return {@code true} if objects' subtrees are disjoint, {@code false} otherwise
+	 *
+	 * @throws IllegalStateException if some field value holds anything but {@link NarObject}s, containers of them or {@code null}s
+	 */
+	static boolean isDisjoint(List<NarObject<?, ?>> objects, NarGraph<?> graph) {
+		if (graph == null)
+			return true;
+		Map<NarObject<?, ?>, NarObject<?, ?>> owners = new IdentityHashMap<>();
+		for (NarObject<?, ?> object : objects)
+			owners.put(object, object);
+		Deque<NarObject<?, ?>> pendingObjects = new ArrayDeque<>();
+		Deque<NarGraph<?>> pendingGraphs = new ArrayDeque<>();
+		for (NarObject<?, ?> root : objects) {
+			pendingObjects.push(root);
+			pendingGraphs.push(graph);
+			while (!pendingObjects.isEmpty())
+				if (!claimSubObjects(root, pendingObjects.pop(), pendingGraphs.pop(), owners, pendingObjects, pendingGraphs))
+					return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Indexes every {@link NarObject} found in {@code value} by its {@link #indexKey(NarObject)}. If multiple objects share
+	 * the same key, the first one found is indexed.
+	 *
+	 * @param value field value to index
+	 * @param field field describing {@code value}
+	 *
+	 * @return index
+	 *
+	 * @throws IllegalStateException if {@code value} holds anything but {@link NarObject}s, containers of them or {@code null}s
+	 */
+	static Map<Object, NarObject<?, ?>> index(Object value, NarField field) {
+		Map<Object, NarObject<?, ?>> index = new HashMap<>();
+		walk(value, field, object -> {
+			index.putIfAbsent(indexKey(object), object);
+			return true;
+		});
+		return index;
+	}
+
+	/**
+	 * Returns key under which {@code object} is indexed: ID for {@link NarEntity}s (that have one), object itself (thus
+	 * matched using its {@link Object#equals}) otherwise.
+	 *
+	 * @param object object to return index key for
+	 *
+	 * @return index key
+	 */
+	static Object indexKey(NarObject<?, ?> object) {
+		if (object instanceof NarEntity) {
+			Object id = ((NarEntity<?, ?, ?>) object).getId();
+			if (id != null)
+				return id;
+		}
+		return object;
+	}
+
+	/**
+	 * Claims (for {@code root}) every sub-object of {@code object} reachable through fields in {@code graphRaw}, queueing
+	 * newly claimed ones (that have subgraph) for descent.
+	 *
+	 * @return {@code false} if some sub-object is already claimed by another root, {@code true} otherwise
+	 */
+	@SuppressWarnings("unchecked")
+	private static <F extends Enum<F> & NarField> boolean claimSubObjects(
+		NarObject<?, ?> root, NarObject<?, ?> objectRaw, NarGraph<?> graphRaw,
+		Map<NarObject<?, ?>, NarObject<?, ?>> owners, Deque<NarObject<?, ?>> pendingObjects, Deque<NarGraph<?>> pendingGraphs
+	) {
+		// Java type erasure...
+		NarObject<?, F> object = (NarObject<?, F>) objectRaw;
+		NarGraph<F> graph = (NarGraph<F>) graphRaw;
+		for (F field : graph) {
+			if (field.getNarFieldClass() == null || !object.getFields().contains(field))
+				continue;
+			NarGraph<?> subgraph = graph.getGraph(field);
+			boolean disjoint = walk(object.getFieldValue(field), field, subObject -> {
+				NarObject<?, ?> owner = owners.putIfAbsent(subObject, root);
+				if (owner != null)
+					return owner == root;
+				if (subgraph != null) {
+					pendingObjects.push(subObject);
+					pendingGraphs.push(subgraph);
+				}
+				return true;
+			});
+			if (!disjoint)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if {@code value} is container that may be walked. Object arrays (of any dimension) are containers, while
+	 * primitive arrays are not, since they can't hold {@link NarObject}s.
+	 */
+	private static boolean isContainer(Object value) {
+		return value instanceof Collection || value instanceof Map || value instanceof Object[];
+	}
+
+	private static Iterator<?> iterator(Object container, NarField field, NarField.MapContent mapContent) {
+		if (container instanceof Collection)
+			return ((Collection<?>) container).iterator();
+		if (container instanceof Object[])
+			return Arrays.asList((Object[]) container).iterator();
+		if (container instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) container;
+			switch (mapContent) {
+				case Keys:		return map.keySet().iterator();
+				case Values:	return map.values().iterator();
+				case Both:		return new EntryIterator(map, field, false);
+				case Detect:	return new EntryIterator(map, field, true);
+			}
+		}
+		throw new IllegalStateException("Field " + field + " holds value of type " + container.getClass().getName() + " which doesn't support field access");
+	}
+
+	/** Iterates over keys and values of map entries (key first), optionally dropping side that turns out to hold plain values */
+	private static class EntryIterator implements Iterator<Object> {
+
+		EntryIterator(Map<?, ?> map, NarField field, boolean detect) {
+			this.entries = map.entrySet().iterator();
+			this.field = field;
+			this.detect = detect;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (pendingKey || pendingValue)
+				return true;
+			while (entries.hasNext()) {
+				entry = entries.next();
+				if (processKey) {
+					pendingKey = true;
+					pendingValue = processValue;
+					return true;
+				}
+				if (processValue) {
+					pendingValue = true;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Object next() {
+			if (!pendingKey && !pendingValue && !hasNext())
+				throw new NoSuchElementException();
+			if (pendingKey) {
+				pendingKey = false;
+				lastWasKey = true;
+				return entry.getKey();
+			}
+			pendingValue = false;
+			lastWasKey = false;
+			return entry.getValue();
+		}
+
+		/**
+		 * Checks if this iterator drops side that turns out to hold plain values.
+		 *
+		 * @return {@code true} if map content is being detected, {@code false} if it's declared
+		 */
+		boolean isDetecting() {
+			return detect;
+		}
+
+		/**
+		 * Drops side of last returned item (which is, or contains, plain value) for the rest of the map.
+		 *
+		 * @return {@code true} if other side is still walked, {@code false} if neither keys nor values hold Nar objects
+		 */
+		boolean reject() {
+			if (lastWasKey)
+				processKey = false;
+			else
+				processValue = false;
+			pendingValue &= processValue;
+			return processKey || processValue;
+		}
+
+		private final Iterator<? extends Map.Entry<?, ?>> entries;
+		private final NarField field;
+		private final boolean detect;
+		private Map.Entry<?, ?> entry;
+		private boolean processKey = true;
+		private boolean processValue = true;
+		private boolean pendingKey = false;
+		private boolean pendingValue = false;
+		private boolean lastWasKey = false;
+
+	}
+
+	/** Iterator on walking stack, together with frame owning map side it walks */
+	private static class Frame {
+
+		Frame(Iterator<?> iterator, Frame owner) {
+			this.iterator = iterator;
+			this.owner = owner;
+		}
+
+		boolean isDetecting() {
+			return iterator instanceof EntryIterator && ((EntryIterator) iterator).isDetecting();
+		}
+
+		private final Iterator<?> iterator;
+		/** Nearest enclosing frame detecting content of map whose side is being walked (or {@code null} if there's none) */
+		private final Frame owner;
+
+	}
+
+	/** Executor used to process found objects (see {@link NarTraversalExecutor#setDefault}) */
+	static volatile NarTraversalExecutor executor = NarTraversalExecutor.Sequential;
+
+	private FieldTraversal() {}
+
+}
@@ -0,0 +1,31 @@
+package com.steatoda.nar;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * <p>Pool of canonical {@link NarGraph}s, backing {@link NarGraph#intern()}.</p>
+ *
+ * <p>Holds graphs weakly, so graphs no longer referenced elsewhere (e.g. ones parsed from request input) are garbage
+ * collected. GWT, which lacks weak references, uses its own (super-sourced) implementation.</p>
+ *
+ * <p><b>INTERNAL</b></p>
+ */
+final class GraphPool {
+
+	/**
+	 * Returns canonical instance of {@code graph}, pooling it if there's none yet.
+	 *
+	 * @param graph graph to intern
+	 *
+	 * @return pooled graph structurally equal to {@code graph}
+	 */
+	static NarGraph<?> intern(NarGraph<?> graph) {
+		return Pool.intern(graph);
+	}
+
+	private static final Interner<NarGraph<?>> Pool = Interners.newWeakInterner();
+
+	private GraphPool() {}
+
+}
@@ -0,0 +1,92 @@
+package com.steatoda.nar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Groups entities by graph missing from them, so that each group may be fetched using one (multi-ID) call, and
+ * merges fetched extensions back into grouped entities.</p>
+ *
+ * <p>Entities having the same ID (e.g. multiple instances of the same entity) are grouped under one ID, but each
+ * instance is extended separately (and possibly with different graph).</p>
+ *
+ * <p><b>INTERNAL</b></p>
+ *
+ * @param <I> ID type
+ * @param <C> entity type
+ * @param <F> field type
+ */
+final class MissingGraphGroups<I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> {
+
+	/**
+	 * Groups {@code entities} by graph missing from them. Entities already having {@code graph} are skipped.
+	 *
+	 * @param entities entities to group
+	 * @param graph graph entities should have
+	 *
+	 * @throws EntityUnavailableException if entity missing some fields has no ID
+	 */
+	MissingGraphGroups(Collection<C> entities, NarGraph<F> graph) throws EntityUnavailableException {
+		for (C entity : entities) {
+			NarGraph<F> missingGraph = entity.getMissingGraph(graph);
+			if (missingGraph.isEmpty())
+				continue;
+			if (entity.getId() == null)
+				throw new EntityUnavailableException(entity);
+			groups.computeIfAbsent(missingGraph, g -> new LinkedHashMap<>()).computeIfAbsent(entity.getId(), id -> new ArrayList<>()).add(entity);
+		}
+	}
+
+	/**
+	 * Checks if no entity is missing any field.
+	 *
+	 * @return {@code true} if there's nothing to fetch
+	 */
+	boolean isEmpty() {
+		return groups.isEmpty();
+	}
+
+	/**
+	 * Returns distinct graphs missing from grouped entities.
+	 *
+	 * @return missing graphs
+	 */
+	Collection<NarGraph<F>> getMissingGraphs() {
+		return groups.keySet();
+	}
+
+	/**
+	 * Returns IDs of entities missing {@code missingGraph}.
+	 *
+	 * @param missingGraph one of {@link #getMissingGraphs()}
+	 *
+	 * @return IDs (without duplicates)
+	 */
+	Collection<I> getIds(NarGraph<F> missingGraph) {
+		return groups.get(missingGraph).keySet();
+	}
+
+	/**
+	 * Extends entities missing {@code missingGraph} with fetched {@code extensions}.
+	 *
+	 * @param missingGraph one of {@link #getMissingGraphs()}
+	 * @param extensions fetched extensions, mapped by ID
+	 *
+	 * @throws EntityUnavailableException if extension for some entity is not fetched
+	 */
+	void extend(NarGraph<F> missingGraph, Map<I, C> extensions) throws EntityUnavailableException {
+		for (Map.Entry<I, List<C>> entry : groups.get(missingGraph).entrySet()) {
+			C extension = extensions.get(entry.getKey());
+			if (extension == null)
+				throw new EntityUnavailableException(entry.getKey());
+			for (C entity : entry.getValue())
+				entity._extend(extension, missingGraph);
+		}
+	}
+
+	private final Map<NarGraph<F>, Map<I, List<C>>> groups = new LinkedHashMap<>();
+
+}
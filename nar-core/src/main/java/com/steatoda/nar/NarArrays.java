@@ -0,0 +1,224 @@
+package com.steatoda.nar;
+
+/**
+ * <p>Helpers for copying array-valued fields, usually from {@link NarObject#pull(Enum, NarObject, NarGraph)} implementations.</p>
+ *
+ * <p>Every dimension is copied in bulk using array's own {@code clone()}, so large numeric payloads (e.g. {@code int[][]}
+ * matrices) are copied row by row instead of element by element. All methods return {@code null} for {@code null} arrays
+ * and keep {@code null} rows as they are.</p>
+ *
+ * <blockquote><pre>
+ * case depths:	return pull(other, other::getDepths,	this::setDepths,	NarArrays::copyOf);
+ * case crew:	return pull(other, other::getCrew,		this::setCrew,		value -&gt; NarArrays.clone(value, field, graph));
+ * </pre></blockquote>
+ */
+public final class NarArrays {
+
+	/**
+	 * Copies two-dimensional {@code boolean} array.
+	 *
+	 * @param array array to copy
+	 *
+	 * @return copy
+	 */
+	public static boolean[][] copyOf(boolean[][] array) {
+		if (array == null)
+			return null;
+		boolean[][] copy = array.clone();
+		for (int i = 0; i < copy.length; ++i)
+			if (copy[i] != null)
+				copy[i] = copy[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Copies two-dimensional {@code byte} array.
+	 *
+	 * @param array array to copy
+	 *
+	 * @return copy
+	 */
+	public static byte[][] copyOf(byte[][] array) {
+		if (array == null)
+			return null;
+		byte[][] copy = array.clone();
+		for (int i = 0; i < copy.length; ++i)
+			if (copy[i] != null)
+				copy[i] = copy[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Copies two-dimensional {@code char} array.
+	 *
+	 * @param array array to copy
+	 *
+	 * @return copy
+	 */
+	public static char[][] copyOf(char[][] array) {
+		if (array == null)
+			return null;
+		char[][] copy = array.clone();
+		for (int i = 0; i < copy.length; ++i)
+			if (copy[i] != null)
+				copy[i] = copy[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Copies two-dimensional {@code short} array.
+	 *
+	 * @param array array to copy
+	 *
+	 * @return copy
+	 */
+	public static short[][] copyOf(short[][] array) {
+		if (array == null)
+			return null;
+		short[][] copy = array.clone();
+		for (int i = 0; i < copy.length; ++i)
+			if (copy[i] != null)
+				copy[i] = copy[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Copies two-dimensional {@code int} array.
+	 *
+	 * @param array array to copy
+	 *
+	 * @return copy
+	 */
+	public static int[][] copyOf(int[][] array) {
+		if (array == null)
+			return null;
+		int[][] copy = array.clone();
+		for (int i = 0; i < copy.length; ++i)
+			if (copy[i] != null)
+				copy[i] = copy[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Copies two-dimensional {@code long} array.
+	 *
+	 * @param array array to copy
+	 *
+	 * @return copy
+	 */
+	public static long[][] copyOf(long[][] array) {
+		if (array == null)
+			return null;
+		long[][] copy = array.clone();
+		for (int i = 0; i < copy.length; ++i)
+			if (copy[i] != null)
+				copy[i] = copy[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Copies two-dimensional {@code float} array.
+	 *
+	 * @param array array to copy
+	 *
+	 * @return copy
+	 */
+	public static float[][] copyOf(float[][] array) {
+		if (array == null)
+			return null;
+		float[][] copy = array.clone();
+		for (int i = 0; i < copy.length; ++i)
+			if (copy[i] != null)
+				copy[i] = copy[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Copies two-dimensional {@code double} array.
+	 *
+	 * @param array array to copy
+	 *
+	 * @return copy
+	 */
+	public static double[][] copyOf(double[][] array) {
+		if (array == null)
+			return null;
+		double[][] copy = array.clone();
+		for (int i = 0; i < copy.length; ++i)
+			if (copy[i] != null)
+				copy[i] = copy[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Deeply copies object array: nested arrays (of any dimension, including primitive ones) are copied, while all
+	 * other elements (including {@link NarObject}s) are copied by reference.
+	 *
+	 * @param array array to copy
+	 *
+	 * @param <T> component type
+	 *
+	 * @return copy
+	 */
+	public static <T> T[] copyOf(T[] array) {
+		return copy(array, false, null, null);
+	}
+
+	/**
+	 * Deeply copies object array like {@link #copyOf(Object[])}, but also clones every {@link NarObject} it (possibly
+	 * nested) holds using {@code field}'s subgraph (see {@link NarObject#clone(Enum, NarGraph)}).
+	 *
+	 * @param array array to copy
+	 * @param field field holding {@code array}
+	 * @param graph graph from which to extract {@code field}'s subgraph
+	 *
+	 * @param <T> component type
+	 * @param <F> field type
+	 *
+	 * @return copy
+	 */
+	public static <T, F extends Enum<F> & NarField> T[] clone(T[] array, F field, NarGraph<F> graph) {
+		return copy(array, true, field, graph);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T, F extends Enum<F> & NarField> T[] copy(T[] array, boolean cloneObjects, F field, NarGraph<F> graph) {
+		if (array == null)
+			return null;
+		T[] copy = array.clone();
+		for (int i = 0; i < copy.length; ++i) {
+			Object element = copy[i];
+			if (element instanceof Object[])
+				copy[i] = (T) copy((Object[]) element, cloneObjects, field, graph);
+			else if (element instanceof NarObject && cloneObjects)
+				copy[i] = (T) ((NarObject<?, ?>) element).clone(field, graph);
+			else if (element != null)
+				copy[i] = (T) copyPrimitive(element);
+		}
+		return copy;
+	}
+
+	/** Copies primitive array, returns any other value as is */
+	private static Object copyPrimitive(Object value) {
+		if (value instanceof int[])
+			return ((int[]) value).clone();
+		if (value instanceof long[])
+			return ((long[]) value).clone();
+		if (value instanceof double[])
+			return ((double[]) value).clone();
+		if (value instanceof float[])
+			return ((float[]) value).clone();
+		if (value instanceof byte[])
+			return ((byte[]) value).clone();
+		if (value instanceof short[])
+			return ((short[]) value).clone();
+		if (value instanceof char[])
+			return ((char[]) value).clone();
+		if (value instanceof boolean[])
+			return ((boolean[]) value).clone();
+		return value;
+	}
+
+	private NarArrays() {}
+
+}
@@ -4,8 +4,11 @@ import com.steatoda.nar.service.NarService;
 import com.steatoda.nar.service.async.NarDelegatingServiceHandler;
 import com.steatoda.nar.service.async.NarAsyncService;
 import com.steatoda.nar.service.async.NarRequest;
+import com.steatoda.nar.service.async.NarRequestGroup;
 import com.steatoda.nar.service.async.NarServiceHandler;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -83,6 +86,28 @@ public interface NarEntity<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 		return extend(graph, missingGraph -> service.get(getId(), missingGraph));
 	}
 
+	/**
+	 * <p>Ensures entity has all requested fields, fetching missing ones using services registered in {@code resolver}.
+	 * Descends to subobject and fetches their fields, too.</p>
+	 *
+	 * <p>Unlike {@link #extend(NarGraph, NarService)}, which re-fetches whole field if any of (possibly many) sub-entities
+	 * it holds is incomplete, fetches only incomplete sub-entities (by their ID) and extends them in place, as long as
+	 * service for their type is registered.</p>
+	 *
+	 * @param graph field graph to set if missing
+	 * @param resolver resolver holding services which can provide entity and its sub-entities with missing fields
+	 *
+	 * @return {@code true} if entity (or any of its sub-entities) was extended, {@code false} if no extension was needed (nor performed)
+	 *
+	 * @throws EntityUnavailableException if missing (sub)fields can't be fetched
+	 *
+	 * @see NarGraphResolver#extend(NarEntity, NarGraph)
+	 */
+	@SuppressWarnings("unchecked")
+	default boolean extend(NarGraph<F> graph, NarGraphResolver resolver) throws EntityUnavailableException {
+		return resolver.extend((C) this, graph);
+	}
+
 	/**
 	 * Ensures entity has all requested fields, fetching missing ones <u>asynchronously</u> using {@code resolver} if necessary.
 	 * Descends to subobject and fetches their fields, too.
@@ -129,4 +154,119 @@ public interface NarEntity<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 		return extend(graph, (missingGraph, handler2) -> service.get(getId(), missingGraph, handler2), handler);
 	}
 
+
+	/**
+	 * <p>Ensures all {@code entities} have all requested fields, fetching missing ones using {@code resolver} if necessary.
+	 * Descends to subobject and fetches their fields, too.</p>
+	 *
+	 * <p>Entities are grouped by graph missing from them and each group is fetched using <u>one</u> {@code resolver}
+	 * invocation, which receives IDs of group's entities and should return extensions mapped by ID.</p>
+	 *
+	 * @param entities entities to extend
+	 * @param graph field graph to set if missing
+	 * @param resolver resolver which can provide entities with given IDs with missing fields
+	 *
+	 * @param <I> ID type
+	 * @param <C> entity type
+	 * @param <F> field type
+	 *
+	 * @return {@code true} if any entity was extended, {@code false} if no extension was needed (nor performed)
+	 *
+	 * @throws EntityUnavailableException if missing (sub)fields can't be fetched from service
+	 * 			(includes missing collection members)
+	 */
+	static <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> boolean extendAll(Collection<C> entities, NarGraph<F> graph, BiFunction<Collection<I>, NarGraph<F>, Map<I, C>> resolver) throws EntityUnavailableException {
+
+		MissingGraphGroups<I, C, F> groups = new MissingGraphGroups<>(entities, graph);
+
+		for (NarGraph<F> missingGraph : groups.getMissingGraphs()) {
+			Collection<I> ids = groups.getIds(missingGraph);
+			Map<I, C> extensions;
+			try {
+				extensions = resolver.apply(ids, missingGraph);
+			} catch (Exception e) {
+				throw new EntityUnavailableException(ids.toString(), e);
+			}
+			groups.extend(missingGraph, extensions);
+		}
+
+		return !groups.isEmpty();
+
+	}
+
+	/**
+	 * Ensures all {@code entities} have all requested fields, fetching missing ones using {@code service} if necessary.
+	 * Descends to subobject and fetches their fields, too.
+	 *
+	 * @param entities entities to extend
+	 * @param graph field graph to set if missing
+	 * @param service service which can provide entities with missing fields
+	 *
+	 * @param <I> ID type
+	 * @param <C> entity type
+	 * @param <F> field type
+	 *
+	 * @return {@code true} if any entity was extended, {@code false} if no extension was needed (nor performed)
+	 *
+	 * @throws EntityUnavailableException if missing (sub)fields can't be fetched from service
+	 * 			(includes missing collection members)
+	 *
+	 * @see #extendAll(Collection, NarGraph, BiFunction)
+	 * @see NarService#getAll
+	 */
+	static <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> boolean extendAll(Collection<C> entities, NarGraph<F> graph, NarService<I, C, F> service) throws EntityUnavailableException {
+		return extendAll(entities, graph, service::getAll);
+	}
+
+	/**
+	 * <p>Ensures all {@code entities} have all requested fields, fetching missing ones <u>asynchronously</u> using
+	 * {@code service} if necessary. Descends to subobject and fetches their fields, too.</p>
+	 *
+	 * <p>Entities are grouped by graph missing from them, just like in {@link #extendAll(Collection, NarGraph, BiFunction)},
+	 * and all groups are fetched concurrently, each using one {@link NarAsyncService#getAll} invocation. Handler is
+	 * notified with {@code entities} once all of them are extended, or about failure if any of them can't be.</p>
+	 *
+	 * @param entities entities to extend
+	 * @param graph field graph to set if missing
+	 * @param service asynchronous service which can provide entities with missing fields
+	 * @param handler asynchronous handler
+	 *
+	 * @param <I> ID type
+	 * @param <C> entity type
+	 * @param <F> field type
+	 *
+	 * @return {@link NarRequest} describing this asynchronous operation, or {@code null} if it failed before any
+	 * 			request was made (e.g. because entity missing some fields has no ID)
+	 */
+	static <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> NarRequest extendAll(Collection<C> entities, NarGraph<F> graph, NarAsyncService<I, C, F> service, NarServiceHandler<Collection<C>> handler) {
+
+		MissingGraphGroups<I, C, F> groups;
+		try {
+			groups = new MissingGraphGroups<>(entities, graph);
+		} catch (EntityUnavailableException e) {
+			// no request was made, so there's nothing to cancel nor post-request to report
+			try {
+				handler.onFail();
+			} finally {
+				try {
+					handler.onFinish();
+				} finally {
+					handler.onDestroy();
+				}
+			}
+			return null;
+		}
+
+		NarRequestGroup<Collection<C>> request = new NarRequestGroup<>(handler);
+
+		for (NarGraph<F> missingGraph : groups.getMissingGraphs())
+			request.<Map<I, C>>add(
+				handler2 -> service.getAll(groups.getIds(missingGraph), missingGraph, handler2),
+				extensions -> groups.extend(missingGraph, extensions)
+			);
+
+		return request.start(() -> entities);
+
+	}
+
 }
@@ -28,6 +28,7 @@ public abstract class NarEntityBase<I, C extends NarEntityBase<I, C, F>, F exten
 	@Override
 	@SuppressWarnings("unchecked")
 	public C setId(I id) {
+		checkNotFrozen();
 		this.id = id;
 		return (C) this;
 	}
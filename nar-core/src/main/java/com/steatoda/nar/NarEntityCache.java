@@ -3,10 +3,11 @@ package com.steatoda.nar;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Predicate;
 
 import com.google.common.collect.Sets;
@@ -20,7 +21,9 @@ import com.steatoda.nar.service.NarService;
  * 
  * <p>Entities will be stored incrementally, as additional fields are requested.</p>
  * 
- * <p>Thread-safe.</p>
+ * <p>Thread-safe. Cached entities are never modified in place: every update atomically replaces cached entity with
+ * modified copy, so operations on different entities never block each other and concurrent updates of the same
+ * entity are never lost.</p>
 
  * @param <I> ID type
  * @param <C> class implementing {@link NarEntity}
@@ -66,6 +69,7 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 
 		this.cacheableFields = cacheableFields;
 		this.precachedFields = precachedFields;
+		this.precachedGraph = precachedFields.isEmpty() ? NarGraph.noneOf(cacheableFields.iterator().next().getDeclaringClass()) : NarGraph.of(precachedFields);
 
 	}
 
@@ -89,7 +93,9 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 
 	/**
 	 * <p>Returns entity using any stored data that may be available.</p>
-	 * <p>Entity represents <u>copy</u> of cached value, so it's safe to further modify it.</p>
+	 * <p>Entity represents <u>copy</u> of cached value (see {@link NarObject#cloneShared()}), so it's safe to further modify
+	 * it using setters or Nar operations (e.g. extending). Values read through its getters are shared with cached value,
+	 * though, and have to be {@link NarObject#unshare(Enum) unshared} before being modified in place.</p>
 	 * <p>Once retrieved, entity is cached (requested fields + precached fields) so subsequesnt retrievals will only use cache.</p>
 	 *
 	 * @param id ID of entity to retrieve
@@ -105,7 +111,7 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 		// refresh cache for sure if we didn't had entity cached at all
 		boolean refreshCache = entity == null;
 
-		NarGraph<F> extendedGraph = NarGraph.Builder.of(graph).add(precachedFields).build();
+		NarGraph<F> extendedGraph = graph.union(precachedGraph);
 
 		if (entity == null) {
 			// we don't have this entity cached, delegate to service
@@ -130,24 +136,77 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 		
 	}
 
+	/**
+	 * <p>Returns entities with given IDs using any stored data that may be available, just like {@link #get(Object, NarGraph, NarService)}.</p>
+	 * <p>Entities not found in cache are fetched using <u>one</u> {@link NarService#getAll} invocation, while cached
+	 * entities missing some fields are extended using {@link NarEntity#extendAll(Collection, NarGraph, NarService)}.</p>
+	 *
+	 * @param ids IDs of entities to retrieve
+	 * @param graph fields to retrieve
+	 * @param service {@link NarService} implementation to use when ID is not found in cache (or some fields are missing)
+	 *
+	 * @return entities with (sub)fields initialized as specified by {@code graph} mapped by ID; entities that don't exist are not present
+	 */
+	public Map<I, C> getAll(Collection<I> ids, NarGraph<F> graph, NarService<I, C, F> service) {
+
+		NarGraph<F> extendedGraph = graph.union(precachedGraph);
+
+		Map<I, C> entities = new HashMap<>();
+		Map<I, Set<F>> cachedFields = new HashMap<>();
+		Set<I> uncachedIds = new HashSet<>();
+
+		for (I id : ids) {
+			if (entities.containsKey(id) || uncachedIds.contains(id))
+				continue;
+			C entity = get(id);
+			if (entity == null) {
+				uncachedIds.add(id);
+				continue;
+			}
+			entities.put(id, entity);
+			cachedFields.put(id, entity.getFields().isEmpty() ? EnumSet.noneOf(entity.getFieldsClass()) : EnumSet.copyOf(entity.getFields()));
+		}
+
+		if (!entities.isEmpty()) {
+			// we found (something) stored
+			NarEntity.extendAll(entities.values(), extendedGraph, service);
+			// refresh cache if we now (after extend) have more cacheable fields than was present in cache
+			for (C entity : entities.values())
+				if (!cachedFields.get(entity.getId()).containsAll(Sets.intersection(entity.getFields(), cacheableFields)))
+					merge(entity);
+		}
+
+		if (!uncachedIds.isEmpty()) {
+			// we don't have these entities cached, delegate to service
+			for (Map.Entry<I, C> entry : service.getAll(uncachedIds, extendedGraph).entrySet()) {
+				merge(entry.getValue());
+				entities.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		// strip to only fields caller requested
+		for (C entity : entities.values())
+			entity.intersect(graph);
+
+		return entities;
+
+	}
+
 	/**
 	 * <p>Returns cached entity, returning {@code null} if entity doesn't exist in cache.</p>
-	 * <p>Entity represents <u>copy</u> of cached value, so it's safe to further modify it.</p>
+	 * <p>Entity represents <u>copy</u> of cached value (see {@link NarObject#cloneShared()}), so it's safe to further modify
+	 * it using setters or Nar operations (e.g. extending). Values read through its getters are shared with cached value,
+	 * though, and have to be {@link NarObject#unshare(Enum) unshared} before being modified in place.</p>
 	 *
 	 * @param id ID of entity to retrieve
 	 *
 	 * @return entity with cached fields initialized or {@code null} if entity isn't cached
 	 */
 	public C get(I id) {
-		lock.readLock().lock();
-		try {
-			C entity = cache.get(id);
-			if (entity != null)
-				entity = entity.cloneAll();	// clone stored value for safe future modifications
-			return entity;
-		} finally {
-			lock.readLock().unlock();
-		}
+		C entity = cache.get(id);
+		if (entity != null)
+			entity = entity.cloneShared();	// clone stored value for safe future modifications (cache replaces values, but never modifies them in place)
+		return entity;
 	}
 
 	/**
@@ -163,12 +222,7 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 		if (entityToCache.getFields().isEmpty())
 			return;	// nothing to cache
 		
-		lock.writeLock().lock();
-		try {
-			cache.put(entityToCache.getId(), entityToCache);
-		} finally {
-			lock.writeLock().unlock();
-		}
+		cache.put(entityToCache.getId(), entityToCache);
 		
 	}
 
@@ -184,42 +238,21 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 		if (entityToCache.getFields().isEmpty())
 			return;	// nothing to cache
 		
-		lock.readLock().lock();
-		
-		try {
-		
-			C cached = cache.get(entityToCache.getId());
-			
-			lock.readLock().unlock();
-			lock.writeLock().lock();
-			
-			try {
-
-				if (cached == null)
-					cache.put(entityToCache.getId(), entityToCache);
-				else
-					cached.pull(entityToCache);
-
-				lock.readLock().lock();
-				
-			} finally {
-				lock.writeLock().unlock();
-			}
-
-		} finally {
-			lock.readLock().unlock();
-		}
+		cache.compute(entityToCache.getId(), (id, cached) -> {
+			if (cached == null)
+				return entityToCache;
+			// new values win, but keep cached fields new entity doesn't have
+			Set<F> cachedOnlyFields = Sets.difference(cached.getFields(), entityToCache.getFields()).immutableCopy();
+			if (!cachedOnlyFields.isEmpty())
+				entityToCache.pull(cached, cachedOnlyFields);
+			return entityToCache;
+		});
 
 	}
 
 	/** Removes all cached entities. */
 	public void clear() {
-		lock.writeLock().lock();
-		try {
-			cache.clear();
-		} finally {
-			lock.writeLock().unlock();
-		}
+		cache.clear();
 	}
 
 	/**
@@ -237,12 +270,7 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 	 * @param id entity's ID
 	 */
 	public void clear(I id) {
-		lock.writeLock().lock();
-		try {
-			cache.remove(id);
-		} finally {
-			lock.writeLock().unlock();
-		}
+		cache.remove(id);
 	}
 
 	/**
@@ -262,22 +290,7 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 	 * @param fields fields to clear
 	 */
 	public void clear(I id, Set<F> fields) {
-		lock.readLock().lock();
-		try {
-			C cached = cache.get(id);
-			if (cached == null)
-				return;
-			lock.readLock().unlock();
-			lock.writeLock().lock();
-			try {
-				cached.clearFields(fields);
-				lock.readLock().lock();
-			} finally {
-				lock.writeLock().unlock();
-			}
-		} finally {
-			lock.readLock().unlock();
-		}
+		cache.computeIfPresent(id, (key, cached) -> withoutFields(cached, fields));
 	}
 
 	/**
@@ -286,12 +299,7 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 	 * @param filter filter to select entities to clear
 	 */
 	public void clearMatching(Predicate<C> filter) {
-		lock.writeLock().lock();
-		try {
-			cache.values().removeIf(filter);
-		} finally {
-			lock.writeLock().unlock();
-		}
+		cache.values().removeIf(filter);
 	}
 
 	/**
@@ -301,14 +309,7 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 	 * @param fields fields to clear
 	 */
 	public void clearMatching(Predicate<C> filter, Set<F> fields) {
-		lock.writeLock().lock();
-		try {
-			for (C cached : cache.values())
-				if (!Sets.intersection(cached.getFields(), fields).isEmpty() && filter.test(cached))
-					cached.clearFields(fields);
-		} finally {
-			lock.writeLock().unlock();
-		}
+		cache.replaceAll((id, cached) -> !Sets.intersection(cached.getFields(), fields).isEmpty() && filter.test(cached) ? withoutFields(cached, fields) : cached);
 	}
 
 	/**
@@ -317,12 +318,7 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 	 * @param entities entities to remove from cache
 	 */
 	public void clearEntities(Collection<C> entities) {
-		lock.writeLock().lock();
-		try {
-			cache.values().removeAll(entities);
-		} finally {
-			lock.writeLock().unlock();
-		}
+		cache.values().removeAll(entities);
 	}
 
 	/**
@@ -341,12 +337,7 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 	 * @param ids IDs of entities to remove from cache
 	 */
 	public void clearAll(Collection<I> ids) {
-		lock.writeLock().lock();
-		try {
-			cache.keySet().removeAll(ids);
-		} finally {
-			lock.writeLock().unlock();
-		}
+		cache.keySet().removeAll(ids);
 	}
 
 	/**
@@ -375,9 +366,29 @@ public class NarEntityCache<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 		
 	}
 
+	/**
+	 * Returns copy of cached entity without given fields (or {@code cached} itself if it doesn't have any of them).
+	 *
+	 * @param cached cached entity
+	 * @param fields fields to clear
+	 *
+	 * @return {@code cached}'s copy to store in cache instead of {@code cached}
+	 */
+	private C withoutFields(C cached, Set<F> fields) {
+
+		if (Sets.intersection(cached.getFields(), fields).isEmpty())
+			return cached;
+
+		Set<F> remainingFields = Sets.difference(cached.getFields(), fields);
+		NarGraph<F> graph = !remainingFields.isEmpty() ? NarGraph.of(remainingFields) : NarGraph.noneOf(cached.getFieldsClass());
+
+		return cached.clone(graph);
+
+	}
+
 	private final Set<F> cacheableFields;
 	private final Set<F> precachedFields;
-	private final Map<I, C> cache = new HashMap<>();
-	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final NarGraph<F> precachedGraph;
+	private final ConcurrentMap<I, C> cache = new ConcurrentHashMap<>();
 
 }
@@ -11,5 +11,27 @@ public interface NarField {
 	 * @return this field subobject's {@link NarField} class
 	 */
 	<F extends Enum<F> & NarField> Class<F> getNarFieldClass();
-	
+
+	/** Describes which parts of map entries hold subobjects, for fields holding (possibly nested) maps of subobjects */
+	enum MapContent {
+		/** Only keys hold subobjects (or collections/maps of them) */
+		Keys,
+		/** Only values hold subobjects (or collections/maps of them) */
+		Values,
+		/** Both keys and values hold subobjects (or collections/maps of them) */
+		Both,
+		/** Detect while traversing: side of map entry found holding plain values is ignored for the rest of that map */
+		Detect
+	}
+
+	/**
+	 * For fields holding maps of subobjects, this method describes which parts of map entries hold those subobjects. The same
+	 * description applies to every map nested within field's value.
+	 *
+	 * @return map content; defaults to {@link MapContent#Detect}
+	 */
+	default MapContent getNarMapContent() {
+		return MapContent.Detect;
+	}
+
 }
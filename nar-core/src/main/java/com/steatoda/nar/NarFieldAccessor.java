@@ -0,0 +1,50 @@
+package com.steatoda.nar;
+
+/**
+ * <p>Reads and writes field values of {@link NarObject}s directly, without going through
+ * {@link NarObject#pull(Enum, NarObject, NarGraph)}.</p>
+ *
+ * <p>Objects expose their accessor through {@link NarObject#getFieldAccessor()}. Default accessor falls back to pulling
+ * (reads pull from object itself, writes are supported only for clearing values), so implementing this interface is
+ * optional, but it speeds up every operation that inspects sub-objects ({@link NarObject#getMissingGraph},
+ * {@link NarObject#intersect}, {@link NarEntity#extend(NarGraph, com.steatoda.nar.service.NarService)} etc.) and
+ * {@link NarObject#clearFields(java.util.Collection)}. Implementations are usually stateless singletons dispatching
+ * on field's ordinal (e.g. using {@code switch}), like the ones generated by {@code nar-processor} for classes annotated
+ * with {@link NarGenerate}:</p>
+ * <blockquote><pre>
+ * &#64;Override
+ * public NarFieldAccessor&lt;Foo, Field&gt; getFieldAccessor() {
+ * 	return Foo_Nar.Accessor;
+ * }
+ * </pre></blockquote>
+ *
+ * @param <C> class whose fields are accessed
+ * @param <F> field type
+ */
+public interface NarFieldAccessor<C extends NarObject<C, F>, F extends Enum<F> & NarField> {
+
+	/**
+	 * Reads value of {@code field}.
+	 *
+	 * @param object object to read value from
+	 * @param field field to read
+	 *
+	 * @return field's value
+	 *
+	 * @throws FieldUnavailableException if {@code field} is not initialized in {@code object}
+	 */
+	Object get(C object, F field);
+
+	/**
+	 * Writes value of {@code field}, marking it as initialized (just like calling its setter would).
+	 *
+	 * @param object object to write value to
+	 * @param field field to write
+	 * @param value value to write ({@code null} clears value; primitive fields are set to their default value)
+	 *
+	 * @throws ClassCastException if {@code value} is not of field's type
+	 * @throws UnsupportedOperationException if accessor doesn't support writing given value
+	 */
+	void set(C object, F field, Object value);
+
+}
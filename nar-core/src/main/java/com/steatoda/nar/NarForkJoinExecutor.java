@@ -0,0 +1,133 @@
+package com.steatoda.nar;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * <p>{@link NarTraversalExecutor} processing large batches of sub-objects in parallel, using {@link ForkJoinPool}.</p>
+ *
+ * <p>Batches smaller than configured threshold are processed sequentially, in caller's thread. Larger ones are split
+ * into tasks (about four per pool's thread), whose results are merged in order. Traversals nested inside processed
+ * sub-objects run in the same pool.</p>
+ *
+ * <p><b>NOTE:</b> sub-objects are extended and intersected in parallel only if they don't share any (nested)
+ * sub-object (otherwise they're processed sequentially), so every object is modified by one thread only. However, objects
+ * sub-objects are extended from (as well as their own sub-objects) and objects inspected for missing graph may be read by
+ * multiple threads at once, so they must be safe for concurrent reading.</p>
+ */
+public class NarForkJoinExecutor implements NarTraversalExecutor {
+
+	/** Default number of sub-objects above which they are processed in parallel. */
+	public static final int DefaultThreshold = 10_000;
+
+	/**
+	 * Constructs executor using common pool and {@link #DefaultThreshold}.
+	 */
+	public NarForkJoinExecutor() {
+		this(DefaultThreshold);
+	}
+
+	/**
+	 * Constructs executor using common pool.
+	 *
+	 * @param threshold minimal number of sub-objects to process in parallel
+	 */
+	public NarForkJoinExecutor(int threshold) {
+		this(ForkJoinPool.commonPool(), threshold);
+	}
+
+	/**
+	 * Constructs executor.
+	 *
+	 * @param pool pool to run tasks in
+	 * @param threshold minimal number of sub-objects to process in parallel
+	 */
+	public NarForkJoinExecutor(ForkJoinPool pool, int threshold) {
+		if (threshold < 1)
+			throw new IllegalArgumentException("threshold must be positive: " + threshold);
+		this.pool = pool;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Returns pool tasks are run in.
+	 *
+	 * @return pool
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Returns minimal number of sub-objects to process in parallel.
+	 *
+	 * @return threshold
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	@Override
+	public boolean isParallel(int count) {
+		return count >= threshold && count >= 2;
+	}
+
+	@Override
+	public <T, A> A collect(List<T> objects, Supplier<A> supplier, BiConsumer<A, ? super T> accumulator, BinaryOperator<A> combiner) {
+		if (!isParallel(objects.size()))
+			return Sequential.collect(objects, supplier, accumulator, combiner);
+		int granularity = Math.max(1, objects.size() / (4 * pool.getParallelism()));
+		CollectTask<T, A> task = new CollectTask<>(objects, 0, objects.size(), granularity, supplier, accumulator, combiner);
+		// nested traversals (already running in our pool) just continue splitting in current worker
+		return ForkJoinTask.getPool() == pool ? task.invoke() : pool.invoke(task);
+	}
+
+	private static class CollectTask<T, A> extends RecursiveTask<A> {
+
+		CollectTask(List<T> objects, int from, int to, int granularity, Supplier<A> supplier, BiConsumer<A, ? super T> accumulator, BinaryOperator<A> combiner) {
+			this.objects = objects;
+			this.from = from;
+			this.to = to;
+			this.granularity = granularity;
+			this.supplier = supplier;
+			this.accumulator = accumulator;
+			this.combiner = combiner;
+		}
+
+		@Override
+		protected A compute() {
+			if (to - from <= granularity) {
+				A result = supplier.get();
+				for (int i = from; i < to; ++i)
+					accumulator.accept(result, objects.get(i));
+				return result;
+			}
+			int middle = (from + to) >>> 1;
+			CollectTask<T, A> left = new CollectTask<>(objects, from, middle, granularity, supplier, accumulator, combiner);
+			CollectTask<T, A> right = new CollectTask<>(objects, middle, to, granularity, supplier, accumulator, combiner);
+			left.fork();
+			A rightResult = right.compute();
+			return combiner.apply(left.join(), rightResult);
+		}
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<T> objects;
+		private final int from;
+		private final int to;
+		private final int granularity;
+		private final Supplier<A> supplier;
+		private final BiConsumer<A, ? super T> accumulator;
+		private final BinaryOperator<A> combiner;
+
+	}
+
+	private final ForkJoinPool pool;
+	private final int threshold;
+
+}
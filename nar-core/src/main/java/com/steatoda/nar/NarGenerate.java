@@ -0,0 +1,55 @@
+package com.steatoda.nar;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Marks {@link NarObject} implementation for which {@code nar-processor} should generate field access code.</p>
+ *
+ * <p>For annotated class {@code Foo} (with fields described by {@code Foo.Field}), processor generates final class
+ * {@code Foo_Nar} in the same package, holding static members:</p>
+ * <ul>
+ * 	<li>{@code ref(Foo)} - creates new instance (with the same ID, if {@code Foo} is {@link NarEntity})</li>
+ * 	<li>{@code get(Foo, Foo.Field)} / {@code set(Foo, Foo.Field, Object)} - reads/writes field through its getter/setter</li>
+ * 	<li>{@code Accessor} - {@link NarFieldAccessor} backed by {@code get} and {@code set}</li>
+ * 	<li>{@code pull(Foo, Foo.Field, Foo, NarGraph)} - implementation of {@link NarObject#pull(Enum, NarObject, NarGraph)}</li>
+ * 	<li>{@code clone(Foo, NarGraph)} - implementation of {@link NarObject#clone(NarGraph)}</li>
+ * </ul>
+ *
+ * <p>Getter and setter are resolved for each field by its name ({@code getXxx()} or {@code isXxx()} and {@code setXxx(value)}).
+ * Values are copied when pulling from another object: sub-objects are cloned using field's subgraph, collections, maps and
+ * arrays are copied into new instances (with their elements copied using the same rules) and everything else is copied
+ * by reference. Generated code calls accessors directly, without allocating lambdas.</p>
+ *
+ * <p>Since annotation processors can't change existing classes, annotated class delegates to generated one itself:</p>
+ * <blockquote><pre>
+ * &#64;NarGenerate
+ * public class Foo extends NarEntityBase&lt;String, Foo, Foo.Field&gt; {
+ * 	...
+ * 	&#64;Override
+ * 	public Object pull(Field field, Foo other, NarGraph&lt;Field&gt; graph) {
+ * 		return Foo_Nar.pull(this, field, other, graph);
+ * 	}
+ * 	&#64;Override
+ * 	public Foo clone(NarGraph&lt;Field&gt; graph) {
+ * 		return Foo_Nar.clone(this, graph);
+ * 	}
+ * 	&#64;Override
+ * 	public Foo ref() {
+ * 		return Foo_Nar.ref(this);
+ * 	}
+ * 	&#64;Override
+ * 	public NarFieldAccessor&lt;Foo, Field&gt; getFieldAccessor() {
+ * 		return Foo_Nar.Accessor;
+ * 	}
+ * }
+ * </pre></blockquote>
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface NarGenerate {
+}
@@ -2,18 +2,13 @@ package com.steatoda.nar;
 
 import java.text.ParseException;
 import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
-import com.google.common.collect.Iterators;
-import com.steatoda.nar.internal.RecursiveStringMap;
-
 /**
  * <p>Defines complete object's field graph with exact subfields for each fields-enabled subobject.</p>
  * <p>Implements {@link Set} interface for first-level fields.</p>
@@ -24,7 +19,13 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 
 	// builder-style factories
 
-	/** Builder for constructing {@link NarGraph}(s) */
+	/**
+	 * <p>Builder for constructing {@link NarGraph}(s).</p>
+	 * <p>Builder is copy-on-write: it shares internal structures (and all subgraphs) with graph it was initialized from
+	 * and with graphs it built, copying only top-level arrays on first modification. Merging graphs
+	 * (via {@link #add(Set)}) uses {@link NarGraph#union(NarGraph)}, so extension already covered by builder costs no
+	 * allocations at all.</p>
+	 */
 	public static class Builder<F extends Enum<F> & NarField> {
 
 		/**
@@ -34,7 +35,7 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 		 * @return Empty builder
 		 */
 		public static <F extends Enum<F> & NarField> Builder<F> of(Class<F> clazz) {
-			return new Builder<>(clazz);
+			return new Builder<>(FieldTable.of(clazz));
 		}
 
 		/**
@@ -44,12 +45,14 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 		 * @return Builder pre-initialized to {@code graph}
 		 */
 		public static <F extends Enum<F> & NarField> Builder<F> of(NarGraph<F> graph) {
-			return new Builder<>(graph.getDeclaringClass()).add(graph);
+			Builder<F> builder = new Builder<>(graph.table);
+			builder.adopt(graph);
+			return builder;
 		}
 
-		private Builder(Class<F> clazz) {
-			this.clazz = clazz;
-			data = new EnumMap<>(clazz);
+		private Builder(FieldTable<F> table) {
+			this.table = table;
+			words = table.isRegular() ? null : new long[table.getWordCount()];
 		}
 
 		/**
@@ -58,7 +61,16 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 		 * @return Builder with field removed
 		 */
 		public Builder<F> remove(F field) {
-			data.remove(field);
+			int ordinal = field.ordinal();
+			if (!testBit(ordinal))
+				return this;
+			mutate();
+			if (words == null)
+				bits &= ~(1L << ordinal);
+			else
+				words[ordinal >>> 6] &= ~(1L << ordinal);
+			if (subgraphs != null)
+				subgraphs[ordinal] = null;
 			return this;
 		}
 
@@ -82,7 +94,7 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 		public <F2 extends Enum<F2> & NarField> Builder<F> add(F field, NarGraph<F2> subgraph) {
 			if (subgraph != null && !subgraph.getDeclaringClass().equals(field.getNarFieldClass()))
 				throw new IllegalArgumentException("Trying to add sub-graph for field " + field + " of type " + subgraph.getDeclaringClass() + " but field declares sub-graph of type " + field.getNarFieldClass());
-			extend(data, field, subgraph);
+			extend(field, subgraph);
 			return this;
 		}
 
@@ -90,59 +102,131 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 		<F2 extends Enum<F2> & NarField> Builder<F> set(F field, NarGraph<F2> subgraph) {
 			if (subgraph != null && !subgraph.getDeclaringClass().equals(field.getNarFieldClass()))
 				throw new IllegalArgumentException("Trying to set sub-graph for field " + field + " of type " + subgraph.getDeclaringClass() + " but field declares sub-graph of type " + field.getNarFieldClass());
-			data.put(field, subgraph);
+			int ordinal = field.ordinal();
+			if (testBit(ordinal) && getSubgraph(ordinal) == subgraph)
+				return this;
+			mutate();
+			setBit(ordinal);
+			setSubgraph(ordinal, subgraph);
 			return this;
 		}
 
 		/**
-		 * Extends builder (using {@link #extend(Map, NarGraph)}) with given fields.
+		 * Extends builder with given fields (merging subgraphs of fields already present).
 		 * @param extension fields to extend builder with
 		 * @return Builder with all requested fields added
 		 */
 		public Builder<F> add(Set<F> extension) {
-			if (!extension.isEmpty()) {
-				if (extension instanceof NarGraph)
-					extend(data, (NarGraph<F>) extension);
-				else
-					extend(data, NarGraph.of(extension));
+			if (extension.isEmpty())
+				return this;
+			if (extension instanceof NarGraph) {
+				NarGraph<F> current = build();
+				NarGraph<F> merged = current.union((NarGraph<F>) extension);
+				if (merged != current)
+					adopt(merged);
+			} else {
+				for (F field : extension)
+					extend(field, null);
 			}
 			return this;
 		}
 
-		private static <F extends Enum<F> & NarField> void extend(Map<F, NarGraph<?>> data, NarGraph<F> extension) {
-			for (F field : extension) {
-				NarGraph<?> extensionSubset = extension.data.get(field);
-				extend(data, field, extensionSubset);
-			}
-		}
-
 		@SuppressWarnings("unchecked")
-		private static <F extends Enum<F> & NarField, F2 extends Enum<F2> & NarField> void extend(Map<F, NarGraph<?>> data, F field, NarGraph<F2> subgraph) {
+		private <F2 extends Enum<F2> & NarField> void extend(F field, NarGraph<F2> subgraph) {
 			if (subgraph != null && !subgraph.getDeclaringClass().equals(field.getNarFieldClass()))
 				throw new IllegalArgumentException("Trying to extend sub-graph for field " + field + " with type " + subgraph.getDeclaringClass() + " but field declares sub-graph of type " + field.getNarFieldClass());
-			NarGraph<F2> thisSubGraph = (NarGraph<F2>) data.get(field);
-			NarGraph<F2> mergedSubGraph;
-			if (thisSubGraph == null)
-				mergedSubGraph = subgraph != null ? subgraph.clone() : null;
-			else if (subgraph == null)
-				mergedSubGraph = thisSubGraph;
-			else {
-				extend(thisSubGraph.data, subgraph);
-				mergedSubGraph = thisSubGraph;
+			int ordinal = field.ordinal();
+			if (!testBit(ordinal)) {
+				mutate();
+				setBit(ordinal);
+				setSubgraph(ordinal, subgraph);	// graphs are immutable, so there's no need to clone
+				return;
+			}
+			if (subgraph == null)
+				return;
+			NarGraph<F2> thisSubGraph = (NarGraph<F2>) getSubgraph(ordinal);
+			NarGraph<F2> mergedSubGraph = thisSubGraph == null ? subgraph : thisSubGraph.union(subgraph);
+			if (mergedSubGraph == thisSubGraph)
+				return;
+			mutate();
+			setSubgraph(ordinal, mergedSubGraph);
+		}
+
+		/** Takes over {@code graph}'s structures (without copying them) */
+		private void adopt(NarGraph<F> graph) {
+			bits = graph.bits;
+			words = graph.words;
+			subgraphs = graph.subgraphs;
+			shared = true;
+			built = graph;
+		}
+
+		/** Prepares structures for modification, copying them if they are shared with any graph */
+		private void mutate() {
+			if (shared) {
+				if (words != null)
+					words = words.clone();
+				if (subgraphs != null)
+					subgraphs = subgraphs.clone();
+				shared = false;
 			}
-			data.put(field, mergedSubGraph);
+			built = null;
+		}
+
+		private boolean testBit(int ordinal) {
+			return words == null ? (bits & (1L << ordinal)) != 0 : (words[ordinal >>> 6] & (1L << ordinal)) != 0;
+		}
+
+		private void setBit(int ordinal) {
+			if (words == null)
+				bits |= 1L << ordinal;
+			else
+				words[ordinal >>> 6] |= 1L << ordinal;
+		}
+
+		private NarGraph<?> getSubgraph(int ordinal) {
+			return subgraphs != null ? subgraphs[ordinal] : null;
+		}
+
+		private void setSubgraph(int ordinal, NarGraph<?> subgraph) {
+			if (subgraphs == null) {
+				if (subgraph == null)
+					return;
+				subgraphs = new NarGraph<?>[table.size()];
+			}
+			subgraphs[ordinal] = subgraph;
 		}
 
 		/**
-		 * Constructes {@link NarGraph}.
+		 * Constructes {@link NarGraph}. If builder wasn't modified since it was initialized or since previous call,
+		 * same graph is returned.
 		 * @return {@link NarGraph}
 		 */
 		public NarGraph<F> build() {
-			return new NarGraph<>(clazz, data);
+			if (built == null) {
+				built = new NarGraph<>(table, bits, words, subgraphs);
+				shared = true;
+			}
+			return built;
 		}
 
-		private final Class<F> clazz;
-		private final Map<F, NarGraph<?>> data;
+		/**
+		 * Constructes canonical (interned) {@link NarGraph}.
+		 * @return {@link NarGraph} shared with all structurally equal interned graphs
+		 * @see NarGraph#intern()
+		 */
+		public NarGraph<F> buildInterned() {
+			return build().intern();
+		}
+
+		private final FieldTable<F> table;
+		private long bits;
+		private long[] words;
+		private NarGraph<?>[] subgraphs = null;
+		/** Are {@link #words} and {@link #subgraphs} shared with some graph (and therefore have to be copied before modification) */
+		private boolean shared = false;
+		/** Graph matching builder's current state (if any) */
+		private NarGraph<F> built = null;
 
 	}
 
@@ -155,7 +239,7 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 	 * @return empty {@link NarGraph}
 	 */
 	public static <F extends Enum<F> & NarField> NarGraph<F> noneOf(Class<F> clazz) {
-		return new NarGraph<>(clazz);
+		return FieldTable.of(clazz).getEmptyGraph();
 	}
 
 	/**
@@ -166,7 +250,31 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 	 * @return {@link NarGraph} of type {@code F} with all first-level fields set
 	 */
 	public static <F extends Enum<F> & NarField> NarGraph<F> allOf(Class<F> clazz) {
-		return of(EnumSet.allOf(clazz));
+		FieldTable<F> table = FieldTable.of(clazz);
+		if (table.isRegular())
+			return new NarGraph<>(table, table.getRegularMask(), null, null);
+		long[] words = new long[table.getWordCount()];
+		for (int word = 0; word < words.length; ++word)
+			words[word] = table.getWordMask(word);
+		return new NarGraph<>(table, 0L, words, null);
+	}
+
+	/**
+	 * <p>Constructs {@link NarGraph} of {@code F} first-level fields with all fields initialized, recursively descending into
+	 * field-enabled sub-objects {@code depth} levels deep (as resolved by {@link NarField#getNarFieldClass()}).
+	 * Depth of {@code 1} is the same as {@link #allOf(Class)}.</p>
+	 * <p>Expansions are memoized per field type and depth and share their subgraphs, so even deep expansions
+	 * of self-referencing types cost only one graph per (type, depth) level. Returned graph is interned.</p>
+	 * @param clazz class describing first-level field type
+	 * @param depth number of levels to expand
+	 * @param <F> first-level field type
+	 * @return {@link NarGraph} of type {@code F} with all fields set down to given depth
+	 * @throws IllegalArgumentException if {@code depth} is less than {@code 1}
+	 */
+	public static <F extends Enum<F> & NarField> NarGraph<F> allOf(Class<F> clazz, int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("Depth must be at least 1, but was " + depth);
+		return FieldTable.of(clazz).getExpandedGraph(depth);
 	}
 
 	/**
@@ -189,13 +297,20 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 	public static <F extends Enum<F> & NarField> NarGraph<F> of(Collection<F> fields) {
 		if (fields.isEmpty())
 			throw new IllegalArgumentException("fields param can not be empty");
-		NarGraph<F> graph = null;
+		if (fields instanceof NarGraph) {
+			NarGraph<F> graph = (NarGraph<F>) fields;
+			return graph.subgraphs == null ? graph : new NarGraph<>(graph.table, graph.bits, graph.words, null);
+		}
+		FieldTable<F> table = FieldTable.of(fields.iterator().next().getDeclaringClass());
+		long bits = 0L;
+		long[] words = table.isRegular() ? null : new long[table.getWordCount()];
 		for (F field : fields) {
-			if (graph == null)
-				graph = new NarGraph<>(field.getDeclaringClass());
-			graph.data.put(field, null);
+			if (words == null)
+				bits |= 1L << field.ordinal();
+			else
+				words[field.ordinal() >>> 6] |= 1L << field.ordinal();
 		}
-		return graph;
+		return new NarGraph<>(table, bits, words, null);
 	}
 
 	/**
@@ -205,12 +320,23 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 	 * @param <F> first-level field type
 	 * @return {@link NarGraph} of type {@code F} with first-level fields initialized to {@code fields}
 	 */
+	@SuppressWarnings("unchecked")
 	public static <F extends Enum<F> & NarField> NarGraph<F> of(F first, Object... rest) {
 		Class<F> clazz = first.getDeclaringClass();
-		NarGraph<F> graph = new NarGraph<>(clazz);
-		graph.data.put(first, null);
-		add(clazz, graph, rest);
-		return graph;
+		FieldTable<F> table = FieldTable.of(clazz);
+		long bits = 0L;
+		long[] words = table.isRegular() ? null : new long[table.getWordCount()];
+		for (int i = -1; i < rest.length; ++i) {
+			Object object = i < 0 ? first : rest[i];
+			if (!clazz.equals(object.getClass()))
+				throw new IllegalArgumentException("Expected " + clazz + ", but got " + object.getClass());
+			int ordinal = ((F) object).ordinal();
+			if (words == null)
+				bits |= 1L << ordinal;
+			else
+				words[ordinal >>> 6] |= 1L << ordinal;
+		}
+		return new NarGraph<>(table, bits, words, null);
 	}
 
 	// string-style factories
@@ -221,7 +347,13 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 	 * <ul>
 	 *     <li>fields are represented bay their enum names separated by commas: {@code foo,bar,baz}</li>
 	 *     <li>each field's subfields are sourounded by curley braces (hierarchy may go as deep as needed): {@code foo,bar{b1,b2},baz{c1{c11,c12},c2}}</li>
+	 *     <li>{@code *} stands for all fields of its level: {@code foo,bar{*}}</li>
+	 *     <li>{@code **:n} stands for all fields of its level and all fields of their sub-objects, {@code n} levels deep
+	 *     (see {@link #allOf(Class, int)}): {@code foo,bar{**:2}}</li>
+	 *     <li>wildcards can be combined with explicit fields, whose subgraphs are then merged with expansion: {@code *,bar{b1{c1}}}</li>
 	 * </ul>
+	 * <p>Parsed graphs are cached (see {@link NarGraphParseCache#getDefault()}), so returned graph is interned and
+	 * may be shared with other callers. To parse without caching (or from UTF-8 bytes), use {@link NarGraphParser}.</p>
 	 * @param value string to parse
 	 * @param clazz class representing first-level field type
 	 * @param <F> first-level field type
@@ -229,71 +361,68 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 	 * @throws ParseException is value cannot be parsed
 	 */
 	public static <F extends Enum<F> & NarField> NarGraph<F> of(String value, Class<F> clazz) throws ParseException {
-		return parse(RecursiveStringMap.of(value), clazz);
+		return NarGraphParseCache.getDefault().get(value, clazz);
 	}
 
-	@SuppressWarnings("unchecked")
-	private static <F extends Enum<F> & NarField> void add(Class<F> clazz, NarGraph<F> graph, Object... objects) {
-		for (Object object : objects) {
-			if (!clazz.equals(object.getClass()))
-				throw new IllegalArgumentException("Expected " + clazz + ", but got " + object.getClass());
-			graph.data.put((F) object, null);
-		}
+	/** Drops subgraphs array if it doesn't hold any subgraph, otherwise returns its copy. */
+	private static NarGraph<?>[] compactSubgraphs(NarGraph<?>[] subgraphs) {
+		if (subgraphs == null)
+			return null;
+		for (NarGraph<?> subgraph : subgraphs)
+			if (subgraph != null)
+				return subgraphs.clone();
+		return null;
 	}
 
-	// recursive
-	@SuppressWarnings("unchecked")
-	private static <F extends Enum<F> & NarField> NarGraph<F> parse(RecursiveStringMap raw, Class<F> clazz) throws UnknownFieldException {
-		
-		if (raw == null)
-			return null;
-		
-		NarGraph<F> graph = new NarGraph<>(clazz);
-
-		for (Map.Entry<RecursiveStringMap.Key, RecursiveStringMap> entry : raw.entrySet()) {
-			F field;
-			try {
-				field = Enum.valueOf(clazz, entry.getKey().name);
-			} catch (IllegalArgumentException e) {
-				throw new UnknownFieldException(entry.getKey().name, clazz, entry.getKey().offset);
-			}
-			// NOTE this cast if WRONG, but Java complains otherwise (we need to recurse with parse using different type in each step)
-			// Works OK due to type erasure, but beware...
-			graph.data.put(field, parse(entry.getValue(), (Class<F>) field.getNarFieldClass()));
+	/** NOTE: given arrays are used as-is (not copied), so they must not be modified afterwards */
+	NarGraph(FieldTable<F> table, long bits, long[] words, NarGraph<?>[] subgraphs) {
+		this.table = table;
+		this.bits = bits;
+		this.words = words;
+		this.subgraphs = subgraphs;
+		if (words == null) {
+			size = Long.bitCount(bits);
+		} else {
+			int count = 0;
+			for (long word : words)
+				count += Long.bitCount(word);
+			size = count;
 		}
-		
-		return graph;
-		
-	}
-	
-	private NarGraph(Class<F> clazz) {
-		this(clazz, new EnumMap<>(clazz));
-	}
-	
-	private NarGraph(Class<F> clazz, Map<F, NarGraph<?>> data) {
-		this.clazz = clazz;
-		this.data = data;
 	}
 
 	// (Immutable)Set interface
 	@Override
-	public int size() { return data.size(); }
-	@Override
-	public boolean isEmpty() { return data.isEmpty(); }
+	public int size() { return size; }
 	@Override
-	public boolean contains(Object o) { return data.containsKey(o); }
+	public boolean isEmpty() { return size == 0; }
 	@Override
-	public Iterator<F> iterator() { return Iterators.unmodifiableIterator(data.keySet().iterator()); }
-	@Override
-	public Object[] toArray() { return data.keySet().toArray(); }
+	public boolean contains(Object o) {
+		if (!(o instanceof Enum) || ((Enum<?>) o).getDeclaringClass() != table.getDeclaringClass())
+			return false;
+		return has(((Enum<?>) o).ordinal());
+	}
 	@Override
-	public <X> X[] toArray(X[] a) { return data.keySet().toArray(a); }
+	public Iterator<F> iterator() { return new FieldIterator(); }
 	@Override
 	public boolean add(F field) { throw new UnsupportedOperationException(); }
 	@Override
 	public boolean remove(Object o) { throw new UnsupportedOperationException(); }
 	@Override
-	public boolean containsAll(Collection<?> c) { return data.keySet().containsAll(c); }
+	public boolean containsAll(Collection<?> c) {
+		if (c instanceof NarGraph && ((NarGraph<?>) c).table == table) {
+			NarGraph<?> other = (NarGraph<?>) c;
+			if (words == null)
+				return (other.bits & ~bits) == 0;
+			for (int word = 0; word < words.length; ++word)
+				if ((other.words[word] & ~words[word]) != 0)
+					return false;
+			return true;
+		}
+		for (Object o : c)
+			if (!contains(o))
+				return false;
+		return true;
+	}
 	@Override
 	public boolean addAll(Collection<? extends F> c) { throw new UnsupportedOperationException(); }
 	@Override
@@ -308,8 +437,10 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 	 * @return new {@link NarGraph} clone
 	 */
 	@Override
+	@SuppressWarnings("MethodDoesntCallSuperMethod")
 	public NarGraph<F> clone() {
-		return new NarGraph<>(clazz, data.isEmpty() ? new EnumMap<>(clazz) : new EnumMap<>(data));
+		// graphs are immutable, so internal structures can be shared
+		return new NarGraph<>(table, bits, words, subgraphs);
 	}
 
 	/**
@@ -326,45 +457,324 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 		if (!(obj instanceof NarGraph))
 			return false;
 		NarGraph<?> other = (NarGraph<?>) obj;
-		if (clazz != other.clazz)
+		if (interned && other.interned)
+			return false;	// structurally equal interned graphs are always the same instance
+		if (table != other.table)
 			return false;
-		if (data.size() != other.data.size())
+		if (hash != 0 && other.hash != 0 && hash != other.hash)
 			return false;
-		for (Map.Entry<F, NarGraph<?>> entry : data.entrySet()) {
-			if (!other.data.containsKey(entry.getKey()))
+		if (words == null) {
+			if (bits != other.bits)
 				return false;
-			if (!Objects.equals(
-				Optional.ofNullable(entry.getValue()).filter(subfields -> !subfields.isEmpty()).orElse(null),
-				Optional.ofNullable(other.data.get(entry.getKey())).filter(subfields -> !subfields.isEmpty()).orElse(null)
-			))
-				return false;	
+		} else if (!Arrays.equals(words, other.words)) {
+			return false;
+		}
+		if (subgraphs == null && other.subgraphs == null)
+			return true;
+		for (int ordinal = 0; ordinal < table.size(); ++ordinal) {
+			NarGraph<?> subgraph = subgraphs != null ? subgraphs[ordinal] : null;
+			NarGraph<?> otherSubgraph = other.subgraphs != null ? other.subgraphs[ordinal] : null;
+			// null and empty subgraphs are considered equal
+			if (subgraph == null || subgraph.isEmpty()) {
+				if (otherSubgraph != null && !otherSubgraph.isEmpty())
+					return false;
+			} else if (!subgraph.equals(otherSubgraph)) {
+				return false;
+			}
 		}
 		return true;
 	}
 
 	/**
-	 * Converts this field graph to its string representation.
+	 * <p>Returns union of this graph and {@code other}: all fields present in either graph, with subgraphs of fields
+	 * present in both graphs united recursively.</p>
+	 * <p>If union equals to one of the graphs, that graph is returned (no copy is made).</p>
+	 * @param other graph to unite with
+	 * @return union of graphs
+	 * @throws IllegalArgumentException if {@code other} describes fields of different type
+	 */
+	public NarGraph<F> union(NarGraph<F> other) {
+		checkSameType(other);
+		if (other == this || other.isEmpty())
+			return this;
+		if (isEmpty())
+			return other;
+		long unionBits = bits | other.bits;
+		long[] unionWords = null;
+		boolean sameAsThis = unionBits == bits;
+		boolean sameAsOther = unionBits == other.bits;
+		if (words != null) {
+			unionWords = new long[words.length];
+			for (int word = 0; word < words.length; ++word) {
+				unionWords[word] = words[word] | other.words[word];
+				sameAsThis &= unionWords[word] == words[word];
+				sameAsOther &= unionWords[word] == other.words[word];
+			}
+		}
+		NarGraph<?>[] unionSubgraphs = null;
+		if (subgraphs != null || other.subgraphs != null) {
+			for (int ordinal = 0; ordinal < table.size(); ++ordinal) {
+				NarGraph<?> subgraph = nonEmptySubgraph(ordinal);
+				NarGraph<?> otherSubgraph = other.nonEmptySubgraph(ordinal);
+				if (subgraph == null && otherSubgraph == null)
+					continue;
+				NarGraph<?> unionSubgraph = subgraph == null ? otherSubgraph : otherSubgraph == null ? subgraph : unionRaw(subgraph, otherSubgraph);
+				sameAsThis &= unionSubgraph == subgraph;
+				sameAsOther &= unionSubgraph == otherSubgraph;
+				if (unionSubgraphs == null)
+					unionSubgraphs = new NarGraph<?>[table.size()];
+				unionSubgraphs[ordinal] = unionSubgraph;
+			}
+		}
+		if (sameAsThis)
+			return this;
+		if (sameAsOther)
+			return other;
+		return new NarGraph<>(table, unionBits, unionWords, unionSubgraphs);
+	}
+
+	/**
+	 * <p>Returns intersection of this graph and {@code other}: only fields present in both graphs, with their subgraphs
+	 * intersected recursively.</p>
+	 * <p>If intersection equals to one of the graphs, that graph is returned (no copy is made).</p>
+	 * @param other graph to intersect with
+	 * @return intersection of graphs
+	 * @throws IllegalArgumentException if {@code other} describes fields of different type
+	 */
+	public NarGraph<F> intersect(NarGraph<F> other) {
+		checkSameType(other);
+		if (other == this || isEmpty())
+			return this;
+		if (other.isEmpty())
+			return other;
+		long intersectionBits = bits & other.bits;
+		long[] intersectionWords = null;
+		boolean sameAsThis = intersectionBits == bits;
+		boolean sameAsOther = intersectionBits == other.bits;
+		if (words != null) {
+			intersectionWords = new long[words.length];
+			for (int word = 0; word < words.length; ++word) {
+				intersectionWords[word] = words[word] & other.words[word];
+				sameAsThis &= intersectionWords[word] == words[word];
+				sameAsOther &= intersectionWords[word] == other.words[word];
+			}
+		}
+		NarGraph<?>[] intersectionSubgraphs = null;
+		if (subgraphs != null || other.subgraphs != null) {
+			for (int ordinal = 0; ordinal < table.size(); ++ordinal) {
+				if (!has(ordinal) || !other.has(ordinal))
+					continue;
+				NarGraph<?> subgraph = nonEmptySubgraph(ordinal);
+				NarGraph<?> otherSubgraph = other.nonEmptySubgraph(ordinal);
+				NarGraph<?> intersectionSubgraph = subgraph == null || otherSubgraph == null ? null : intersectRaw(subgraph, otherSubgraph);
+				if (intersectionSubgraph != null && intersectionSubgraph.isEmpty())
+					intersectionSubgraph = null;
+				sameAsThis &= intersectionSubgraph == subgraph;
+				sameAsOther &= intersectionSubgraph == otherSubgraph;
+				if (intersectionSubgraph == null)
+					continue;
+				if (intersectionSubgraphs == null)
+					intersectionSubgraphs = new NarGraph<?>[table.size()];
+				intersectionSubgraphs[ordinal] = intersectionSubgraph;
+			}
+		}
+		if (sameAsThis)
+			return this;
+		if (sameAsOther)
+			return other;
+		return new NarGraph<>(table, intersectionBits, intersectionWords, intersectionSubgraphs);
+	}
+
+	/**
+	 * <p>Returns part of this graph not covered by {@code other}: fields missing from {@code other} (together with their
+	 * complete subgraphs) and fields present in both graphs, but with subgraphs not covered by {@code other}'s subgraph
+	 * (with only uncovered part of subgraph retained).</p>
+	 * <p>If nothing from this graph is covered by {@code other}, this graph is returned (no copy is made).</p>
+	 * @param other graph to subtract
+	 * @return difference of graphs (empty if this graph is subgraph of {@code other})
+	 * @throws IllegalArgumentException if {@code other} describes fields of different type
+	 * @see #isSubgraphOf(NarGraph)
+	 */
+	public NarGraph<F> minus(NarGraph<F> other) {
+		checkSameType(other);
+		if (isEmpty() || other.isEmpty())
+			return this;
+		long differenceBits = 0L;
+		long[] differenceWords = words != null ? new long[words.length] : null;
+		NarGraph<?>[] differenceSubgraphs = null;
+		boolean sameAsThis = true;
+		for (int ordinal = 0; ordinal < table.size(); ++ordinal) {
+			if (!has(ordinal))
+				continue;
+			NarGraph<?> subgraph = nonEmptySubgraph(ordinal);
+			NarGraph<?> differenceSubgraph = subgraph;
+			if (other.has(ordinal)) {
+				if (subgraph == null) {
+					sameAsThis = false;
+					continue;	// field is completely covered
+				}
+				NarGraph<?> otherSubgraph = other.nonEmptySubgraph(ordinal);
+				if (otherSubgraph != null) {
+					differenceSubgraph = minusRaw(subgraph, otherSubgraph);
+					if (differenceSubgraph.isEmpty()) {
+						sameAsThis = false;
+						continue;	// subgraph is completely covered
+					}
+					sameAsThis &= differenceSubgraph == subgraph;
+				}
+			}
+			if (differenceWords == null)
+				differenceBits |= 1L << ordinal;
+			else
+				differenceWords[ordinal >>> 6] |= 1L << ordinal;
+			if (differenceSubgraph != null) {
+				if (differenceSubgraphs == null)
+					differenceSubgraphs = new NarGraph<?>[table.size()];
+				differenceSubgraphs[ordinal] = differenceSubgraph;
+			}
+		}
+		if (sameAsThis)
+			return this;
+		return new NarGraph<>(table, differenceBits, differenceWords, differenceSubgraphs);
+	}
+
+	/**
+	 * Checks whether this graph is (deeply) covered by {@code other}, meaning that {@code other} contains every field
+	 * of this graph, and every subgraph of this graph is subgraph of {@code other}'s corresponding subgraph.
+	 * @param other graph to check against
+	 * @return {@code true} if this graph is subgraph of {@code other}, {@code false} otherwise
+	 * @throws IllegalArgumentException if {@code other} describes fields of different type
+	 */
+	public boolean isSubgraphOf(NarGraph<F> other) {
+		checkSameType(other);
+		if (other == this)
+			return true;
+		if (!other.containsAll(this))
+			return false;
+		if (subgraphs == null)
+			return true;
+		for (int ordinal = 0; ordinal < subgraphs.length; ++ordinal) {
+			NarGraph<?> subgraph = nonEmptySubgraph(ordinal);
+			if (subgraph == null)
+				continue;
+			NarGraph<?> otherSubgraph = other.nonEmptySubgraph(ordinal);
+			if (otherSubgraph == null || !isSubgraphOfRaw(subgraph, otherSubgraph))
+				return false;
+		}
+		return true;
+	}
+
+	// Java type erasure... (subgraphs are guaranteed to be of the same type by callers)
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static NarGraph<?> unionRaw(NarGraph<?> graph, NarGraph<?> other) { return ((NarGraph) graph).union(other); }
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static NarGraph<?> intersectRaw(NarGraph<?> graph, NarGraph<?> other) { return ((NarGraph) graph).intersect(other); }
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static NarGraph<?> minusRaw(NarGraph<?> graph, NarGraph<?> other) { return ((NarGraph) graph).minus(other); }
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static boolean isSubgraphOfRaw(NarGraph<?> graph, NarGraph<?> other) { return ((NarGraph) graph).isSubgraphOf(other); }
+
+	private void checkSameType(NarGraph<?> other) {
+		if (other.table != table)
+			throw new IllegalArgumentException("Expected graph of type " + getDeclaringClass() + ", but got " + other.getDeclaringClass());
+	}
+
+	/** Returns subgraph for field with given ordinal, treating empty subgraphs as {@code null}. */
+	private NarGraph<?> nonEmptySubgraph(int ordinal) {
+		if (subgraphs == null)
+			return null;
+		NarGraph<?> subgraph = subgraphs[ordinal];
+		return subgraph != null && !subgraph.isEmpty() ? subgraph : null;
+	}
+
+	/**
+	 * <p>Structural hash code, consistent with {@link #equals(Object)} (empty and missing subgraphs hash the same).</p>
+	 * <p>NOTE: just like {@link #equals(Object)}, this deviates from {@link Set#hashCode()} contract, since graphs
+	 * are never equal to plain sets.</p>
+	 * @return hash code of this graph including all subgraphs
+	 */
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0) {
+			h = words == null ? Long.hashCode(bits) : Arrays.hashCode(words);
+			if (subgraphs != null)
+				for (int ordinal = 0; ordinal < subgraphs.length; ++ordinal)
+					if (subgraphs[ordinal] != null && !subgraphs[ordinal].isEmpty())
+						h = 31 * h + (ordinal ^ subgraphs[ordinal].hashCode());
+			if (h == 0)
+				h = 1;	// reserve 0 for "not yet calculated"
+			hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * <p>Returns canonical instance of this graph. All structurally equal graphs (see {@link #equals(Object)}) intern
+	 * to the same instance, so interned graphs can be compared by reference and are cheap to use as map keys.</p>
+	 * <p>Interned graphs hold only interned subgraphs (with empty subgraphs dropped). Pool holds graphs weakly
+	 * (except in GWT, which lacks weak references), so graphs no longer referenced elsewhere are garbage collected.</p>
+	 * @return canonical instance of this graph
+	 */
+	public NarGraph<F> intern() {
+		if (interned)
+			return this;
+		NarGraph<?>[] canonicalSubgraphs = null;
+		boolean changed = false;
+		if (subgraphs != null) {
+			canonicalSubgraphs = new NarGraph<?>[subgraphs.length];
+			for (int ordinal = 0; ordinal < subgraphs.length; ++ordinal) {
+				NarGraph<?> subgraph = subgraphs[ordinal];
+				NarGraph<?> canonicalSubgraph = subgraph == null || subgraph.isEmpty() ? null : subgraph.intern();
+				changed |= canonicalSubgraph != subgraph;
+				canonicalSubgraphs[ordinal] = canonicalSubgraph;
+			}
+			canonicalSubgraphs = compactSubgraphs(canonicalSubgraphs);
+		}
+		NarGraph<F> candidate = changed ? new NarGraph<>(table, bits, words, canonicalSubgraphs) : this;
+		@SuppressWarnings("unchecked")
+		NarGraph<F> canonical = (NarGraph<F>) GraphPool.intern(candidate);
+		canonical.interned = true;
+		return canonical;
+	}
+
+	/**
+	 * Checks whether this graph is canonical instance returned by {@link #intern()}.
+	 * @return {@code true} if this graph is interned, {@code false} otherwise
+	 */
+	public boolean isInterned() {
+		return interned;
+	}
+
+	/**
+	 * Converts this field graph to its string representation. Since graph is immutable, string is built only once.
 	 * @return String representation of this field graph
+	 * @see NarGraphCodec for compact binary representation
 	 */
 	@Override
 	public String toString() {
-		StringBuilder builder = new StringBuilder();
-		toString(this, builder);
-		return builder.toString();
+		String string = this.string;
+		if (string == null) {
+			StringBuilder builder = new StringBuilder();
+			toString(this, builder);
+			this.string = string = builder.toString();
+		}
+		return string;
 	}
 	
 	// recursive
-	private void toString(NarGraph<?> graph, StringBuilder builder) {
+	private static void toString(NarGraph<?> graph, StringBuilder builder) {
 		boolean first = true;
-		for (Map.Entry<?, NarGraph<?>> entry : graph.data.entrySet()) {
+		for (Object field : graph) {
 			if (first)
 				first = false;
 			else
 				builder.append(',');
-			builder.append(entry.getKey());
-			if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+			builder.append(field);
+			NarGraph<?> subgraph = graph.subgraphs != null ? graph.subgraphs[((Enum<?>) field).ordinal()] : null;
+			if (subgraph != null && !subgraph.isEmpty()) {
 				builder.append('{');
-				toString(entry.getValue(), builder);
+				toString(subgraph, builder);
 				builder.append('}');
 			}
 		}
@@ -374,11 +784,11 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 	 * Returns {@link NarField} field class which describes first-level fields.
 	 */
 	public Class<F> getDeclaringClass() {
-		return clazz;
+		return table.getDeclaringClass();
 	}
 
 	/**
-	 * <p>Retrieves (unchecked) subgraph associated with given field. If field doesn't have a subset, empty set is returned.</p>
+	 * <p>Retrieves (unchecked) subgraph associated with given field. If field doesn't have a subset, {@code null} is returned.</p>
 	 * <p>For checked subgraph retrieval, see {@link #getGraph(Enum, Class)}.</p>
 	 *
 	 * @param field field for which to retrieve subgraph
@@ -388,7 +798,7 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 	 * @see #getGraph(Enum, Class)
 	 */
 	public NarGraph<?> getGraph(F field) {
-		return data.get(field);
+		return subgraphs != null ? subgraphs[field.ordinal()] : null;
 	}
 
 	/**
@@ -411,7 +821,7 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 		NarGraph<?> subGraphRaw = getGraph(field);
 
 		if (subGraphRaw == null)
-			return new NarGraph<>(clazz);
+			return noneOf(clazz);
 
 		Class<?> subGraphDeclaringClass = subGraphRaw.getDeclaringClass();
 
@@ -422,7 +832,140 @@ public class NarGraph<F extends Enum<F> & NarField> extends AbstractSet<F> {
 
 	}
 
-	private final Class<F> clazz;
-	private final Map<F, NarGraph<?>> data;
+	/**
+	 * Checks if this graph is flat, i.e. if it doesn't hold any subgraph.
+	 *
+	 * @return {@code true} if graph is flat, {@code false} otherwise
+	 */
+	boolean isFlat() {
+		return subgraphs == null;
+	}
+
+	/**
+	 * <p>Returns part of this (flat, regular) graph missing from object whose initialized fields are described by
+	 * {@code signature} (see {@link NarObject#getFieldsSignature()}).</p>
+	 *
+	 * <p>Results for last few signatures are memoized, so (typical) batches of objects with same (or few distinct sets
+	 * of) fields initialized share missing graphs, calculated only once.</p>
+	 *
+	 * @param signature signature of object's initialized fields
+	 *
+	 * @return graph of missing fields
+	 */
+	NarGraph<F> missingFrom(long signature) {
+		MissingMemo<F>[] memos = this.memos;
+		if (memos != null)
+			for (MissingMemo<F> memo : memos)
+				if (memo.signature == signature)
+					return memo.missing;
+		long missingBits = bits & ~signature;
+		NarGraph<F> missing = missingBits == bits ? this : (missingBits == 0L ? table.getEmptyGraph() : new NarGraph<>(table, missingBits, null, null));
+		this.memos = remember(memos, new MissingMemo<>(signature, missing));
+		return missing;
+	}
+
+	/** Returns copy of {@code memos} with {@code memo} prepended, evicting the oldest one if there's too many */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <F extends Enum<F> & NarField> MissingMemo<F>[] remember(MissingMemo<F>[] memos, MissingMemo<F> memo) {
+		int length = memos == null ? 0 : Math.min(memos.length, MissingMemoSize - 1);
+		MissingMemo<F>[] remembered = new MissingMemo[length + 1];
+		remembered[0] = memo;
+		if (length > 0)
+			System.arraycopy(memos, 0, remembered, 1, length);
+		return remembered;
+	}
+
+	/** Returns table describing first-level fields. */
+	FieldTable<F> getTable() {
+		return table;
+	}
+
+	/**
+	 * Returns one 64-bit word of field bitmask (bit {@code n} of word {@code w} represents field with ordinal {@code 64 * w + n}).
+	 *
+	 * @param word word index ({@code 0} for types with up to 64 fields)
+	 *
+	 * @return bitmask word
+	 */
+	long getWord(int word) {
+		return words == null ? bits : words[word];
+	}
+
+	/**
+	 * Returns (unchecked) subgraph associated with field with given ordinal.
+	 *
+	 * @param ordinal field's ordinal
+	 *
+	 * @return field's subgraph or {@code null} if field doesn't have one
+	 */
+	NarGraph<?> getGraph(int ordinal) {
+		return subgraphs != null ? subgraphs[ordinal] : null;
+	}
+
+	private boolean has(int ordinal) {
+		return words == null ? (bits & (1L << ordinal)) != 0 : (words[ordinal >>> 6] & (1L << ordinal)) != 0;
+	}
+
+	/** Iterates over set bits in ordinal order (same order {@link EnumSet} would use). */
+	private class FieldIterator implements Iterator<F> {
+
+		FieldIterator() {
+			word = 0;
+			remaining = words == null ? bits : (words.length > 0 ? words[0] : 0L);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (words != null)
+				while (remaining == 0 && word < words.length - 1)
+					remaining = words[++word];
+			return remaining != 0;
+		}
+
+		@Override
+		public F next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			int ordinal = (word << 6) + Long.numberOfTrailingZeros(remaining);
+			remaining &= remaining - 1;
+			return table.get(ordinal);
+		}
+
+		private int word;
+		private long remaining;
+
+	}
+
+	/** Result of {@link #missingFrom(long)} for one signature */
+	private static final class MissingMemo<F extends Enum<F> & NarField> {
+
+		MissingMemo(long signature, NarGraph<F> missing) {
+			this.signature = signature;
+			this.missing = missing;
+		}
+
+		final long signature;
+		final NarGraph<F> missing;
+
+	}
+
+	/** Maximum number of signatures {@link #missingFrom(long)} results are memoized for */
+	private static final int MissingMemoSize = 8;
+
+	private final FieldTable<F> table;
+	/** Bitmask of fields, used when all fields fit into one {@code long} */
+	private final long bits;
+	/** Bitmask of fields, used when there are more than 64 fields ({@code null} otherwise) */
+	private final long[] words;
+	/** Subgraphs indexed by field ordinal ({@code null} if no field has subgraph) */
+	private final NarGraph<?>[] subgraphs;
+	private final int size;
+	/** Cached {@link #hashCode()} ({@code 0} if not calculated yet) */
+	private int hash = 0;
+	private volatile boolean interned = false;
+	/** Lazily built {@link #toString()} (strings are immutable, so racing threads may safely build it more than once) */
+	private String string = null;
+	/** Memoized {@link #missingFrom(long)} results, most recent first (filled before being published and never modified afterwards, so racing threads may safely replace it) */
+	private volatile MissingMemo<F>[] memos = null;
 
 }
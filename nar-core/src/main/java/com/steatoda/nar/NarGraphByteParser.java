@@ -0,0 +1,114 @@
+package com.steatoda.nar;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+/**
+ * <p>Parses string representation of {@link NarGraph} straight from UTF-8 encoded {@code byte[]}s and {@link ByteBuffer}s
+ * (e.g. raw HTTP query parameters), using {@link NarGraphParser}.</p>
+ *
+ * <p>As long as input is ASCII (which field names usually are), bytes are read in place and error offsets reported in
+ * {@link ParseException}s are byte offsets. Non-ASCII input is decoded first and offsets refer to decoded characters.</p>
+ *
+ * <p>Parsed graphs are <u>not</u> cached.</p>
+ */
+public final class NarGraphByteParser {
+
+	/**
+	 * Parses graph from UTF-8 encoded {@code bytes}.
+	 *
+	 * @param bytes UTF-8 encoded string to parse
+	 * @param clazz class representing first-level field type
+	 * @param <F> first-level field type
+	 *
+	 * @return {@link NarGraph} of type {@code F} initialized with field graph parsed from {@code bytes}
+	 *
+	 * @throws ParseException is value cannot be parsed
+	 */
+	public static <F extends Enum<F> & NarField> NarGraph<F> parse(byte[] bytes, Class<F> clazz) throws ParseException {
+		return parse(bytes, 0, bytes.length, clazz);
+	}
+
+	/**
+	 * Parses graph from UTF-8 encoded {@code bytes} between {@code offset} (inclusive) and {@code offset + length} (exclusive).
+	 *
+	 * @param bytes UTF-8 encoded string to parse
+	 * @param offset offset of first byte to parse
+	 * @param length number of bytes to parse
+	 * @param clazz class representing first-level field type
+	 * @param <F> first-level field type
+	 *
+	 * @return {@link NarGraph} of type {@code F} initialized with field graph parsed from {@code bytes}
+	 *
+	 * @throws ParseException is value cannot be parsed (error offset is relative to {@code offset})
+	 */
+	public static <F extends Enum<F> & NarField> NarGraph<F> parse(byte[] bytes, int offset, int length, Class<F> clazz) throws ParseException {
+		for (int i = offset; i < offset + length; ++i)
+			if (bytes[i] < 0)
+				return NarGraphParser.parse(new String(bytes, offset, length, StandardCharsets.UTF_8), clazz);
+		return NarGraphParser.parse(new AsciiSequence(bytes, null, offset, length), clazz);
+	}
+
+	/**
+	 * Parses graph from UTF-8 encoded bytes {@linkplain ByteBuffer#remaining() remaining} in {@code buffer}.
+	 * Buffer's position is not changed.
+	 *
+	 * @param buffer buffer holding UTF-8 encoded string to parse
+	 * @param clazz class representing first-level field type
+	 * @param <F> first-level field type
+	 *
+	 * @return {@link NarGraph} of type {@code F} initialized with field graph parsed from {@code buffer}
+	 *
+	 * @throws ParseException is value cannot be parsed (error offset is relative to buffer's position)
+	 */
+	public static <F extends Enum<F> & NarField> NarGraph<F> parse(ByteBuffer buffer, Class<F> clazz) throws ParseException {
+		if (buffer.hasArray())
+			return parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), clazz);
+		for (int i = buffer.position(); i < buffer.limit(); ++i)
+			if (buffer.get(i) < 0)
+				return NarGraphParser.parse(StandardCharsets.UTF_8.decode(buffer.duplicate()), clazz);
+		return NarGraphParser.parse(new AsciiSequence(null, buffer, buffer.position(), buffer.remaining()), clazz);
+	}
+
+	/** Read-only view of ASCII bytes as characters. */
+	private static final class AsciiSequence implements CharSequence {
+
+		AsciiSequence(byte[] bytes, ByteBuffer buffer, int offset, int length) {
+			this.bytes = bytes;
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int length() { return length; }
+
+		@Override
+		public char charAt(int index) {
+			return (char) (bytes != null ? bytes[offset + index] : buffer.get(offset + index));
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new AsciiSequence(bytes, buffer, offset + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder(length);
+			for (int i = 0; i < length; ++i)
+				builder.append(charAt(i));
+			return builder.toString();
+		}
+
+		private final byte[] bytes;
+		private final ByteBuffer buffer;
+		private final int offset;
+		private final int length;
+
+	}
+
+	private NarGraphByteParser() {}
+
+}
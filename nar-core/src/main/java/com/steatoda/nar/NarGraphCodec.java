@@ -0,0 +1,268 @@
+package com.steatoda.nar;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+/**
+ * <p>Compact binary representation of {@link NarGraph}, meant for shipping graphs between nodes without formatting
+ * and parsing their string representation.</p>
+ *
+ * <p>Encoded graph starts with a single format version byte ({@link #Version}), followed by the first graph level.
+ * Each level is encoded as:</p>
+ * <ol>
+ * 	<li>bitmask of fields present on this level</li>
+ * 	<li>bitmask of fields whose (non-empty) subgraphs follow</li>
+ * 	<li>subgraphs (levels) of fields flagged in previous bitmask, in ordinal order</li>
+ * </ol>
+ * <p>Bitmask is encoded as number of 64-bit words (trailing zero words are omitted) followed by those words, all as unsigned
+ * varints. Bit {@code n} of word {@code w} represents field with ordinal {@code 64 * w + n}. Field types are not encoded;
+ * they are derived from the requested first-level type and {@link NarField#getNarFieldClass()}, which means both sides
+ * must agree on field enums, at least on their ordinals (appending new fields is safe as long as they are not sent to nodes
+ * that don't know them yet).</p>
+ *
+ * <p>Decoding reads directly from given {@link ByteBuffer} (no intermediate copies are made) and produces graphs sharing
+ * no state with the buffer.</p>
+ */
+public final class NarGraphCodec {
+
+	/** Current format version. */
+	public static final byte Version = 1;
+
+	/**
+	 * Calculates number of bytes needed to encode {@code graph}.
+	 *
+	 * @param graph graph to encode
+	 *
+	 * @return number of bytes {@link #encode(NarGraph, ByteBuffer)} will write
+	 */
+	public static int getEncodedSize(NarGraph<?> graph) {
+		return 1 + getLevelSize(graph);
+	}
+
+	/**
+	 * Encodes {@code graph}.
+	 *
+	 * @param graph graph to encode
+	 *
+	 * @return encoded graph
+	 */
+	public static byte[] encode(NarGraph<?> graph) {
+		byte[] bytes = new byte[getEncodedSize(graph)];
+		encode(graph, ByteBuffer.wrap(bytes));
+		return bytes;
+	}
+
+	/**
+	 * Encodes {@code graph} into {@code buffer}, starting at buffer's current position and advancing it past encoded graph.
+	 *
+	 * @param graph graph to encode
+	 * @param buffer buffer to encode graph into
+	 *
+	 * @throws BufferOverflowException if there's not enough space remaining in {@code buffer} (see {@link #getEncodedSize(NarGraph)})
+	 */
+	public static void encode(NarGraph<?> graph, ByteBuffer buffer) {
+		buffer.put(Version);
+		encodeLevel(graph, buffer);
+	}
+
+	/**
+	 * Decodes graph from {@code bytes}.
+	 *
+	 * @param bytes encoded graph
+	 * @param clazz class representing first-level field type
+	 * @param <F> first-level field type
+	 *
+	 * @return decoded graph
+	 *
+	 * @throws ParseException if {@code bytes} don't hold valid encoded graph of type {@code F}
+	 */
+	public static <F extends Enum<F> & NarField> NarGraph<F> decode(byte[] bytes, Class<F> clazz) throws ParseException {
+		return decode(ByteBuffer.wrap(bytes), clazz);
+	}
+
+	/**
+	 * Decodes graph from {@code buffer}, starting at buffer's current position. On success, buffer's position is advanced
+	 * past decoded graph (so multiple graphs or other data may follow each other in the same buffer); on failure it's not changed.
+	 *
+	 * @param buffer buffer holding encoded graph
+	 * @param clazz class representing first-level field type
+	 * @param <F> first-level field type
+	 *
+	 * @return decoded graph
+	 *
+	 * @throws ParseException if {@code buffer} doesn't hold valid encoded graph of type {@code F} (error offset is relative
+	 * to buffer's position)
+	 */
+	public static <F extends Enum<F> & NarField> NarGraph<F> decode(ByteBuffer buffer, Class<F> clazz) throws ParseException {
+		NarGraphCodec decoder = new NarGraphCodec(buffer);
+		byte version = decoder.readByte();
+		if (version != Version)
+			throw new ParseException("Unsupported format version: " + version, 0);
+		NarGraph<F> graph = decoder.decodeLevel(FieldTable.of(clazz));
+		buffer.position(decoder.position);
+		return graph;
+	}
+
+	// recursive
+	private static int getLevelSize(NarGraph<?> graph) {
+		FieldTable<?> table = graph.getTable();
+		int wordCount = table.getWordCount();
+		int fieldCount = getWordsToWrite(graph, wordCount);
+		int size = getVarintSize(fieldCount);
+		for (int w = 0; w < fieldCount; ++w)
+			size += getVarintSize(graph.getWord(w));
+		int subgraphCount = getSubgraphWordsToWrite(graph, wordCount);
+		size += getVarintSize(subgraphCount);
+		for (int w = 0; w < subgraphCount; ++w)
+			size += getVarintSize(getSubgraphWord(graph, w));
+		for (int w = 0; w < subgraphCount; ++w)
+			for (long mask = getSubgraphWord(graph, w); mask != 0; mask &= mask - 1)
+				size += getLevelSize(graph.getGraph((w << 6) + Long.numberOfTrailingZeros(mask)));
+		return size;
+	}
+
+	// recursive
+	private static void encodeLevel(NarGraph<?> graph, ByteBuffer buffer) {
+		int wordCount = graph.getTable().getWordCount();
+		int fieldCount = getWordsToWrite(graph, wordCount);
+		writeVarint(buffer, fieldCount);
+		for (int w = 0; w < fieldCount; ++w)
+			writeVarint(buffer, graph.getWord(w));
+		int subgraphCount = getSubgraphWordsToWrite(graph, wordCount);
+		writeVarint(buffer, subgraphCount);
+		for (int w = 0; w < subgraphCount; ++w)
+			writeVarint(buffer, getSubgraphWord(graph, w));
+		for (int w = 0; w < subgraphCount; ++w)
+			for (long mask = getSubgraphWord(graph, w); mask != 0; mask &= mask - 1)
+				encodeLevel(graph.getGraph((w << 6) + Long.numberOfTrailingZeros(mask)), buffer);
+	}
+
+	/** Returns number of bitmask words up to (and including) last non-zero one */
+	private static int getWordsToWrite(NarGraph<?> graph, int wordCount) {
+		for (int w = wordCount; w > 0; --w)
+			if (graph.getWord(w - 1) != 0)
+				return w;
+		return 0;
+	}
+
+	/** Returns number of subgraph presence bitmask words up to (and including) last non-zero one */
+	private static int getSubgraphWordsToWrite(NarGraph<?> graph, int wordCount) {
+		for (int w = wordCount; w > 0; --w)
+			if (getSubgraphWord(graph, w - 1) != 0)
+				return w;
+		return 0;
+	}
+
+	/** Returns bitmask of fields within given word that have non-empty subgraphs */
+	private static long getSubgraphWord(NarGraph<?> graph, int word) {
+		long mask = 0L;
+		for (long fields = graph.getWord(word); fields != 0; fields &= fields - 1) {
+			int bit = Long.numberOfTrailingZeros(fields);
+			NarGraph<?> subgraph = graph.getGraph((word << 6) + bit);
+			if (subgraph != null && !subgraph.isEmpty())
+				mask |= 1L << bit;
+		}
+		return mask;
+	}
+
+	private static int getVarintSize(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			++size;
+		}
+		return size;
+	}
+
+	private static void writeVarint(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private NarGraphCodec(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.start = buffer.position();
+		this.position = start;
+	}
+
+	// recursive
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private <F extends Enum<F> & NarField> NarGraph<F> decodeLevel(FieldTable<F> table) throws ParseException {
+
+		int wordCount = table.getWordCount();
+		long[] words = table.isRegular() ? null : new long[wordCount];
+		long bits = 0L;
+
+		int fieldCount = readCount(wordCount, table);
+		for (int w = 0; w < fieldCount; ++w) {
+			int offset = position - start;
+			long word = readVarint();
+			if ((word & ~table.getWordMask(w)) != 0)
+				throw new UnknownFieldException("#" + ((w << 6) + Long.numberOfTrailingZeros(word & ~table.getWordMask(w))), table.getDeclaringClass(), offset);
+			if (words == null)
+				bits = word;
+			else
+				words[w] = word;
+		}
+
+		int subgraphCount = readCount(wordCount, table);
+		if (subgraphCount == 0)
+			return new NarGraph<>(table, bits, words, null);
+
+		long[] subgraphWords = new long[subgraphCount];
+		for (int w = 0; w < subgraphCount; ++w) {
+			int offset = position - start;
+			long word = readVarint();
+			if ((word & ~(words == null ? bits : words[w])) != 0)
+				throw new ParseException("Subgraph flagged for field not present in graph", offset);
+			subgraphWords[w] = word;
+		}
+
+		NarGraph<?>[] subgraphs = new NarGraph<?>[table.size()];
+		for (int w = 0; w < subgraphCount; ++w)
+			for (long mask = subgraphWords[w]; mask != 0; mask &= mask - 1) {
+				F field = table.get((w << 6) + Long.numberOfTrailingZeros(mask));
+				Class subClass = field.getNarFieldClass();
+				if (subClass == null)
+					throw new ParseException("Field " + field + " doesn't describe object with subfields", position - start);
+				subgraphs[field.ordinal()] = decodeLevel(FieldTable.of(subClass));
+			}
+
+		return new NarGraph<>(table, bits, words, subgraphs);
+
+	}
+
+	private int readCount(int wordCount, FieldTable<?> table) throws ParseException {
+		int offset = position - start;
+		long count = readVarint();
+		if (count < 0 || count > wordCount)
+			throw new ParseException("Bitmask of " + count + " word(s) exceeds " + wordCount + " word(s) needed for " + table.getDeclaringClass().getName(), offset);
+		return (int) count;
+	}
+
+	private long readVarint() throws ParseException {
+		long value = 0L;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw new ParseException("Malformed varint", position - start);
+	}
+
+	private byte readByte() throws ParseException {
+		if (position >= buffer.limit())
+			throw new ParseException("Reached end of input before graph ended", position - start);
+		return buffer.get(position++);
+	}
+
+	private final ByteBuffer buffer;
+	private final int start;
+	private int position;
+
+}
@@ -0,0 +1,183 @@
+package com.steatoda.nar;
+
+import java.text.ParseException;
+
+/**
+ * <p>Parses string representation of {@link NarGraph} (see {@link NarGraph#of(String, Class)} for syntax) in a single pass,
+ * resolving field names directly against per-type lookup tables and building graph levels as it goes
+ * (no intermediate maps, keys or substrings are created).</p>
+ *
+ * <p>Any {@link CharSequence} may be parsed. For parsing straight from UTF-8 encoded bytes, see {@link NarGraphByteParser}.</p>
+ *
+ * <p>Wildcards ({@code *} and {@code **:n}) are expanded using memoized expansions shared between all parsed graphs
+ * (see {@link NarGraph#allOf(Class, int)}).</p>
+ *
+ * <p>Parsed graphs are <u>not</u> cached. For cached parsing, see {@link NarGraphParseCache}.</p>
+ */
+public final class NarGraphParser {
+
+	/** Maximum depth allowed in recursive wildcards ({@code **:n}), guarding against unbounded expansion requests. */
+	public static final int MaxWildcardDepth = 32;
+
+	/**
+	 * Parses graph from {@code value}.
+	 *
+	 * @param value string to parse
+	 * @param clazz class representing first-level field type
+	 * @param <F> first-level field type
+	 *
+	 * @return {@link NarGraph} of type {@code F} initialized with field graph parsed from {@code value}
+	 *
+	 * @throws ParseException is value cannot be parsed
+	 */
+	public static <F extends Enum<F> & NarField> NarGraph<F> parse(CharSequence value, Class<F> clazz) throws ParseException {
+		FieldTable<F> table = FieldTable.of(clazz);
+		if (value == null || isBlank(value))
+			return table.getEmptyGraph();
+		return new NarGraphParser(value).parseLevel(table, false);
+	}
+
+	private NarGraphParser(CharSequence value) {
+		this.value = value;
+		this.length = value.length();
+	}
+
+	// recursive; on return, position points either to the end of value or to '}' that closed this level
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private <F extends Enum<F> & NarField> NarGraph<F> parseLevel(FieldTable<F> table, boolean subfields) throws ParseException {
+
+		long bits = 0L;
+		long[] words = table.isRegular() ? null : new long[table.getWordCount()];
+		NarGraph<?>[] subgraphs = null;
+		int wildcardDepth = 0;
+
+		int start = position;
+		int end;
+
+		while (true) {
+
+			char c = 0;
+
+			// parse (optional) wildcard
+			if (start < length && value.charAt(start) == '*') {
+				int depth = 1;
+				end = start + 1;
+				if (end < length && value.charAt(end) == '*') {
+					++end;
+					if (end == length || value.charAt(end) != ':')
+						throw new ParseException("Recursive wildcard requires depth (e.g. **:2)", end);
+					++end;
+					int digitsStart = end;
+					depth = 0;
+					while (end < length && Character.isDigit(value.charAt(end))) {
+						depth = 10 * depth + Character.digit(value.charAt(end), 10);
+						if (depth > MaxWildcardDepth)
+							throw new ParseException("Recursive wildcard depth exceeds " + MaxWildcardDepth, digitsStart);
+						++end;
+					}
+					if (end == digitsStart || depth < 1)
+						throw new ParseException("Recursive wildcard depth must be positive number", digitsStart);
+				}
+				wildcardDepth = Math.max(wildcardDepth, depth);
+				if (end == length)
+					break;
+				c = value.charAt(end);
+				if (c == ',')
+					start = end + 1;
+				else if (subfields && c == '}')
+					break;
+				else
+					throw new ParseException("Illegal character: '" + c + "'", end);
+				continue;
+			}
+
+			// parse field name
+			end = start;
+			while (true) {
+				if (end == length)
+					break;
+				c = value.charAt(end);
+				if ((start == end && !isFieldIdentifierStart(c)) || !isFieldIdentifierPart(c))
+					break;
+				++end;
+			}
+
+			if (start == end)
+				throw new ParseException("Zero-length field name", start);
+
+			F field = table.lookup(value, start, end);
+			if (field == null)
+				throw new UnknownFieldException(value.subSequence(start, end).toString(), table.getDeclaringClass(), start);
+
+			int ordinal = field.ordinal();
+			if (words == null)
+				bits |= 1L << ordinal;
+			else
+				words[ordinal >>> 6] |= 1L << ordinal;
+
+			// parse (optional) subset
+			NarGraph<?> subgraph = null;
+			if (c == '{') {
+				Class subClass = field.getNarFieldClass();
+				if (subClass == null)
+					throw new ParseException("Field " + field + " doesn't describe object with subfields", start);
+				position = end + 1;
+				subgraph = parseLevel(FieldTable.of(subClass), true);
+				end = position;
+				if (end == length)
+					throw new ParseException("Reached end-of-line before subfields declaration ended (start was at " + start + ")", end);
+				else if (value.charAt(end) != '}')
+					throw new ParseException("Unterminated subfields declaration (start was at " + start + ")", end);
+				++end;
+				if (end < length)
+					c = value.charAt(end);
+			}
+
+			// later declaration of the same field overrides previous one
+			if (subgraph != null && subgraphs == null)
+				subgraphs = new NarGraph<?>[table.size()];
+			if (subgraphs != null)
+				subgraphs[ordinal] = subgraph;
+
+			if (end == length)
+				break;	// reached end of value
+			else if (c == ',')
+				start = end + 1;	// reached end of field (WITHOUT subfields)
+			else if (subfields && c == '}')
+				break;	// reached end of subfields
+			else
+				throw new ParseException("Illegal character: '" + c + "'", end);
+
+		}
+
+		position = end;
+
+		NarGraph<F> graph = new NarGraph<>(table, bits, words, subgraphs);
+
+		if (wildcardDepth > 0)
+			graph = table.getExpandedGraph(wildcardDepth).union(graph);
+
+		return graph;
+
+	}
+
+	private static boolean isBlank(CharSequence value) {
+		for (int i = 0; i < value.length(); ++i)
+			if (value.charAt(i) > ' ')	// same as String.trim()
+				return false;
+		return true;
+	}
+
+	private static boolean isFieldIdentifierStart(char c) {
+		return Character.isLetter(c) || c == '$' || c == '_';
+	}
+
+	private static boolean isFieldIdentifierPart(char c) {
+		return isFieldIdentifierStart(c) || Character.isDigit(c);
+	}
+
+	private final CharSequence value;
+	private final int length;
+	private int position = 0;
+
+}
@@ -0,0 +1,310 @@
+package com.steatoda.nar;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.steatoda.nar.service.NarService;
+
+/**
+ * <p>Resolves (nested) graphs level by level, fetching all entities of the same type found at one level of graph
+ * using <u>one</u> {@link NarService#getAll} invocation.</p>
+ *
+ * <p>Services are registered per entity type. Fields holding entities of registered types (including collections,
+ * maps and arrays of them) are fetched as references only, and resolved at next level together with all other entities
+ * of that type found at that level. Fields holding any other objects are resolved by their owner's service, as usual.
+ * Number of service invocations thus depends on graph's depth, instead of on number of objects resolved.</p>
+ *
+ * <p>When extending, only entities actually missing some fields are fetched (by their ID) and extended in place, so
+ * collection holding thousands of sub-entities, only few of which are incomplete, costs fetching those few only
+ * (instead of re-fetching whole collection).</p>
+ *
+ * <blockquote><pre>
+ * NarGraphResolver resolver = new NarGraphResolver()
+ *     .register(Marina.Field.class, marinaService)
+ *     .register(Berth.Field.class, berthService)
+ *     .register(Boat.Field.class, boatService)
+ *     .register(Person.Field.class, personService);
+ *
+ * // berths{boat{skipper{name}}} costs four invocations, regardless of number of berths
+ * Marina marina = resolver.get(marinaId, graph);
+ * </pre></blockquote>
+ *
+ * <p>Services should be registered before resolver is used; resolving itself is thread-safe.</p>
+ */
+public class NarGraphResolver {
+
+	/**
+	 * Registers service resolving entities described by {@code fieldsClass}.
+	 *
+	 * @param fieldsClass field type of entities resolved by {@code service}
+	 * @param service service resolving entities
+	 *
+	 * @param <I> ID type
+	 * @param <C> entity type
+	 * @param <F> field type
+	 *
+	 * @return this
+	 */
+	public <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> NarGraphResolver register(Class<F> fieldsClass, NarService<I, C, F> service) {
+		services.put(fieldsClass, Objects.requireNonNull(service));
+		return this;
+	}
+
+	/**
+	 * Returns service registered for entities described by {@code fieldsClass}.
+	 *
+	 * @param fieldsClass field type
+	 *
+	 * @param <I> ID type
+	 * @param <C> entity type
+	 * @param <F> field type
+	 *
+	 * @return registered service or {@code null} if there's none
+	 */
+	@SuppressWarnings("unchecked")
+	public <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> NarService<I, C, F> getService(Class<F> fieldsClass) {
+		return (NarService<I, C, F>) services.get(fieldsClass);
+	}
+
+	/**
+	 * Resolves entity with given {@code id} with fields initialized as specified by {@code graph}.
+	 *
+	 * @param id entity's ID
+	 * @param graph field graph to initialize
+	 *
+	 * @param <I> ID type
+	 * @param <C> entity type
+	 * @param <F> field type
+	 *
+	 * @return resolved entity or {@code null} if entity could not be found
+	 *
+	 * @throws IllegalArgumentException if there's no service registered for {@code graph}'s fields
+	 * @throws EntityUnavailableException if some of sub-entities can't be found
+	 */
+	public <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> C get(I id, NarGraph<F> graph) throws EntityUnavailableException {
+		return this.<I, C, F>getAll(Collections.singletonList(id), graph).get(id);
+	}
+
+	/**
+	 * Resolves entities with given {@code ids} with fields initialized as specified by {@code graph}.
+	 *
+	 * @param ids entities' IDs
+	 * @param graph field graph to initialize
+	 *
+	 * @param <I> ID type
+	 * @param <C> entity type
+	 * @param <F> field type
+	 *
+	 * @return resolved entities mapped by ID; entities that could not be found are not present
+	 *
+	 * @throws IllegalArgumentException if there's no service registered for {@code graph}'s fields
+	 * @throws EntityUnavailableException if some of sub-entities can't be found
+	 */
+	public <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> Map<I, C> getAll(Collection<I> ids, NarGraph<F> graph) throws EntityUnavailableException {
+		NarService<I, C, F> service = requireService(graph.getDeclaringClass());
+		Map<I, C> entities = service.getAll(ids, levelGraph(graph));
+		resolve(entities.values(), graph);
+		return entities;
+	}
+
+	/**
+	 * Ensures entity has all requested fields, fetching missing ones (and ones missing from its sub-entities) level by level.
+	 *
+	 * @param entity entity to extend
+	 * @param graph field graph to set if missing
+	 *
+	 * @param <I> ID type
+	 * @param <C> entity type
+	 * @param <F> field type
+	 *
+	 * @return {@code true} if any entity was extended, {@code false} if no extension was needed (nor performed)
+	 *
+	 * @throws IllegalArgumentException if there's no service registered for some entity requiring extension
+	 * @throws EntityUnavailableException if missing (sub)fields can't be fetched
+	 */
+	public <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> boolean extend(C entity, NarGraph<F> graph) throws EntityUnavailableException {
+		return resolve(Collections.singletonList(entity), graph);
+	}
+
+	/**
+	 * Ensures all {@code entities} have all requested fields, fetching missing ones (and ones missing from their
+	 * sub-entities) level by level.
+	 *
+	 * @param entities entities to extend
+	 * @param graph field graph to set if missing
+	 *
+	 * @param <I> ID type
+	 * @param <C> entity type
+	 * @param <F> field type
+	 *
+	 * @return {@code true} if any entity was extended, {@code false} if no extension was needed (nor performed)
+	 *
+	 * @throws IllegalArgumentException if there's no service registered for some entity requiring extension
+	 * @throws EntityUnavailableException if missing (sub)fields can't be fetched
+	 */
+	public <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> boolean extendAll(Collection<C> entities, NarGraph<F> graph) throws EntityUnavailableException {
+		return resolve(entities, graph);
+	}
+
+	/** Entity to resolve at some level, together with graph it should have */
+	private static class Node {
+
+		Node(NarEntity<?, ?, ?> entity, NarGraph<?> graph) {
+			this.entity = entity;
+			this.graph = graph;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Node))
+				return false;
+			Node other = (Node) obj;
+			return entity == other.entity && graph.equals(other.graph);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(entity) + graph.hashCode();
+		}
+
+		private final NarEntity<?, ?, ?> entity;
+		private final NarGraph<?> graph;
+
+	}
+
+	/** Entities of one type to fetch at one level */
+	private static class Batch<I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> {
+
+		Batch(Class<F> fieldsClass) {
+			this.missingGraphBuilder = NarGraph.Builder.of(fieldsClass);
+		}
+
+		@SuppressWarnings("unchecked")
+		void add(NarEntity<?, ?, ?> entity, NarGraph<F> missingGraph) {
+			C typedEntity = (C) entity;
+			if (typedEntity.getId() == null)
+				throw new EntityUnavailableException(typedEntity);
+			entities.merge(typedEntity, missingGraph, NarGraph::union);
+			ids.add(typedEntity.getId());
+			missingGraphBuilder.add(missingGraph);
+		}
+
+		void fetch(NarService<I, C, F> service) {
+			Map<I, C> extensions = service.getAll(ids, missingGraphBuilder.build());
+			for (Map.Entry<C, NarGraph<F>> entry : entities.entrySet()) {
+				C extension = extensions.get(entry.getKey().getId());
+				if (extension == null)
+					throw new EntityUnavailableException(entry.getKey());
+				entry.getKey()._extend(extension, entry.getValue());
+			}
+		}
+
+		/** Entities to extend, with graph missing from each (identity, since entity's equals may rely on ID only) */
+		private final Map<C, NarGraph<F>> entities = new IdentityHashMap<>();
+		private final Set<I> ids = new LinkedHashSet<>();
+		private final NarGraph.Builder<F> missingGraphBuilder;
+
+	}
+
+	private boolean resolve(Collection<? extends NarEntity<?, ?, ?>> entities, NarGraph<?> graph) {
+
+		boolean extended = false;
+
+		Set<Node> level = new LinkedHashSet<>();
+		for (NarEntity<?, ?, ?> entity : entities)
+			level.add(new Node(entity, graph));
+
+		while (!level.isEmpty()) {
+
+			// fetch everything missing at this level, one batch per type
+			Map<Class<?>, Batch<?, ?, ?>> batches = new LinkedHashMap<>();
+			for (Node node : level)
+				addToBatch(batches, node);
+			for (Map.Entry<Class<?>, Batch<?, ?, ?>> entry : batches.entrySet())
+				fetch(entry.getKey(), entry.getValue());
+			extended |= !batches.isEmpty();
+
+			// descend into fields holding entities of registered types
+			Set<Node> nextLevel = new LinkedHashSet<>();
+			for (Node node : level)
+				collectNextLevel(node, nextLevel);
+			level = nextLevel;
+
+		}
+
+		return extended;
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F extends Enum<F> & NarField> void addToBatch(Map<Class<?>, Batch<?, ?, ?>> batches, Node node) {
+		NarEntity<?, ?, F> entity = (NarEntity<?, ?, F>) node.entity;
+		NarGraph<F> missingGraph = entity.getMissingGraph(levelGraph((NarGraph<F>) node.graph));
+		if (missingGraph.isEmpty())
+			return;
+		Class<F> fieldsClass = entity.getFieldsClass();
+		batches.computeIfAbsent(fieldsClass, clazz -> new Batch<>(fieldsClass));
+		((Batch<?, ?, F>) batches.get(fieldsClass)).add(entity, missingGraph);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> void fetch(Class<?> fieldsClass, Batch<?, ?, ?> batch) {
+		((Batch<I, C, F>) batch).fetch(requireService((Class<F>) fieldsClass));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F extends Enum<F> & NarField> void collectNextLevel(Node node, Set<Node> nextLevel) {
+		NarEntity<?, ?, F> entity = (NarEntity<?, ?, F>) node.entity;
+		NarGraph<F> graph = (NarGraph<F>) node.graph;
+		for (F field : graph) {
+			NarGraph<?> subgraph = graph.getGraph(field);
+			if (subgraph == null || subgraph.isEmpty() || !isDeferred(field))
+				continue;
+			FieldTraversal.walk(entity.getFieldValue(field), field, subObject -> {
+				if (!(subObject instanceof NarEntity))
+					throw new IllegalStateException("Field " + field + " holds " + subObject.getClass().getName() + " which is not an entity");
+				nextLevel.add(new Node((NarEntity<?, ?, ?>) subObject, subgraph));
+				return true;
+			});
+		}
+	}
+
+	/**
+	 * Builds graph to fetch at current level: same as {@code graph}, but with fields holding entities of registered
+	 * types stripped to references (their subgraphs are fetched at next level).
+	 */
+	private <F extends Enum<F> & NarField> NarGraph<F> levelGraph(NarGraph<F> graph) {
+		NarGraph.Builder<F> builder = null;
+		for (F field : graph) {
+			if (graph.getGraph(field) == null || !isDeferred(field))
+				continue;
+			if (builder == null)
+				builder = NarGraph.Builder.of(graph);
+			builder.set(field, null);
+		}
+		return builder != null ? builder.build() : graph;
+	}
+
+	/** Checks if entities {@code field} holds are resolved at next level */
+	private boolean isDeferred(NarField field) {
+		Class<?> fieldClass = field.getNarFieldClass();
+		return fieldClass != null && services.containsKey(fieldClass);
+	}
+
+	private <I, C extends NarEntity<I, C, F>, F extends Enum<F> & NarField> NarService<I, C, F> requireService(Class<F> fieldsClass) {
+		NarService<I, C, F> service = getService(fieldsClass);
+		if (service == null)
+			throw new IllegalArgumentException("No service registered for " + fieldsClass.getName());
+		return service;
+	}
+
+	private final Map<Class<?>, NarService<?, ?, ?>> services = new HashMap<>();
+
+}
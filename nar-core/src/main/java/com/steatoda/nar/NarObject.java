@@ -1,15 +1,17 @@
 package com.steatoda.nar;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 import com.google.common.collect.Sets;
 import com.steatoda.nar.service.NarService;
@@ -48,7 +50,11 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	 */
 	@SuppressWarnings("unchecked")
 	default boolean hasFields(F... fields) {
-		return hasFields(Arrays.asList(fields));
+		Set<F> ownFields = getFields();
+		for (F field : fields)
+			if (!ownFields.contains(field))
+				return false;
+		return true;
 	}
 
 	/**
@@ -62,6 +68,19 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 		return getFields().containsAll(fields);
 	}
 
+	/**
+	 * Checks if requested field is set. Unlike {@link #hasFieldsAsString(String...)}, doesn't allocate varargs array.
+	 *
+	 * @param field field to check (in string form, parsed using {@link #parseField(String)})
+	 *
+	 * @return {@code true} if requested field is set, {@code false} otherwise
+	 *
+	 * @throws IllegalArgumentException if specified field can't be parsed as enum of type returned by {@link #getFieldsClass()}
+	 */
+	default boolean hasFieldsAsString(String field) {
+		return getFields().contains(parseField(field));
+	}
+
 	/**
 	 * Checks if all requested fields are set.
 	 *
@@ -72,7 +91,10 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	 * @throws IllegalArgumentException if any of specified fields can't be parsed as enum of type returned by {@link #getFieldsClass()}
 	 */
 	default boolean hasFieldsAsString(String... fields) {
-		return hasFieldsAsString(Arrays.asList(fields));
+		for (String field : fields)
+			if (!hasFieldsAsString(field))
+				return false;
+		return true;
 	}
 
 	/**
@@ -85,7 +107,10 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	 * @throws IllegalArgumentException if any of specified fields can't be parsed as enum of type returned by {@link #getFieldsClass()}
 	 */
 	default boolean hasFieldsAsString(Collection<String> fields) {
-		return hasFields(fields.stream().map(this::parseField).collect(Collectors.toSet()));
+		for (String field : fields)
+			if (!hasFieldsAsString(field))
+				return false;
+		return true;
 	}
 
 	/**
@@ -96,16 +121,50 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	 * @return {@code true} if all requested fields are set together with their subfields, {@code false} otherwise
 	 */
 	default boolean hasGraph(NarGraph<F> graph) {
+		if (graph.isFlat())
+			return hasFields(graph);
 		return getMissingGraph(graph).isEmpty();
 	}
 
+	/**
+	 * <p>Returns cheap signature of initialized fields: bitmask with bit {@code n} set if field with ordinal {@code n} is
+	 * initialized. Signature identifies set of initialized fields exactly for field types with up to 64 fields (other
+	 * fields are not represented).</p>
+	 *
+	 * <p>Default implementation iterates over {@link #getFields()}, so implementations tracking fields in bitmask (like
+	 * {@link NarObjectBase}) should override it.</p>
+	 *
+	 * @return signature of initialized fields
+	 */
+	default long getFieldsSignature() {
+		long signature = 0L;
+		for (F field : getFields())
+			if (field.ordinal() < 64)
+				signature |= 1L << field.ordinal();
+		return signature;
+	}
+
+	/**
+	 * <p>Checks if missing graph of flat graphs (ones without any subgraph) is determined by {@link #getFieldsSignature()}
+	 * alone, so that {@link #getMissingGraph(NarGraph)} may look it up (and share it between objects with same fields
+	 * initialized) instead of invoking {@link #_appendMissingGraph} and {@link #appendMissingGraph} for each field.</p>
+	 *
+	 * <p>Default implementation returns {@code false}, since those methods may be overridden. Override to return
+	 * {@code true} if they're not.</p>
+	 *
+	 * @return {@code true} if missing graph of flat graphs may be looked up by fields signature, {@code false} otherwise
+	 */
+	default boolean isMissingGraphBySignature() {
+		return false;
+	}
+
 	/**
 	 * Returns enum class used to represent fields.
 	 */
 	Class<F> getFieldsClass();
 
 	/**
-	 * Parses {@code str} as field enum
+	 * Parses {@code str} as field enum, using precomputed (per field type) name lookup table.
 	 *
 	 * @param str string value to parse
 	 *
@@ -114,7 +173,7 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	 * @throws IllegalArgumentException if specified value can't be parsed as enum of type returned by {@link #getFieldsClass()}
 	 */
 	default F parseField(String str) {
-		return Enum.valueOf(getFieldsClass(), str);
+		return FieldTable.of(getFieldsClass()).parse(str);
 	}
 
 	/**
@@ -126,8 +185,20 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	*/
 	@SuppressWarnings("unchecked")
 	default Object getFieldValue(F field) {
-		// piggyback on pull (from self)
-		return pull(field, (C) this, NarGraph.noneOf(getFieldsClass()));
+		return getFieldAccessor().get((C) this, field);
+	}
+
+	/**
+	 * <p>Returns accessor used to read and write field values directly.</p>
+	 *
+	 * <p>Default implementation piggybacks on {@link #pull(Enum, NarObject, NarGraph)}. Override it to return dedicated
+	 * {@link NarFieldAccessor} (e.g. one generated by {@code nar-processor}) to avoid going through {@code pull} whenever
+	 * field value is inspected or cleared.</p>
+	 *
+	 * @return field accessor for this object
+	 */
+	default NarFieldAccessor<C, F> getFieldAccessor() {
+		return PullFieldAccessor.get();
 	}
 
 	/**
@@ -256,13 +327,12 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	 *
 	 * @return {@code true} if any field was cleared, {@code false} otherwise
 	 */
+	@SuppressWarnings("unchecked")
 	default boolean clearFields(Collection<F> fields) {
-		// nullify by pulling from dummy
-		C dummy = ref();
-		dummy.getFields().addAll(fields);	// initialize fields so that possible checks in getter do not fail
+		NarFieldAccessor<C, F> accessor = getFieldAccessor();
 		for (F field : fields)
 			if (getFields().contains(field))
-				pull(field, dummy, NarGraph.of(field));
+				accessor.set((C) this, field, null);
 		return getFields().removeAll(fields);
 	}
 	
@@ -384,6 +454,67 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 		return clone;
 	}
 
+	/**
+	 * <p>Returns copy-on-write copy of this object, with exact fields as this object.</p>
+	 *
+	 * <p>Implementations may share field values (sub-objects, collections etc.) with this object and copy them only when
+	 * they are about to be modified (see {@link #unshare(Enum)}). Default implementation doesn't share anything and simply
+	 * delegates to {@link #cloneAll()}. See {@link NarObjectBase#cloneShared()} for implementation that does share values.</p>
+	 *
+	 * @return object's copy
+	 */
+	default C cloneShared() {
+		return cloneAll();
+	}
+
+	/**
+	 * <p>Prepares {@code field}'s value to be modified in place: if value is shared with another object (see
+	 * {@link #cloneShared()}), replaces it with own copy. Nar calls this itself before modifying sub-objects in place (e.g.
+	 * when extending or intersecting); callers should do the same before modifying values read through getters.</p>
+	 *
+	 * <p>Default implementation doesn't share anything, so there's nothing to do.</p>
+	 *
+	 * @param field field whose value is about to be modified in place
+	 */
+	default void unshare(F field) {
+	}
+
+	/**
+	 * <p>Freezes this object (and its sub-objects) into immutable snapshot that may be shared (e.g. between threads) without
+	 * copying. Once frozen, object can't be modified: setters and {@link #setFields(Set)} fail with
+	 * {@link UnsupportedOperationException}. Use {@link #thaw()} to get modifiable copy.</p>
+	 *
+	 * <p>Default implementation doesn't support freezing. See {@link NarObjectBase#freeze()}.</p>
+	 *
+	 * @return this object
+	 *
+	 * @throws UnsupportedOperationException if implementation doesn't support freezing
+	 */
+	default C freeze() {
+		throw new UnsupportedOperationException(getClass().getName() + " doesn't support freezing");
+	}
+
+	/**
+	 * Checks if this object is frozen (see {@link #freeze()}).
+	 *
+	 * @return {@code true} if object is frozen, {@code false} otherwise
+	 */
+	default boolean isFrozen() {
+		return false;
+	}
+
+	/**
+	 * Returns modifiable version of this object: object itself if it's not frozen, its copy (see {@link #cloneShared()})
+	 * otherwise. Copy's values may still be shared with frozen object, so they have to be {@link #unshare(Enum) unshared}
+	 * before being modified in place.
+	 *
+	 * @return modifiable object
+	 */
+	@SuppressWarnings("unchecked")
+	default C thaw() {
+		return isFrozen() ? cloneShared() : (C) this;
+	}
+
 	/**
 	 * Returns object's copy with exact fields as this object, but with all sub-objects striped to references.
 	 *
@@ -480,6 +611,7 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 
 		// we have this field, but sub-graph is requested - do we have it all?
 
+		unshare(field);
 		Object subObject = getFieldValue(field);
 		Object subExtension = extension.getFieldValue(field);
 
@@ -488,194 +620,124 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	}
 
 	/**
-	 * <p>Recursively extends {@code subObject} by pulling {@code field}'s value from {@code subExtension}. If {@code subObject}
-	 * represents {@link Collection}, descends extension to all members. If {@code subObject} represents {@link Map},
-	 * descends extension to all keys and values (if they implement {@link NarObject}).</p>
+	 * <p>Extends {@code subObject} by pulling {@code field}'s value from {@code subExtension}. If {@code subObject}
+	 * represents {@link Collection}, {@link Map} or array, extends every {@link NarObject} they (possibly nested) hold
+	 * (see {@link NarField#getNarMapContent()}).</p>
 	 *
 	 * <p><b>INTERNAL</b></p>
 	 *
 	 * @param subObject object to extend
-	 * @param subExtension extension from which to pull values (may be instance of {@link NarObject}, but also {@link Collection}
-	 *                     or {@link Map} holding instance of required {@link NarObject}
+	 * @param subExtension extension from which to pull values (may be instance of {@link NarObject}, but also {@link Collection},
+	 *                     {@link Map} or array holding instance of required {@link NarObject}
 	 * @param field field describing value to pull
 	 * @param graph fields graph from which to extract subgraph for requested field
 	 *
-	 * @throws IllegalStateException if {@code subObject} doesn't represent instance/collection/map of {@link NarObject}
-	 * @throws EntityUnavailableException if {@code subExtension} doesn't equal to {@code subObject} or doesn't contain {@code subObject} (for collections and maps)
+	 * @throws IllegalStateException if {@code subObject} doesn't represent instance/collection/map/array of {@link NarObject}
+	 * @throws EntityUnavailableException if {@code subExtension} doesn't equal to {@code subObject} or doesn't contain {@code subObject} (for collections, maps and arrays)
 	 */
 	default void _extendRecursively(Object subObject, Object subExtension, F field, NarGraph<F> graph) throws EntityUnavailableException {
 
 		if (subObject instanceof NarObject) {
-
-			// simple sub-object
-			
+			// simple sub-object, no need to index anything
 			NarObject<?, ?> fieldSubObject = (NarObject<?, ?>) subObject;
-			NarObject<?, ?> fieldSubExtension = _search(fieldSubObject, subExtension);
-			
+			NarObject<?, ?> fieldSubExtension = _search(fieldSubObject, subExtension, field);
 			if (fieldSubExtension == null)
 				throw new EntityUnavailableException(fieldSubObject);
-			
 			fieldSubObject._extend(fieldSubExtension, graph.getGraph(field, fieldSubObject.getFieldsClass()));
-			
-		} else if (subObject instanceof Collection) {
-
-			// BEWARE: O(n^m) (n - size of largest collection, m - levels of nested collections)
-
-			Collection<?> subCollection = (Collection<?>) subObject;
-
-			if (subCollection.isEmpty())
-				return;
-
-			// append missing sub-graph for *every* member
-			for (Object subItem : subCollection)
-				_extendRecursively(subItem, subExtension, field, graph);
-
-		} else if (subObject instanceof Map) {
-
-			// BEWARE: O(n^2m) (n - size of largest collection, m - levels of nested collections)
+			return;
+		}
 
-			Map<?, ?> subMap = (Map<?, ?>) subObject;
+		BiConsumer<Map<Object, NarObject<?, ?>>, NarObject<?, ?>> extender = (extensionIndex, fieldSubObject) -> {
+			NarObject<?, ?> fieldSubExtension = extensionIndex.get(FieldTraversal.indexKey(fieldSubObject));
+			if (fieldSubExtension == null)
+				throw new EntityUnavailableException(fieldSubObject);
+			fieldSubObject._extend(fieldSubExtension, graph.getGraph(field, fieldSubObject.getFieldsClass()));
+		};
 
-			if (subMap.isEmpty())
+		NarTraversalExecutor executor = NarTraversalExecutor.getDefault();
+		// sub-objects are collected only if there may be enough of them to be worth extending concurrently
+		if (executor.isParallel(FieldTraversal.estimateCount(subObject, field))) {
+			List<NarObject<?, ?>> fieldSubObjects = FieldTraversal.collect(subObject, field);
+			if (fieldSubObjects.isEmpty())
 				return;
-
-			// extend sub-graph for *every* entry, trying to recurse into both keys and values (ignoring IllegalStateException(s)),
-			// assuming either one is legal field-object
-			// throw IllegalStateException only if neither key nor value could be extended
-			boolean processKey = true;
-			boolean processValue = true;
-
-			for (Map.Entry<?, ?> subEntry : subMap.entrySet()) {
-				if (processKey)
-					try {
-						_extendRecursively(subEntry.getKey(), subExtension, field, graph);
-					} catch (IllegalStateException e) {
-						processKey = false;	// no need to try again
-					}
-				if (processValue)
-					try {
-						_extendRecursively(subEntry.getValue(), subExtension, field, graph);
-					} catch (IllegalStateException e) {
-						processValue = false;	// no need to try again
-					}
-				if (!processKey && !processValue)
-					throw new IllegalStateException("Field " + field + " of class " + getClass().getName() + " descends into a map whose nor key nor value doesn't support field access");
-			}
-
-		} else {
-			
-			// TODO arrays
-
-			throw new IllegalStateException("Field " + field + " of class " + getClass().getName() + " is of un-extendable type " + subObject.getClass().getName());
-
+			Map<Object, NarObject<?, ?>> extensionIndex = FieldTraversal.index(subExtension, field);
+			// sub-objects are extended concurrently only if they don't share any (nested) sub-object
+			if (!executor.isParallel(fieldSubObjects.size()) || !FieldTraversal.isDisjoint(fieldSubObjects, graph.getGraph(field)))
+				executor = NarTraversalExecutor.Sequential;
+			executor.collect(fieldSubObjects, () -> extensionIndex, extender, (left, right) -> left);
+			return;
 		}
 
+		// index extension's sub-objects once (lazily, on first sub-object to extend), so that matching stays linear
+		List<Map<Object, NarObject<?, ?>>> index = new ArrayList<>(1);
+		FieldTraversal.walk(subObject, field, fieldSubObject -> {
+			if (index.isEmpty())
+				index.add(FieldTraversal.index(subExtension, field));
+			extender.accept(index.get(0), fieldSubObject);
+			return true;
+		});
+
 	}
 
 	/**
-	 * <p>Recursively searches for instance of {@code object} inside {@code tree} (using {@link Object#equals}). If {@code tree}
-	 * represents {@link Collection}, descends search to all members. If {@code tree} represents {@link Map},
-	 * descends search to all keys and values (if they implement {@link NarObject}).</p>
+	 * <p>Searches for instance of {@code object} inside {@code tree} (using {@link Object#equals}). If {@code tree}
+	 * represents {@link Collection}, {@link Map} or array, searches all {@link NarObject}s they (possibly nested) hold.</p>
 	 *
-	 * <p>Performs DFS, but it will stop descending deeper after it encounters {@link NarObject} instance.
-	 * Since all instances in tree at same level contain same fields, it doesn't matter which instance is found.</p>
-	 *
-	 * <p>TODO use BFS</p>
+	 * <p>Since all instances in tree at same level contain same fields, it doesn't matter which instance is found.</p>
 	 *
 	 * <p><b>INTERNAL</b></p>
 
 	 * @param object object to search for
-	 * @param tree {@link NarObject}, {@link Collection} or {@link Map} where to search for {@code object}
+	 * @param tree {@link NarObject}, {@link Collection}, {@link Map} or array where to search for {@code object}
 
 	 * @return found {@code object}
 	 *
-	 * @throws IllegalStateException if {@code subObject} doesn't represent instance/collection/map of {@link NarObject}
+	 * @throws IllegalStateException if {@code subObject} doesn't represent instance/collection/map/array of {@link NarObject}
 	 */
 	default NarObject<?, ?> _search(NarObject<?, ?> object, Object tree) {
-		
-		if (tree == null)
-			return null;
-		
-		if (tree instanceof NarObject) {
-			
-			NarObject<?, ?> fieldTree = (NarObject<?, ?>) tree;
-			
-			if (object.equals(fieldTree))
-				return fieldTree;
-			
-			return null;
-		
-		} else if (tree instanceof Collection) {
-
-			Collection<?> treeCollection = (Collection<?>) tree;
-
-			if (treeCollection.isEmpty())
-				return null;
-
-			for (Object treeItem : treeCollection) {
-				NarObject<?, ?> item = _search(object, treeItem);
-				if (item != null)
-					return item;
-			}
-			
-			return null;
-				
-		} else if (tree instanceof Map) {
-
-			Map<?, ?> treeMap = (Map<?, ?>) tree;
-
-			if (treeMap.isEmpty())
-				return null;
-
-			// search both keys and values (ignoring IllegalStateException(s)),
-			// assuming either one is legal field-object
-			// throw IllegalStateException only if neither key nor value could be processed
-			boolean processKey = true;
-			boolean processValue = true;
-
-			for (Map.Entry<?, ?> treeEntry : treeMap.entrySet()) {
-				NarObject<?, ?> item;
-				if (processKey)
-					try {
-						item = _search(object, treeEntry.getKey());
-						if (item != null)
-							return item;
-					} catch (IllegalStateException e) {
-						processKey = false;	// no need to try again
-					}
-				if (processValue)
-					try {
-						item = _search(object, treeEntry.getValue());
-						if (item != null)
-							return item;
-					} catch (IllegalStateException e) {
-						processValue = false;	// no need to try again
-					}
-				if (!processKey && !processValue)
-					throw new IllegalStateException("Tree " + tree + " descends into a map whose nor key nor value doesn't support field access");
-			}
-			
-			return null;
-				
-		} else {
-
-			// TODO arrays
-			
-			throw new IllegalStateException("Tree " + tree + " is of un-searchable type " + tree.getClass().getName());
-
-		}
+		return _search(object, tree, null);
+	}
 
+	/**
+	 * <p>Same as {@link #_search(NarObject, Object)}, but walks maps as described by {@code field}'s
+	 * {@link NarField#getNarMapContent()}.</p>
+	 *
+	 * <p><b>INTERNAL</b></p>
+	 *
+	 * @param object object to search for
+	 * @param tree {@link NarObject}, {@link Collection}, {@link Map} or array where to search for {@code object}
+	 * @param field field describing {@code tree} (if {@code null}, map content is detected)
+	 *
+	 * @return found {@code object}
+	 *
+	 * @throws IllegalStateException if {@code subObject} doesn't represent instance/collection/map/array of {@link NarObject}
+	 */
+	default NarObject<?, ?> _search(NarObject<?, ?> object, Object tree, F field) {
+		NarObject<?, ?>[] found = new NarObject<?, ?>[1];
+		FieldTraversal.walk(tree, field, item -> {
+			if (!object.equals(item))
+				return true;
+			found[0] = item;
+			return false;
+		});
+		return found[0];
 	}
 
 	/**
-	 * Calculates fields graph that consists of all fields (from this object and all sub-objects) specified by {@code graph},
-	 * but which are not present in current object.
+	 * <p>Calculates fields graph that consists of all fields (from this object and all sub-objects) specified by {@code graph},
+	 * but which are not present in current object.</p>
+	 *
+	 * <p>For flat graphs and objects that {@link #isMissingGraphBySignature() allow it}, result is looked up by
+	 * {@link #getFieldsSignature()} and shared between objects with same fields initialized.</p>
 	 *
 	 * @param graph requested graph
 	 *
 	 * @return field graph missing from current object
 	 */
 	default NarGraph<F> getMissingGraph(NarGraph<F> graph) {
+		// flat graphs don't descend into sub-objects, so missing graph depends only on initialized fields
+		if (graph.isFlat() && graph.getTable().isRegular() && isMissingGraphBySignature())
+			return graph.missingFrom(getFieldsSignature());
 		NarGraph.Builder<F> missingGraphBuilder = NarGraph.Builder.of(getFieldsClass());
 		_appendMissingGraph(graph, missingGraphBuilder);
 		return missingGraphBuilder.build();
@@ -706,9 +768,10 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	
 	/**
 	 * <p>Appends (to {@code missingGraphBuilder}) this field (possibly with subgraph) if it is missing from current object.
-	 * Descends recursively to sub-objects that implement {@link NarObject} and collections containing them.</p>
+	 * Descends recursively to sub-objects that implement {@link NarObject} and collections, maps and arrays containing them.</p>
 	 * 
-	 * <p>Override if field requires special processing logic.</p>
+	 * <p>Override if field requires special processing logic (in which case {@link #isMissingGraphBySignature()} must
+	 * return {@code false}).</p>
 	 * 
 	 * @param field field to process
 	 * @param requestedGraph field graph requested
@@ -747,72 +810,34 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	 * @param missingGraphBuilder builder to append missing fields to
 	 */
 	default void _appendMissingGraphRecursively(Object subObject, NarGraph<?> requestedSubGraphRaw, F field, NarGraph.Builder<F> missingGraphBuilder) {
-
-		if (subObject == null)
-			return;	// object has this field, but it's null, so treat all field as present
-		
-		if (subObject instanceof NarObject) {
-			
-			// found sub-object to extend (this sub-object is "base" value for this field)
-			
-			NarObject<?, ?> fieldObject = (NarObject<?, ?>) subObject;
+		BiConsumer<NarGraph.Builder<F>, NarObject<?, ?>> appender = (builder, fieldObject) -> {
 			NarGraph.Builder<?> missingSubGraphBuilder = NarGraph.Builder.of(fieldObject.getFieldsClass());
 			fieldObject._appendMissingGraph(requestedSubGraphRaw, missingSubGraphBuilder);
 			NarGraph<?> missingSubGraph = missingSubGraphBuilder.build();
 			if (!missingSubGraph.isEmpty())
-				missingGraphBuilder.add(field, missingSubGraph);	// part of sub-graph is missing, fetch this field with only missing sub-graph
-
-		} else if (subObject instanceof Collection) {
-
-			Collection<?> subCollection = (Collection<?>) subObject;
-
-			if (subCollection.isEmpty())
-				return;
-			
-			// append missing sub-graph for *every* member
-			for (Object subItem : subCollection)
-				_appendMissingGraphRecursively(subItem, requestedSubGraphRaw, field, missingGraphBuilder);
-
-		} else if (subObject instanceof Map) {
-
-			Map<?, ?> subMap = (Map<?, ?>) subObject;
-
-			if (subMap.isEmpty())
-				return;
-			
-			// append missing sub-graph for *every* entry, trying to recurse into both keys and values (ignoring IllegalStateException(s)),
-			// assuming either one is legal field-object
-			// throw IllegalStateException only if neither key nor value could be processed
-			boolean processKey = true;
-			boolean processValue = true;
-
-			for (Map.Entry<?, ?> subEntry : subMap.entrySet()) {
-				if (processKey)
-					try {
-						_appendMissingGraphRecursively(subEntry.getKey(), requestedSubGraphRaw, field, missingGraphBuilder);
-					} catch (IllegalStateException e) {
-						processKey = false;	// no need to try again
-					}
-				if (processValue)
-					try {
-						_appendMissingGraphRecursively(subEntry.getValue(), requestedSubGraphRaw, field, missingGraphBuilder);
-					} catch (IllegalStateException e) {
-						processValue = false;	// no need to try again
-					}
-				if (!processKey && !processValue)
-					throw new IllegalStateException("Field " + field + " of class " + getClass().getName() + " descends into a map whose nor key nor value doesn't support field access, but callee requested it's fields: " + requestedSubGraphRaw);
-			}
-
-		} else {
-		
-			// TODO arrays
-			
-			throw new IllegalStateException("Field " + field + " of class " + getClass().getName() + " doesn't support field access, but callee requested it's fields: " + requestedSubGraphRaw);
-			
+				builder.add(field, missingSubGraph);	// part of sub-graph is missing, fetch this field with only missing sub-graph
+		};
+
+		NarTraversalExecutor executor = NarTraversalExecutor.getDefault();
+		if (!(subObject instanceof NarObject) && executor.isParallel(FieldTraversal.estimateCount(subObject, field))) {
+			// each chunk collects its own missing graph, chunks' graphs are merged (union) in the end
+			NarGraph.Builder<F> missingChunksGraphBuilder = executor.collect(
+				FieldTraversal.collect(subObject, field),
+				() -> NarGraph.Builder.of(getFieldsClass()),
+				appender,
+				(left, right) -> left.add(right.build())
+			);
+			missingGraphBuilder.add(missingChunksGraphBuilder.build());
+			return;
 		}
 
+		// null sub-objects (object has this field, but it's null) are skipped, so treat all field as present
+		FieldTraversal.walk(subObject, field, fieldObject -> {
+			appender.accept(missingGraphBuilder, fieldObject);
+			return true;
+		});
 	}
-	
+
 	/**
 	 * <p>(Deeply) intersects this object with {@code graph} ("strips" object from any fields not covered by given graph).</p>
 	 * 
@@ -838,6 +863,7 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 			if (field.getNarFieldClass() == null)
 				continue;	// field represents regular (non-NarObject) value, no need to descend
 			
+			unshare(field);
 			Object subObject = getFieldValue(field);
 
 			if (subObject == null)
@@ -857,56 +883,21 @@ public interface NarObject<C extends NarObject<C, F>, F extends Enum<F> & NarFie
 	 * @param graph field graph from which to extract subgraph
 	 */
 	default void _intersectRecursively(Object subObject, F field, NarGraph<F> graph) {
-
-		if (subObject instanceof NarObject) {
-			
-			// simple sub-object
-			NarObject<?, ?> fieldSubObject = (NarObject<?, ?>) subObject;
-			fieldSubObject._intersectRaw(graph.getGraph(field));
-
-		} else if (subObject instanceof Collection) {
-
-			Collection<?> subCollection = (Collection<?>) subObject;
-
-			// intersect *every* member
-			for (Object subItem : subCollection)
-				_intersectRecursively(subItem, field, graph);
-			
-		} else if (subObject instanceof Map) {
-
-			Map<?, ?> subMap = (Map<?, ?>) subObject;
-
-			// intersect *every* entry, trying to recurse into both keys and values (ignoring IllegalStateException(s)),
-			// assuming either one is legal field-object
-			// throw IllegalStateException only if neither key nor value could be intersected
-			boolean processKey = true;
-			boolean processValue = true;
-
-			for (Map.Entry<?, ?> subEntry : subMap.entrySet()) {
-				if (processKey)
-					try {
-						_intersectRecursively(subEntry.getKey(), field, graph);
-					} catch (IllegalStateException e) {
-						processKey = false;	// no need to try again
-					}
-				if (processValue)
-					try {
-						_intersectRecursively(subEntry.getValue(), field, graph);
-					} catch (IllegalStateException e) {
-						processValue = false;	// no need to try again
-					}
-				if (!processKey && !processValue)
-					throw new IllegalStateException("Field " + field + " of class " + getClass().getName() + " descends into a map whose nor key nor value doesn't support field access");
-			}
-			
-		} else {
-
-			// TODO arrays
-			
-			throw new IllegalStateException("Field " + field + " of class " + getClass().getName() + " is of un-intersectable type " + subObject.getClass().getName());
-
+		NarGraph<?> subGraph = graph.getGraph(field);
+		NarTraversalExecutor executor = NarTraversalExecutor.getDefault();
+		// sub-objects are collected only if there may be enough of them to be worth intersecting concurrently
+		if (!(subObject instanceof NarObject) && executor.isParallel(FieldTraversal.estimateCount(subObject, field))) {
+			List<NarObject<?, ?>> fieldSubObjects = FieldTraversal.collect(subObject, field);
+			// sub-objects are intersected concurrently only if they don't share any (nested) sub-object
+			if (!executor.isParallel(fieldSubObjects.size()) || !FieldTraversal.isDisjoint(fieldSubObjects, subGraph))
+				executor = NarTraversalExecutor.Sequential;
+			executor.collect(fieldSubObjects, () -> subGraph, (intersection, fieldSubObject) -> fieldSubObject._intersectRaw(intersection), (left, right) -> left);
+			return;
 		}
-
+		FieldTraversal.walk(subObject, field, fieldSubObject -> {
+			fieldSubObject._intersectRaw(subGraph);
+			return true;
+		});
 	}
 
 	/**
@@ -1,11 +1,28 @@
 package com.steatoda.nar;
 
-import java.util.EnumSet;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
 
 /**
  * <p>Vanilla implementation of {@link NarObject} interface.</p>
  *
+ * <p>Initialized fields are tracked in a primitive bitmask ({@code long}, or {@code long[]} for field types with more than
+ * 64 fields). {@link #getFields()} returns live {@link Set} view backed by that bitmask, while {@link #hasFields},
+ * {@link #fieldGet} and {@link #fieldSet} test and set bits directly, without allocating anything.</p>
+ *
+ * <p>Objects with dedicated {@link NarFieldAccessor} also support copy-on-write clones (see {@link #cloneShared()}).
+ * Any object may be frozen into immutable snapshot (see {@link #freeze()}).</p>
+ *
  * @param <C> class implementing this {@link NarObject}
  * @param <F> field type
  */
@@ -17,27 +34,438 @@ public abstract class NarObjectBase<C extends NarObject<C, F>, F extends Enum<F>
 	 * @param fieldsClass field descriptor
 	 */
 	protected NarObjectBase(Class<F> fieldsClass) {
-		this.fieldsClass = fieldsClass;
-		fields = EnumSet.noneOf(fieldsClass);
+		table = FieldTable.of(fieldsClass);
+		words = table.isRegular() ? null : new long[table.getWordCount()];
 	}
-	
+
 	@Override
-	public Class<F> getFieldsClass() { return fieldsClass; }
+	public Class<F> getFieldsClass() { return table.getDeclaringClass(); }
 
+	/**
+	 * Returns fields initialized within this object as live view: changes made through returned set are reflected in this
+	 * object and vice versa.
+	 */
 	@Override
-	public Set<F> getFields() { return fields; }
-	
+	public Set<F> getFields() {
+		Set<F> fields = this.fields;
+		if (fields == null)
+			this.fields = fields = new FieldSet();
+		return fields;
+	}
+
+	/**
+	 * Sets which fields are initialized within this object. Fields are copied, so later changes of {@code fields} are
+	 * <u>not</u> reflected in this object.
+	 *
+	 * @param fields fields initialized within this object
+	 */
 	@Override
-	public void setFields(Set<F> fields) { this.fields = fields; }
+	public void setFields(Set<F> fields) {
+		checkNotFrozen();
+		clearBits();
+		if (fields instanceof NarGraph) {
+			NarGraph<F> graph = (NarGraph<F>) fields;
+			if (words == null)
+				bits = graph.getWord(0);
+			else
+				for (int word = 0; word < words.length; ++word)
+					words[word] = graph.getWord(word);
+		} else {
+			for (F field : fields)
+				setBit(field.ordinal());
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean hasFields(F... fields) {
+		for (F field : fields)
+			if (!testBit(field.ordinal()))
+				return false;
+		return true;
+	}
+
+	@Override
+	public boolean hasFields(Collection<F> fields) {
+		if (fields instanceof NarGraph) {
+			NarGraph<F> graph = (NarGraph<F>) fields;
+			if (words == null)
+				return (graph.getWord(0) & ~bits) == 0;
+			for (int word = 0; word < words.length; ++word)
+				if ((graph.getWord(word) & ~words[word]) != 0)
+					return false;
+			return true;
+		}
+		for (F field : fields)
+			if (!testBit(field.ordinal()))
+				return false;
+		return true;
+	}
+
+	@Override
+	public long getFieldsSignature() {
+		return words == null ? bits : words[0];
+	}
+
+	@Override
+	public boolean hasFieldsAsString(String field) {
+		return testBit(table.parse(field).ordinal());
+	}
+
+	@Override
+	public F parseField(String str) {
+		return table.parse(str);
+	}
+
+	@Override
+	public <V> V fieldGet(F field, V value) {
+		if (!testBit(field.ordinal()))
+			throw new FieldUnavailableException(field);
+		return value;
+	}
+
+	@Override
+	public <V> V fieldSet(F field, V value) {
+		checkNotFrozen();
+		clearSharedBit(field.ordinal());
+		setBit(field.ordinal());
+		return value;
+	}
 
 	@Override
 	@SuppressWarnings("MethodDoesntCallSuperMethod")
 	public C clone() {
 		return cloneAll();
 	}
-	
-	private final Class<F> fieldsClass;
-	
-	private Set<F> fields;
-	
+
+	/**
+	 * <p>Returns copy-on-write copy of this object. Clone initially shares all field values with this object, and keeps
+	 * sharing them while they're only read (reading doesn't copy nor modify anything, so clone may be read by multiple
+	 * threads at once). Value stops being shared once it's replaced using setter, or copied using {@link #unshare(Enum)},
+	 * which Nar calls itself before modifying sub-objects in place (e.g. when extending or intersecting clone).</p>
+	 *
+	 * <p>Values read through clone's getters (or {@link NarFieldAccessor}) must thus be treated as read-only, unless
+	 * {@link #unshare(Enum) unshared} first.</p>
+	 *
+	 * <p>Sharing requires dedicated {@link NarFieldAccessor} (see {@link #getFieldAccessor()}), because values have to be
+	 * written into clone as they are; objects without one are cloned using {@link #cloneAll()}.</p>
+	 *
+	 * <p><b>NOTE:</b> only clone tracks shared values. This object may still replace its values using setters, but must not
+	 * modify them in place while clones exist (use {@link #cloneAll()} if it has to).</p>
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public C cloneShared() {
+		NarFieldAccessor<C, F> accessor = getFieldAccessor();
+		if (accessor instanceof PullFieldAccessor)
+			return cloneAll();
+		C clone = ref();
+		if (!(clone instanceof NarObjectBase))
+			return cloneAll();
+		for (F field : getFields())
+			accessor.set(clone, field, accessor.get((C) this, field));
+		NarObjectBase<C, F> cloneBase = (NarObjectBase<C, F>) clone;
+		if (words == null)
+			cloneBase.sharedBits = bits;
+		else
+			cloneBase.sharedWords = words.clone();
+		return clone;
+	}
+
+	/**
+	 * Stops sharing {@code field}'s value with object this object was cloned from using {@link #cloneShared()}, replacing
+	 * it with own copy if it's mutable (sub-object, collection, map or array). Does nothing if value is not shared.
+	 *
+	 * @param field field whose value is about to be modified in place
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void unshare(F field) {
+		if (!testSharedBit(field.ordinal()))
+			return;
+		checkNotFrozen();
+		clearSharedBit(field.ordinal());
+		NarFieldAccessor<C, F> accessor = getFieldAccessor();
+		Object value = accessor.get((C) this, field);
+		if (!isMutable(value))
+			return;
+		// pull shared value through holder (pull doesn't copy anything when pulling from self)
+		C holder = ref();
+		accessor.set(holder, field, value);
+		pull(field, holder, null);
+	}
+
+	/**
+	 * Checks if {@code field}'s value is still shared with object this object was cloned from using {@link #cloneShared()}.
+	 *
+	 * @param field field to check
+	 *
+	 * @return {@code true} if value is shared, {@code false} otherwise
+	 */
+	public boolean isShared(F field) {
+		return testSharedBit(field.ordinal());
+	}
+
+	/**
+	 * <p>Freezes this object into immutable snapshot. Once frozen, setters, {@link #setFields(Set)} and modifications
+	 * through {@link #getFields()} view fail with {@link UnsupportedOperationException}.</p>
+	 *
+	 * <p>Freezing is deep: all sub-objects (including ones held in collections, maps and arrays) are frozen, too. Collections
+	 * and maps held by fields are replaced with unmodifiable views, which requires dedicated {@link NarFieldAccessor} (see
+	 * {@link #getFieldAccessor()}) and field type that accepts such view (e.g. {@link List}, but not {@code ArrayList}).
+	 * Other collections, collections nested in collections and arrays are left as they are and must be treated as read-only.</p>
+	 *
+	 * <p>Sub-object fields this object shares with its {@link #cloneShared() shared clone} are {@link #unshare unshared}
+	 * (deep-copied) first, since sub-objects are frozen in place.</p>
+	 *
+	 * <p>Frozen objects may be shared between threads as long as they are safely published (e.g. through concurrent
+	 * collection).</p>
+	 *
+	 * @throws IllegalStateException if some field doesn't accept unmodifiable view of its collection or map (object is
+	 *                               left unfrozen)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public C freeze() {
+
+		if (frozen)
+			return (C) this;
+
+		NarFieldAccessor<C, F> accessor = getFieldAccessor();
+
+		// values replaced with unmodifiable views, restored if some field doesn't accept its view
+		Map<F, Object> replaced = new EnumMap<>(getFieldsClass());
+		for (F field : getFields()) {
+			// sub-objects are frozen in place, so they can't stay shared
+			if (field.getNarFieldClass() != null)
+				unshare(field);
+			Object value = accessor.get((C) this, field);
+			if (accessor instanceof PullFieldAccessor || !(value instanceof Collection || value instanceof Map))
+				continue;
+			try {
+				accessor.set((C) this, field, unmodifiable(value));
+			} catch (ClassCastException e) {
+				replaced.forEach((replacedField, replacedValue) -> accessor.set((C) this, replacedField, replacedValue));
+				throw new IllegalStateException("Field " + field + " of " + getClass().getName() + " doesn't accept unmodifiable view of " + value.getClass().getName() + ", so object can't be frozen", e);
+			}
+			replaced.put(field, value);
+		}
+
+		// mark as frozen before descending, so that cycles end here
+		frozen = true;
+
+		for (F field : getFields())
+			if (field.getNarFieldClass() != null)
+				FieldTraversal.walk(accessor.get((C) this, field), field, object -> {
+					if (object instanceof NarObjectBase)
+						((NarObjectBase<?, ?>) object).freeze();
+					return true;
+				});
+
+		return (C) this;
+
+	}
+
+	@Override
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Fails if this object is frozen. Subclasses should call this in every method that modifies them, but doesn't use
+	 * {@link #fieldSet} (e.g. {@link NarEntityBase#setId}).
+	 *
+	 * @throws UnsupportedOperationException if this object is frozen
+	 */
+	protected final void checkNotFrozen() {
+		if (frozen)
+			throw new UnsupportedOperationException(getClass().getName() + " is frozen");
+	}
+
+	private static Object unmodifiable(Object value) {
+		if (value instanceof List)
+			return Collections.unmodifiableList((List<?>) value);
+		if (value instanceof SortedSet)
+			return Collections.unmodifiableSortedSet((SortedSet<?>) value);
+		if (value instanceof Set)
+			return Collections.unmodifiableSet((Set<?>) value);
+		if (value instanceof SortedMap)
+			return Collections.unmodifiableSortedMap((SortedMap<?, ?>) value);
+		if (value instanceof Map)
+			return Collections.unmodifiableMap((Map<?, ?>) value);
+		return Collections.unmodifiableCollection((Collection<?>) value);
+	}
+
+	private static boolean isMutable(Object value) {
+		return value instanceof NarObject || value instanceof Collection || value instanceof Map || (value != null && value.getClass().isArray());
+	}
+
+	private boolean testBit(int ordinal) {
+		return words == null ? (bits & (1L << ordinal)) != 0 : (words[ordinal >>> 6] & (1L << ordinal)) != 0;
+	}
+
+	/** Sets bit and returns {@code true} if it wasn't set before */
+	private boolean setBit(int ordinal) {
+		if (words == null) {
+			long old = bits;
+			bits |= 1L << ordinal;
+			return bits != old;
+		}
+		long old = words[ordinal >>> 6];
+		words[ordinal >>> 6] |= 1L << ordinal;
+		return words[ordinal >>> 6] != old;
+	}
+
+	/** Clears bit and returns {@code true} if it was set before */
+	private boolean clearBit(int ordinal) {
+		if (words == null) {
+			long old = bits;
+			bits &= ~(1L << ordinal);
+			return bits != old;
+		}
+		long old = words[ordinal >>> 6];
+		words[ordinal >>> 6] &= ~(1L << ordinal);
+		return words[ordinal >>> 6] != old;
+	}
+
+	private boolean testSharedBit(int ordinal) {
+		return words == null ? (sharedBits & (1L << ordinal)) != 0 : sharedWords != null && (sharedWords[ordinal >>> 6] & (1L << ordinal)) != 0;
+	}
+
+	private void clearSharedBit(int ordinal) {
+		if (words == null)
+			sharedBits &= ~(1L << ordinal);
+		else if (sharedWords != null)
+			sharedWords[ordinal >>> 6] &= ~(1L << ordinal);
+	}
+
+	private void clearBits() {
+		bits = 0L;
+		if (words != null)
+			for (int word = 0; word < words.length; ++word)
+				words[word] = 0L;
+	}
+
+	/** Live view of bitmask */
+	private class FieldSet extends AbstractSet<F> {
+
+		@Override
+		public int size() {
+			if (words == null)
+				return Long.bitCount(bits);
+			int size = 0;
+			for (long word : words)
+				size += Long.bitCount(word);
+			return size;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			if (words == null)
+				return bits == 0;
+			for (long word : words)
+				if (word != 0)
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Enum) || ((Enum<?>) o).getDeclaringClass() != table.getDeclaringClass())
+				return false;
+			return testBit(((Enum<?>) o).ordinal());
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean containsAll(Collection<?> c) {
+			if (c instanceof NarGraph && ((NarGraph<?>) c).getDeclaringClass() == table.getDeclaringClass())
+				return hasFields((NarGraph<F>) c);
+			return super.containsAll(c);
+		}
+
+		@Override
+		public boolean add(F field) {
+			checkNotFrozen();
+			if (field.getDeclaringClass() != table.getDeclaringClass())
+				throw new ClassCastException(field.getDeclaringClass() + " != " + table.getDeclaringClass());
+			return setBit(field.ordinal());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			checkNotFrozen();
+			if (!(o instanceof Enum) || ((Enum<?>) o).getDeclaringClass() != table.getDeclaringClass())
+				return false;
+			return clearBit(((Enum<?>) o).ordinal());
+		}
+
+		@Override
+		public void clear() {
+			checkNotFrozen();
+			clearBits();
+		}
+
+		@Override
+		public Iterator<F> iterator() {
+			return new FieldIterator();
+		}
+
+	}
+
+	/** Iterates over set bits in ordinal order (same order {@link java.util.EnumSet} would use) */
+	private class FieldIterator implements Iterator<F> {
+
+		FieldIterator() {
+			remaining = words == null ? bits : (words.length > 0 ? words[0] : 0L);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (words != null)
+				while (remaining == 0 && word < words.length - 1)
+					remaining = words[++word];
+			return remaining != 0;
+		}
+
+		@Override
+		public F next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			last = (word << 6) + Long.numberOfTrailingZeros(remaining);
+			remaining &= remaining - 1;
+			return table.get(last);
+		}
+
+		@Override
+		public void remove() {
+			checkNotFrozen();
+			if (last < 0)
+				throw new IllegalStateException();
+			if (!clearBit(last))
+				throw new ConcurrentModificationException();
+			last = -1;
+		}
+
+		private int word = 0;
+		private long remaining;
+		private int last = -1;
+
+	}
+
+	private final FieldTable<F> table;
+
+	/** Bitmask of initialized fields, used when all fields fit into one {@code long} */
+	private long bits = 0L;
+	/** Bitmask of initialized fields, used when there are more than 64 fields ({@code null} otherwise) */
+	private final long[] words;
+	/** Bitmask of fields whose values are shared with object this object was cloned from (see {@link #cloneShared()}) */
+	private long sharedBits = 0L;
+	/** Bitmask of shared fields, used when there are more than 64 fields ({@code null} if nothing was ever shared) */
+	private long[] sharedWords = null;
+	/** Whether this object is frozen (see {@link #freeze()}) */
+	private boolean frozen = false;
+	/** Lazily created {@link #getFields()} view */
+	private Set<F> fields = null;
+
 }
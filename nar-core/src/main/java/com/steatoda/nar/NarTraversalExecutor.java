@@ -0,0 +1,93 @@
+package com.steatoda.nar;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * <p>Processes sub-objects found in collections, maps and arrays while traversing field values in
+ * {@link NarObject#getMissingGraph(NarGraph)}, {@link NarObject#intersect(NarGraph)} and
+ * {@link NarEntity#extend(NarGraph, com.steatoda.nar.service.NarService)}.</p>
+ *
+ * <p>By default, sub-objects are processed {@link #Sequential}ly, while walking field value. Other executors (like
+ * {@link NarForkJoinExecutor}) receive all sub-objects of a field at once and may process them in parallel. Results
+ * never depend on executor used.</p>
+ *
+ * <blockquote><pre>
+ * NarTraversalExecutor.setDefault(new NarForkJoinExecutor(10_000));
+ * </pre></blockquote>
+ */
+public interface NarTraversalExecutor {
+
+	/** Executor processing sub-objects one by one, in caller's thread. */
+	NarTraversalExecutor Sequential = new NarTraversalExecutor() {
+		@Override
+		public <T, A> A collect(List<T> objects, Supplier<A> supplier, BiConsumer<A, ? super T> accumulator, BinaryOperator<A> combiner) {
+			A result = supplier.get();
+			for (T object : objects)
+				accumulator.accept(result, object);
+			return result;
+		}
+		@Override
+		public boolean isParallel(int count) {
+			return false;
+		}
+	};
+
+	/**
+	 * Returns executor used by traversals.
+	 *
+	 * @return default executor
+	 */
+	static NarTraversalExecutor getDefault() {
+		return FieldTraversal.executor;
+	}
+
+	/**
+	 * Sets executor used by traversals.
+	 *
+	 * @param executor executor to use
+	 */
+	static void setDefault(NarTraversalExecutor executor) {
+		FieldTraversal.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	 * <p>Processes {@code objects}, accumulating results into containers created by {@code supplier}. Executor may split
+	 * {@code objects} into (consecutive) chunks, accumulate each into its own container and merge containers of adjacent
+	 * chunks using {@code combiner} (left one first), just like {@link java.util.stream.Stream#collect}.</p>
+	 *
+	 * <p>Each object is accumulated exactly once. Callers pass every object only once and, when modifying them, only
+	 * objects not sharing any (nested) sub-object (see {@link #isParallel(int)}), so accumulator may modify it.</p>
+	 *
+	 * @param objects objects to process
+	 * @param supplier creates result container
+	 * @param accumulator processes single object into container
+	 * @param combiner merges two containers
+	 *
+	 * @param <T> object type
+	 * @param <A> result container type
+	 *
+	 * @return result container
+	 */
+	<T, A> A collect(List<T> objects, Supplier<A> supplier, BiConsumer<A, ? super T> accumulator, BinaryOperator<A> combiner);
+
+	/**
+	 * <p>Checks if {@link #collect} may process {@code count} objects in parallel.</p>
+	 *
+	 * <p>Before handing objects to be modified to executor that returns {@code true}, callers check (at extra cost)
+	 * that objects don't share any (nested) sub-object and, if they do, process them sequentially instead.</p>
+	 *
+	 * <p>Default implementation returns {@code true}.</p>
+	 *
+	 * @param count number of objects to process
+	 *
+	 * @return {@code true} if objects may be processed by multiple threads, {@code false} otherwise
+	 */
+	default boolean isParallel(int count) {
+		return true;
+	}
+
+}
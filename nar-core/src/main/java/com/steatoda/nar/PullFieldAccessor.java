@@ -0,0 +1,36 @@
+package com.steatoda.nar;
+
+/**
+ * <p>Default {@link NarFieldAccessor}, built on top of {@link NarObject#pull(Enum, NarObject, NarGraph)}: reads pull
+ * from object itself, while values are cleared by pulling them from {@link NarObject#ref()} with field initialized
+ * to its default value. Writing anything but {@code null} is not supported.</p>
+ *
+ * <p><b>INTERNAL</b></p>
+ */
+final class PullFieldAccessor<C extends NarObject<C, F>, F extends Enum<F> & NarField> implements NarFieldAccessor<C, F> {
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <C extends NarObject<C, F>, F extends Enum<F> & NarField> NarFieldAccessor<C, F> get() {
+		return (NarFieldAccessor) Instance;
+	}
+
+	@Override
+	public Object get(C object, F field) {
+		return object.pull(field, object, NarGraph.noneOf(object.getFieldsClass()));
+	}
+
+	@Override
+	public void set(C object, F field, Object value) {
+		if (value != null)
+			throw new UnsupportedOperationException("Only clearing values (setting them to null) is supported without dedicated " + NarFieldAccessor.class.getSimpleName());
+		C dummy = object.ref();
+		dummy.getFields().add(field);	// initialize field so that possible checks in getter do not fail
+		object.pull(field, dummy, NarGraph.of(field));
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final PullFieldAccessor Instance = new PullFieldAccessor();
+
+	private PullFieldAccessor() {}
+
+}
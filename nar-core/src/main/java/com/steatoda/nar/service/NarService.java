@@ -1,5 +1,9 @@
 package com.steatoda.nar.service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 import com.steatoda.nar.NarField;
 import com.steatoda.nar.NarGraph;
 import com.steatoda.nar.NarEntity;
@@ -58,5 +62,26 @@ public interface NarService<I, C extends NarEntity<I, C, F>, F extends Enum<F> &
 	 * @return resolved entity or {@code null} if entity could not be found
 	 */
 	C get(I id, NarGraph<F> graph);
-	
+
+	/**
+	 * <p>Resolves entities with given {@code ids} with fields initialized as specified by {@code graph}.</p>
+	 *
+	 * <p>Defaults to invoking {@link #get} for every ID. Override to fetch all entities at once (e.g. using one
+	 * {@code SELECT ... WHERE id IN (...)} statement).</p>
+	 *
+	 * @param ids entities' IDs
+	 * @param graph field graph to initialize
+	 *
+	 * @return resolved entities mapped by ID; entities that could not be found are not present
+	 */
+	default Map<I, C> getAll(Collection<I> ids, NarGraph<F> graph) {
+		Map<I, C> entities = new HashMap<>();
+		for (I id : ids) {
+			C entity = get(id, graph);
+			if (entity != null)
+				entities.put(id, entity);
+		}
+		return entities;
+	}
+
 }
@@ -1,5 +1,9 @@
 package com.steatoda.nar.service.async;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 import com.steatoda.nar.NarField;
 import com.steatoda.nar.NarGraph;
 import com.steatoda.nar.NarEntity;
@@ -52,5 +56,29 @@ public interface NarAsyncService<I, C extends NarEntity<I, C, F>, F extends Enum
 	 * @return {@link NarRequest} describing this asynchronous operation
 	 */
 	NarRequest get(I id, NarGraph<F> graph, NarServiceHandler<C> handler);
-	
+
+	/**
+	 * <p>Resolves entities with given {@code ids} with fields initialized as specified by {@code graph}.</p>
+	 *
+	 * <p>Defaults to concurrently invoking {@link #get} for every ID (see {@link NarRequestGroup}). Override to fetch
+	 * all entities using one backend call.</p>
+	 *
+	 * @param ids entities' IDs
+	 * @param graph field graph to initialize
+	 * @param handler handler to be notified on different execution stages; receives resolved entities mapped by ID
+	 *                (entities that could not be found are not present)
+	 *
+	 * @return {@link NarRequest} describing this asynchronous operation
+	 */
+	default NarRequest getAll(Collection<I> ids, NarGraph<F> graph, NarServiceHandler<Map<I, C>> handler) {
+		Map<I, C> entities = new HashMap<>();
+		NarRequestGroup<Map<I, C>> request = new NarRequestGroup<>(handler);
+		for (I id : ids)
+			request.<C>add(handler2 -> get(id, graph, handler2), entity -> {
+				if (entity != null)
+					entities.put(id, entity);
+			});
+		return request.start(() -> entities);
+	}
+
 }
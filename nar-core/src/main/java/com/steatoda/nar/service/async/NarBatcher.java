@@ -3,6 +3,7 @@ package com.steatoda.nar.service.async;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -14,6 +15,8 @@ import com.steatoda.nar.NarEntity;
 /**
  * <p>Batches multiple {@link NarAsyncService#get} operations on one instance into <u>one</u> async service method invocation.</p>
  *
+ * <p>Instances requested with the same graph are in turn fetched together, using {@link NarAsyncService#getAll}.</p>
+ *
  * @param <I> ID type
  * @param <C> concrete implementation of class implementing {@link NarEntity}
  * @param <F> field type
@@ -35,15 +38,15 @@ public class NarBatcher<I, C extends NarEntity<I, C, F>, F extends Enum<F> & Nar
 		}
 		
 		public void queue(NarGraph<F> graph, NarServiceHandler<C> handler) {
-			if (graphBuilder == null)
-				graphBuilder = NarGraph.Builder.of(graph.getDeclaringClass());
-			graphBuilder.add(graph);
+			// union short-circuits (no copy) when graph is already covered
+			this.graph = this.graph == null ? graph : this.graph.union(graph);
 			handlers.add(handler);
 		}
 		
 		private final I id;
 		private final Queue<NarServiceHandler<C>> handlers = new ArrayDeque<>();
-		private NarGraph.Builder<F> graphBuilder = null;
+		private NarGraph<F> graph = null;
+		private List<Job> batch = null;
 		private NarRequest request = null;
 		private boolean finished = false;
 		
@@ -84,8 +87,8 @@ public class NarBatcher<I, C extends NarEntity<I, C, F>, F extends Enum<F> & Nar
 					return;	// not found, probably already cancelled
 				handler.onCancel();
 				handler.onDestroy();
-				// if there are no more handlers, cancel (cumulative) request
-				if (finalJob.handlers.isEmpty() && finalJob.request != null)
+				// if there are no more handlers in whole batch, cancel (cumulative) request
+				if (finalJob.request != null && finalJob.batch.stream().allMatch(job -> job.handlers.isEmpty()))
 					finalJob.request.cancel();
 			}
 		};
@@ -96,57 +99,79 @@ public class NarBatcher<I, C extends NarEntity<I, C, F>, F extends Enum<F> & Nar
 
 	}
 
-	/** Executes queued operations. */
+	/**
+	 * Executes queued operations. Entities requested with the same (accumulated) graph are fetched using <u>one</u>
+	 * {@link NarAsyncService#getAll} invocation.
+	 */
 	public void run() {
 
-		List<Job> batch = pullJobsBatch();
-
-		for (Job job : batch) {
-			
+		Map<NarGraph<F>, List<Job>> batches = new LinkedHashMap<>();
+		for (Job job : pullJobsBatch()) {
 			if (job.handlers.isEmpty())
 				continue;	// all handlers are cancelled
-			
-			NarGraph<F> graph = job.graphBuilder.build();
+			batches.computeIfAbsent(job.graph, graph -> new ArrayList<>()).add(job);
+		}
+
+		for (Map.Entry<NarGraph<F>, List<Job>> entry : batches.entrySet()) {
 
-			job.request = service.get(job.id, graph, new NarServiceHandler<C>() {
+			List<Job> jobs = entry.getValue();
+			List<I> ids = new ArrayList<>(jobs.size());
+			for (Job job : jobs) {
+				job.batch = jobs;
+				ids.add(job.id);
+			}
+
+			NarRequest request = service.getAll(ids, entry.getKey(), new NarServiceHandler<Map<I, C>>() {
 				// NOTE: we already called onPreRequest(FieldsRequest) when queuing this instance, so don't call again
 				@Override
 				public void onPostRequest(NarRequest request) {
-					for (NarServiceHandler<C> handler : job.handlers)
-						handler.onPostRequest(request);
+					for (Job job : jobs)
+						for (NarServiceHandler<C> handler : job.handlers)
+							handler.onPostRequest(request);
 				}
 				@Override
-				public void onSuccess(C entity) {
-					job.finished = true;	// from now on, calling cancel() should be no-op
-					for (NarServiceHandler<C> handler : job.handlers)
-						handler.onSuccess(entity);
+				public void onSuccess(Map<I, C> entities) {
+					for (Job job : jobs) {
+						job.finished = true;	// from now on, calling cancel() should be no-op
+						for (NarServiceHandler<C> handler : job.handlers)
+							handler.onSuccess(entities.get(job.id));
+					}
 				}
 				@Override
 				public void onCancel() {
-					job.finished = true;	// from now on, calling cancel() should be no-op
-					for (NarServiceHandler<C> handler : job.handlers)
-						handler.onCancel();
+					for (Job job : jobs) {
+						job.finished = true;	// from now on, calling cancel() should be no-op
+						for (NarServiceHandler<C> handler : job.handlers)
+							handler.onCancel();
+					}
 				}
 				@Override
 				public void onFail() {
-					job.finished = true;	// from now on, calling cancel() should be no-op
-					for (NarServiceHandler<C> handler : job.handlers)
-						handler.onFail();
+					for (Job job : jobs) {
+						job.finished = true;	// from now on, calling cancel() should be no-op
+						for (NarServiceHandler<C> handler : job.handlers)
+							handler.onFail();
+					}
 				}
 				@Override
 				public void onFinish() {
-					for (NarServiceHandler<C> handler : job.handlers)
-						handler.onFinish();
+					for (Job job : jobs)
+						for (NarServiceHandler<C> handler : job.handlers)
+							handler.onFinish();
 				}
 				@Override
 				public void onDestroy() {
-					for (NarServiceHandler<C> handler : job.handlers)
-						handler.onDestroy();
+					for (Job job : jobs)
+						for (NarServiceHandler<C> handler : job.handlers)
+							handler.onDestroy();
 				}
 			});
-				
+
+			for (Job job : jobs)
+				job.request = request;
+
 		}
-		
+
 	}
 
 	synchronized private List<Job> pullJobsBatch() {
@@ -0,0 +1,210 @@
+package com.steatoda.nar.service.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>Combines multiple asynchronous operations into <u>one</u> {@link NarRequest}.</p>
+ *
+ * <p>Operations are added using {@link #add} and their results are handed to their consumers (one at a time) as they
+ * arrive. Once group is {@link #start started} and all operations succeed, group's handler is notified with result.
+ * If any operation fails (or its consumer throws), the rest are cancelled and handler is notified about failure.
+ * Cancelling group cancels all pending operations.</p>
+ *
+ * <blockquote><pre>
+ * NarRequestGroup&lt;List&lt;Person&gt;&gt; group = new NarRequestGroup&lt;&gt;(handler);
+ * for (String id : ids)
+ *     group.add(h -&gt; service.get(id, graph, h), persons::add);
+ * return group.start(() -&gt; persons);
+ * </pre></blockquote>
+ *
+ * @param <T> result type
+ */
+public class NarRequestGroup<T> implements NarRequest {
+
+	/**
+	 * Constructs empty group.
+	 *
+	 * @param handler handler to be notified on different execution stages of whole group
+	 */
+	public NarRequestGroup(NarServiceHandler<T> handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Adds and immediately invokes {@code operation}.
+	 *
+	 * @param operation operation to invoke, using given handler
+	 * @param consumer consumer of operation's result
+	 *
+	 * @param <R> operation's result type
+	 */
+	public <R> void add(Function<NarServiceHandler<R>, NarRequest> operation, Consumer<R> consumer) {
+
+		boolean first;
+		synchronized (this) {
+			if (done)
+				return;
+			++pending;
+			first = !requested;
+			requested = true;
+		}
+
+		if (first)
+			handler.onPreRequest(this);
+
+		NarRequest request = operation.apply(new NarServiceHandler<R>() {
+			@Override
+			public void onSuccess(R value) {
+				boolean failed = false;
+				// consumers run one at a time, but outside group's monitor, so they can't block adding or cancelling
+				synchronized (consumerLock) {
+					synchronized (NarRequestGroup.this) {
+						if (done)
+							return;
+					}
+					try {
+						consumer.accept(value);
+					} catch (RuntimeException e) {
+						failed = true;
+					}
+				}
+				if (failed)
+					fail();
+				else
+					complete();
+			}
+			@Override
+			public void onFail() {
+				fail();
+			}
+			@Override
+			public void onCancel() {
+				// cancelled by someone else, so group can't complete
+				cancel();
+			}
+		});
+
+		if (request == null)
+			return;
+
+		boolean cancelRequest;
+		synchronized (this) {
+			requests.add(request);
+			cancelRequest = done;
+		}
+
+		// group ended while operation was being added
+		if (cancelRequest)
+			request.cancel();
+
+	}
+
+	/**
+	 * Starts group: once all added operations succeed, handler will be notified with {@code result}.
+	 * Group without operations succeeds immediately.
+	 *
+	 * @param result supplier of group's result
+	 *
+	 * @return this
+	 */
+	public NarRequest start(Supplier<T> result) {
+		this.result = result;
+		complete();
+		return this;
+	}
+
+	@Override
+	public void cancel() {
+
+		synchronized (this) {
+			if (done)
+				return;
+			done = true;
+		}
+
+		try {
+			cancelRequests();
+		} finally {
+			handler.onCancel();
+			handler.onDestroy();
+		}
+
+	}
+
+	private void complete() {
+
+		synchronized (this) {
+			if (done || --pending > 0)
+				return;
+			done = true;
+		}
+
+		try {
+			if (requested)
+				handler.onPostRequest(this);
+			T value;
+			try {
+				value = result.get();
+			} catch (RuntimeException e) {
+				handler.onFail();
+				return;
+			}
+			handler.onSuccess(value);
+		} finally {
+			try {
+				handler.onFinish();
+			} finally {
+				handler.onDestroy();
+			}
+		}
+
+	}
+
+	private void fail() {
+
+		synchronized (this) {
+			if (done)
+				return;
+			done = true;
+		}
+
+		try {
+			cancelRequests();
+			handler.onPostRequest(this);
+			handler.onFail();
+		} finally {
+			try {
+				handler.onFinish();
+			} finally {
+				handler.onDestroy();
+			}
+		}
+
+	}
+
+	private void cancelRequests() {
+		List<NarRequest> pendingRequests;
+		synchronized (this) {
+			pendingRequests = new ArrayList<>(requests);
+			requests.clear();
+		}
+		// cancelling finished request is no-op
+		for (NarRequest request : pendingRequests)
+			request.cancel();
+	}
+
+	private final NarServiceHandler<T> handler;
+	private final List<NarRequest> requests = new ArrayList<>();
+	/** Serializes consumers of operations' results (held without group's monitor) */
+	private final Object consumerLock = new Object();
+	private Supplier<T> result = null;
+	/** Number of pending operations, plus one until group is started */
+	private int pending = 1;
+	private boolean requested = false;
+	private boolean done = false;
+
+}
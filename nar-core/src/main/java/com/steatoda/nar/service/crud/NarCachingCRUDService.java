@@ -5,12 +5,14 @@ import com.steatoda.nar.NarGraph;
 import com.steatoda.nar.NarEntityCache;
 import com.steatoda.nar.NarEntity;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.stream.Stream;
 
 /**
  * <p>{@link NarCRUDService} implementation that caches objects incrementally.</p>
  *
- * <p>Populates cache in every method, but uses it only in {@link #construct(Object, NarGraph)} and {@link #get(Object, NarGraph)}.
+ * <p>Populates cache in every method, but uses it only in {@link #construct(Object, NarGraph)}, {@link #get(Object, NarGraph)} and {@link #getAll(Collection, NarGraph)}.
  * Causes very little overhead over {@code service} itself.</p>
 
  * @param <I> ID type
@@ -45,6 +47,11 @@ public class NarCachingCRUDService<I, C extends NarEntity<I, C, F>, F extends En
 		return cache.get(id, graph, service);
 	}
 
+	@Override
+	public Map<I, C> getAll(Collection<I> ids, NarGraph<F> graph) {
+		return cache.getAll(ids, graph, service);
+	}
+
 	@Override
 	public Stream<C> query(S selector, NarGraph<F> graph) {
 		return service.query(selector, graph).peek(cache::merge);
@@ -1,6 +1,8 @@
 package com.steatoda.nar.service.crud;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -50,6 +52,11 @@ public class NarDelegatingCRUDService<I, C extends NarEntity<I, C, F>, F extends
 		return delegate.get(id, graph);
 	}
 
+	@Override
+	public Map<I, C> getAll(Collection<I> ids, NarGraph<F> graph) {
+		return delegate.getAll(ids, graph);
+	}
+
 	@Override
 	public int count(S selector) {
 		return delegate.count(selector);
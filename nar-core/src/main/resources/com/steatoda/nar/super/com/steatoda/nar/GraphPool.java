@@ -0,0 +1,31 @@
+package com.steatoda.nar;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Pool of canonical {@link NarGraph}s, backing {@link NarGraph#intern()}.</p>
+ *
+ * <p>GWT implementation: there are no weak references (nor threads) in browser, so graphs are held strongly in plain map.</p>
+ *
+ * <p><b>INTERNAL</b></p>
+ */
+final class GraphPool {
+
+	/**
+	 * Returns canonical instance of {@code graph}, pooling it if there's none yet.
+	 *
+	 * @param graph graph to intern
+	 *
+	 * @return pooled graph structurally equal to {@code graph}
+	 */
+	static NarGraph<?> intern(NarGraph<?> graph) {
+		NarGraph<?> canonical = Pool.putIfAbsent(graph, graph);
+		return canonical != null ? canonical : graph;
+	}
+
+	private static final Map<NarGraph<?>, NarGraph<?>> Pool = new HashMap<>();
+
+	private GraphPool() {}
+
+}
@@ -0,0 +1,146 @@
+package com.steatoda.nar;
+
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>Bounded cache of {@link NarGraph}s parsed from their string representation.</p>
+ *
+ * <p>Graphs are returned in their interned form (see {@link NarGraph#intern()}), so all callers parsing the same
+ * string share one immutable instance. Strings that fail to parse are not cached.</p>
+ *
+ * <p>Used by {@link NarGraph#of(String, Class)} via {@link #getDefault()}.</p>
+ *
+ * <p>GWT implementation: Guava's cache isn't available in browser (nor are threads), so graphs are held in plain
+ * access-ordered map, evicting least recently used one when full.</p>
+ */
+public class NarGraphParseCache {
+
+	/** Maximum number of graphs held by default cache. */
+	public static final long DefaultMaximumSize = 1024;
+
+	/**
+	 * Returns cache used by {@link NarGraph#of(String, Class)}.
+	 *
+	 * @return default cache
+	 */
+	public static NarGraphParseCache getDefault() {
+		return Default;
+	}
+
+	/**
+	 * Constructs cache holding at most {@code maximumSize} graphs (least recently used are evicted first).
+	 *
+	 * @param maximumSize maximum number of cached graphs
+	 */
+	public NarGraphParseCache(long maximumSize) {
+		cache = new LinkedHashMap<Key, NarGraph<?>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, NarGraph<?>> eldest) {
+				return size() > maximumSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns graph parsed from {@code value}, parsing it only if it's not already cached.
+	 *
+	 * @param value string to parse (see {@link NarGraph#of(String, Class)} for syntax)
+	 * @param clazz class representing first-level field type
+	 * @param <F> first-level field type
+	 *
+	 * @return (interned) {@link NarGraph} of type {@code F} parsed from {@code value}
+	 *
+	 * @throws ParseException is value cannot be parsed
+	 */
+	@SuppressWarnings("unchecked")
+	public <F extends Enum<F> & NarField> NarGraph<F> get(String value, Class<F> clazz) throws ParseException {
+
+		if (value == null || value.trim().isEmpty())
+			return NarGraph.noneOf(clazz);
+
+		Key key = new Key(clazz, value);
+
+		NarGraph<F> graph = (NarGraph<F>) cache.get(key);
+
+		if (graph == null) {
+			++missCount;
+			graph = NarGraphParser.parse(value, clazz).intern();
+			cache.put(key, graph);
+		} else {
+			++hitCount;
+		}
+
+		return graph;
+
+	}
+
+	/**
+	 * Returns number of lookups that found graph in cache.
+	 *
+	 * @return number of cache hits
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns number of lookups that had to parse graph.
+	 *
+	 * @return number of cache misses
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns number of cached graphs.
+	 *
+	 * @return number of cached graphs
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	/** Removes all cached graphs. */
+	public void clear() {
+		cache.clear();
+	}
+
+	/** Pairs field type with string being parsed. */
+	private static class Key {
+
+		Key(Class<?> clazz, String value) {
+			this.clazz = clazz;
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * clazz.hashCode() + value.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return clazz == other.clazz && Objects.equals(value, other.value);
+		}
+
+		private final Class<?> clazz;
+		private final String value;
+
+	}
+
+	private static final NarGraphParseCache Default = new NarGraphParseCache(DefaultMaximumSize);
+
+	private final Map<Key, NarGraph<?>> cache;
+	private long hitCount = 0;
+	private long missCount = 0;
+
+}
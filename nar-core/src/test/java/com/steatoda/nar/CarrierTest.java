@@ -1,11 +1,16 @@
 package com.steatoda.nar;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import org.apache.commons.collections4.CollectionUtils;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,6 +32,13 @@ public class CarrierTest {
 		id = "enterprise";
 		
 	}
+
+	@After
+	public void cleanup() {
+
+		NarTraversalExecutor.setDefault(NarTraversalExecutor.Sequential);
+
+	}
 	
 	@Test
 	public void testGet() {
@@ -229,6 +241,34 @@ public class CarrierTest {
 		
 	}
 
+	@Test
+	public void testExtendListReordered() {
+
+		Carrier carrier = carrierService.get(id, NarGraph.Builder.of(Carrier.Field.class).add(Carrier.Field.list, NarGraph.of(Person.Field.boat)).build());
+
+		NarGraph<Carrier.Field> ExtendedGraph = NarGraph.Builder.of(Carrier.Field.class)
+			.add(Carrier.Field.list, NarGraph.of(Person.Field.name))
+			.build()
+		;
+
+		// extension holds same persons, but in reverse order (and with one unrelated person more)
+		carrier.extend(ExtendedGraph, graph -> {
+			Carrier extension = carrierService.get(id, graph);
+			List<Person> persons = new ArrayList<>(extension.getList());
+			Collections.reverse(persons);
+			persons.add(0, Person.ref("unrelated").setName("Unrelated"));
+			return extension.setList(persons);
+		});
+
+		for (Person person : carrier.getList()) {
+			Assert.assertNotNull("list.name should not be null", person.getIfPresent(person::getName, Person.Field.name));
+			Assert.assertNotEquals("list should be matched by ID", "Unrelated", person.getName());
+		}
+
+		Assert.assertEquals(3, carrier.getList().size());
+
+	}
+
 	@Test
 	public void testExtendSet() {
 
@@ -1240,6 +1280,300 @@ public class CarrierTest {
 		
 	}
 
+	@Test
+	public void testExtendArrayArray() {
+
+		NarGraph<Carrier.Field> Graph = NarGraph.Builder.of(Carrier.Field.class)
+			.add(Carrier.Field.arrayarray, NarGraph.of(Person.Field.boat))
+			.build()
+		;
+
+		Carrier carrier = carrierService.get(id, Graph);
+
+		Assert.assertEquals("arrayarray should have 3 rows", 3, carrier.getIfPresent(carrier::getArrayArray, Carrier.Field.arrayarray).length);
+		Assert.assertNull("arrayarray[1] should be null", carrier.getArrayArray()[1]);
+
+		NarGraph<Carrier.Field> ExtendedGraph = NarGraph.Builder.of(Carrier.Field.class)
+			.add(Carrier.Field.arrayarray, NarGraph.Builder.of(Person.Field.class)
+				.add(Person.Field.name)
+				.add(Person.Field.boat, NarGraph.of(Boat.Field.name))
+				.build()
+			)
+			.build()
+		;
+
+		Assert.assertEquals(
+			NarGraph.Builder.of(Carrier.Field.class)
+				.add(Carrier.Field.arrayarray, NarGraph.Builder.of(Person.Field.class)
+					.add(Person.Field.name)
+					.add(Person.Field.boat, NarGraph.of(Boat.Field.name))
+					.build()
+				)
+				.build(),
+			carrier.getMissingGraph(ExtendedGraph)
+		);
+
+		carrier.extend(ExtendedGraph, carrierService);
+
+		Assert.assertTrue("extended graph should be present", carrier.hasGraph(ExtendedGraph));
+		for (Person[] array : carrier.getArrayArray()) {
+			if (array == null)
+				continue;
+			for (Person person : array) {
+				Assert.assertNotNull("arrayarray.name should not be null", person.getIfPresent(person::getName, Person.Field.name));
+				Assert.assertNotNull("arrayarray.boat.name should not be null", person.getBoat().getIfPresent(person.getBoat()::getName, Boat.Field.name));
+			}
+		}
+
+	}
+
+	@Test
+	public void testIntersectArray() {
+
+		NarGraph<Carrier.Field> Graph = NarGraph.Builder.of(Carrier.Field.class)
+			.add(Carrier.Field.array, NarGraph.of(Person.Field.name, Person.Field.boat))
+			.build()
+		;
+
+		Carrier carrier = carrierService.get(id, Graph);
+		Carrier clone = carrier.clone(Graph);
+
+		carrier.intersect(NarGraph.Builder.of(Carrier.Field.class).add(Carrier.Field.array, NarGraph.of(Person.Field.boat)).build());
+
+		Assert.assertFalse("array should not be empty", carrier.getArray().length == 0);
+		for (Person person : carrier.getArray()) {
+			Assert.assertNull("array.name should be null", person.getIfPresent(person::getName, Person.Field.name));
+			Assert.assertNotNull("array.boat should not be null", person.getIfPresent(person::getBoat, Person.Field.boat));
+		}
+
+		// clone holds its own copies of array's elements
+		Assert.assertNotSame(carrier.getArray(), clone.getArray());
+		for (Person person : clone.getArray())
+			Assert.assertNotNull("cloned array.name should not be null", person.getIfPresent(person::getName, Person.Field.name));
+
+	}
+
+	@Test
+	public void testParallelTraversal() {
+
+		NarGraph<Carrier.Field> Graph = NarGraph.Builder.of(Carrier.Field.class)
+			.add(Carrier.Field.listlist, NarGraph.of(Person.Field.boat))
+			.add(Carrier.Field.mapentitylist, NarGraph.of(Person.Field.name))
+			.add(Carrier.Field.arrayarray, NarGraph.of(Person.Field.email))
+			.build()
+		;
+
+		NarGraph<Carrier.Field> ExtendedGraph = NarGraph.Builder.of(Carrier.Field.class)
+			.add(Carrier.Field.listlist, NarGraph.Builder.of(Person.Field.class)
+				.add(Person.Field.name)
+				.add(Person.Field.boat, NarGraph.of(Boat.Field.name))
+				.build()
+			)
+			.add(Carrier.Field.mapentitylist, NarGraph.of(Person.Field.name, Person.Field.boat))
+			.add(Carrier.Field.arrayarray, NarGraph.of(Person.Field.name))
+			.build()
+		;
+
+		Carrier sequential = carrierService.get(id, Graph);
+		NarGraph<Carrier.Field> sequentialMissingGraph = sequential.getMissingGraph(ExtendedGraph);
+		sequential.extend(ExtendedGraph, carrierService);
+		sequential.intersect(Graph);
+
+		NarTraversalExecutor.setDefault(new NarForkJoinExecutor(1));
+
+		Carrier parallel = carrierService.get(id, Graph);
+		Assert.assertEquals(sequentialMissingGraph, parallel.getMissingGraph(ExtendedGraph));
+		parallel.extend(ExtendedGraph, carrierService);
+		Assert.assertTrue("extended graph should be present", parallel.hasGraph(ExtendedGraph));
+		Assert.assertTrue("nothing should be missing after extend", parallel.getMissingGraph(ExtendedGraph).isEmpty());
+		parallel.intersect(Graph);
+		Assert.assertEquals(sequential.getMissingGraph(ExtendedGraph), parallel.getMissingGraph(ExtendedGraph));
+
+	}
+
+	@Test
+	public void testParallelTraversalSharedSubObjects() {
+
+		NarGraph<Person.Field> BoatGraph = NarGraph.of(Person.Field.boat);
+		NarGraph<Person.Field> BoatNameGraph = NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.boat, NarGraph.of(Boat.Field.name))
+			.build()
+		;
+
+		Person first = Person.ref("first");
+		Person second = Person.ref("second");
+		first.setBoat(Boat.ref("boat").setName("Boat"));
+		second.setBoat(Boat.ref("other").setName("Other"));
+		Assert.assertTrue("distinct boats should be disjoint", FieldTraversal.isDisjoint(Arrays.asList(first, second), BoatNameGraph));
+		Assert.assertTrue("subtrees not described by graph should be disjoint", FieldTraversal.isDisjoint(Arrays.asList(first, second), null));
+
+		// both persons on the same boat (instance)
+		Boat boat = Boat.ref("boat").setName("Boat");
+		first.setBoat(boat);
+		second.setBoat(boat);
+		Assert.assertFalse("shared boat should not be disjoint", FieldTraversal.isDisjoint(Arrays.asList(first, second), BoatGraph));
+
+		// one person reachable from another
+		first.setBoat(Boat.ref("boat").setSkipper(second));
+		second.setBoat(Boat.ref("other"));
+		Assert.assertFalse("nested person should not be disjoint", FieldTraversal.isDisjoint(Arrays.asList(first, second), NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.boat, NarGraph.of(Boat.Field.skipper))
+			.build()
+		));
+
+		// shared boat is intersected by one thread only (falling back to sequential processing)
+		NarTraversalExecutor.setDefault(new NarForkJoinExecutor(1));
+		List<Person> persons = new ArrayList<>();
+		for (int i = 0; i < 100; ++i)
+			persons.add(Person.ref("person" + i).setBoat(boat));
+		Carrier carrier = Carrier.ref(id);
+		carrier.setList(persons);
+		carrier.intersect(NarGraph.Builder.of(Carrier.Field.class).add(Carrier.Field.list, BoatGraph).build());
+		Assert.assertFalse("shared boat should be intersected", boat.getFields().contains(Boat.Field.name));
+
+	}
+
+	@Test
+	public void testEstimateCount() {
+
+		Person person = Person.ref("person");
+		Assert.assertEquals("null should hold no objects", 0, FieldTraversal.estimateCount(null, Carrier.Field.entity));
+		Assert.assertEquals("single object should be counted once", 1, FieldTraversal.estimateCount(person, Carrier.Field.entity));
+		Assert.assertEquals("list should be estimated by its size", 3, FieldTraversal.estimateCount(Arrays.asList(person, person, person), Carrier.Field.list));
+		Assert.assertEquals("array should be estimated by its length", 2, FieldTraversal.estimateCount(new Person[] { person, null }, Carrier.Field.array));
+		Assert.assertEquals("empty list should hold no objects", 0, FieldTraversal.estimateCount(new ArrayList<>(), Carrier.Field.list));
+
+		List<List<Person>> listlist = Arrays.asList(Arrays.asList(person, person), Arrays.asList(person));
+		Assert.assertEquals("nested lists should be estimated by their first item", 4, FieldTraversal.estimateCount(listlist, Carrier.Field.listlist));
+
+		Map<String, List<Person>> maplist = new HashMap<>();
+		maplist.put("key", Arrays.asList(person, person, person));
+		Assert.assertEquals("map should be estimated by its value side", 3, FieldTraversal.estimateCount(maplist, Carrier.Field.maplist));
+
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testMissingGraphPrimitiveArray() {
+
+		// object arrays are walked, primitive ones can't hold persons
+		List list = new ArrayList<>();
+		list.add(new Object[] { Person.ref("ron"), new int[] { 1, 2, 3 } });
+
+		Carrier carrier = Carrier.ref(id);
+		carrier.setListList(list);
+
+		try {
+			carrier.getMissingGraph(NarGraph.Builder.of(Carrier.Field.class).add(Carrier.Field.listlist, NarGraph.of(Person.Field.name)).build());
+			Assert.fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testMissingGraphDeeplyNested() {
+
+		// nest single person deeper than recursive traversal would survive
+		List nested = new ArrayList<>(Collections.singletonList(Person.ref("ron")));
+		for (int i = 0; i < 100_000; ++i)
+			nested = new ArrayList<>(Collections.singletonList(nested));
+
+		Carrier carrier = Carrier.ref(id);
+		carrier.setListList(nested);
+
+		NarGraph<Carrier.Field> Graph = NarGraph.Builder.of(Carrier.Field.class)
+			.add(Carrier.Field.listlist, NarGraph.of(Person.Field.name))
+			.build()
+		;
+
+		Assert.assertEquals(Graph, carrier.getMissingGraph(Graph));
+
+		carrier.intersect(NarGraph.of(Carrier.Field.listlist));
+
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testMissingGraphPlainMap() {
+
+		Carrier carrier = Carrier.ref(id);
+		Map map = new HashMap<>();
+		map.put("first", "not a person");
+		carrier.setMap(map);
+
+		try {
+			carrier.getMissingGraph(NarGraph.Builder.of(Carrier.Field.class).add(Carrier.Field.map, NarGraph.of(Person.Field.name)).build());
+			Assert.fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testMissingGraphMapDetectPlainContainers() {
+
+		NarGraph<Carrier.Field> Graph = NarGraph.Builder.of(Carrier.Field.class)
+			.add(Carrier.Field.map, NarGraph.of(Person.Field.name))
+			.build()
+		;
+
+		// values are lists of plain values
+		Map personStrings = new HashMap<>();
+		personStrings.put(Person.ref("ron"), Arrays.asList("first", "second"));
+		personStrings.put(Person.ref("pirate"), Collections.singletonList("third"));
+		Carrier carrier = Carrier.ref(id);
+		carrier.setMap(personStrings);
+		Assert.assertEquals(Graph, carrier.getMissingGraph(Graph));
+
+		// keys are lists of plain values
+		Map stringsPerson = new HashMap<>();
+		stringsPerson.put(Arrays.asList("first", "second"), Person.ref("ron"));
+		stringsPerson.put(Collections.singletonList("third"), Person.ref("pirate"));
+		carrier = Carrier.ref(id);
+		carrier.setMap(stringsPerson);
+		Assert.assertEquals(Graph, carrier.getMissingGraph(Graph));
+
+		// values are maps of plain values, nested in lists
+		Map personMaps = new HashMap<>();
+		personMaps.put(Person.ref("ron"), Collections.singletonList(Collections.singletonMap("first", 1)));
+		carrier = Carrier.ref(id);
+		carrier.setMap(personMaps);
+		Assert.assertEquals(Graph, carrier.getMissingGraph(Graph));
+
+		// complete persons are not missing anything, regardless of rejected side
+		Person ron = Person.ref("ron");
+		ron.setName("Ron");
+		personStrings = new HashMap<>();
+		personStrings.put(ron, Arrays.asList("first", "second"));
+		carrier = Carrier.ref(id);
+		carrier.setMap(personStrings);
+		Assert.assertTrue(carrier.getMissingGraph(Graph).isEmpty());
+
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testMissingGraphMapDetectPlainContainersBothSides() {
+
+		Map map = new HashMap<>();
+		map.put(Collections.singletonList("first"), Collections.singletonList("second"));
+		Carrier carrier = Carrier.ref(id);
+		carrier.setMap(map);
+
+		try {
+			carrier.getMissingGraph(NarGraph.Builder.of(Carrier.Field.class).add(Carrier.Field.map, NarGraph.of(Person.Field.name)).build());
+			Assert.fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+	}
+
 	private CarrierService carrierService;
 	
 	private String id;
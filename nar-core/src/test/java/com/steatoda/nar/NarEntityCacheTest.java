@@ -1,8 +1,15 @@
 package com.steatoda.nar;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.junit.Assert;
@@ -190,6 +197,43 @@ public class NarEntityCacheTest {
 
 	}
 	
+	@Test
+	public void testGetAll() {
+
+		AtomicInteger getAllCount = new AtomicInteger(0);
+		Set<String> requestedIds = new HashSet<>();
+
+		PersonService personService = new PersonDemoService() {
+			@Override
+			public Map<String, Person> getAll(Collection<String> ids, NarGraph<Person.Field> graph) {
+				getAllCount.incrementAndGet();
+				requestedIds.addAll(ids);
+				return super.getAll(ids, graph);
+			}
+		};
+
+		NarEntityCache<String, Person, Person.Field> cache = new NarEntityCache<>(EnumSet.of(Person.Field.name, Person.Field.email, Person.Field.boat));
+
+		cache.get(PersonDemoData.RonId, NarGraph.of(Person.Field.name, Person.Field.email), personService);
+
+		Map<String, Person> persons = cache.getAll(Arrays.asList(PersonDemoData.RonId, PersonDemoData.PirateId, PersonDemoData.JohnId), NarGraph.of(Person.Field.name, Person.Field.email), personService);
+
+		Assert.assertEquals("All persons should be returned", 3, persons.size());
+		Assert.assertEquals("Uncached persons should be fetched at once", 1, getAllCount.get());
+		Assert.assertEquals("Only uncached persons should be fetched", Set.of(PersonDemoData.PirateId, PersonDemoData.JohnId), requestedIds);
+		for (Person person : persons.values())
+			Assert.assertNotNull("email should not be null", person.getIfPresent(person::getEmail, Person.Field.email));
+
+		requestedIds.clear();
+		persons = cache.getAll(Arrays.asList(PersonDemoData.RonId, PersonDemoData.PirateId), NarGraph.of(Person.Field.name), personService);
+
+		Assert.assertEquals("All persons should be returned", 2, persons.size());
+		Assert.assertTrue("Nothing should be fetched", requestedIds.isEmpty());
+		for (Person person : persons.values())
+			Assert.assertNull("email should be stripped", person.getIfPresent(person::getEmail, Person.Field.email));
+
+	}
+
 	@Test
 	public void testPut() {
 
@@ -261,6 +305,49 @@ public class NarEntityCacheTest {
 
 	}
 
+	@Test
+	public void testConcurrentMerge() throws InterruptedException {
+
+		PersonService personService = new PersonDemoService();
+		NarEntityCache<String, Person, Person.Field> cache = new NarEntityCache<>(EnumSet.of(Person.Field.name, Person.Field.email, Person.Field.boat));
+
+		List<Person> parts = Arrays.asList(
+			personService.get(PersonDemoData.RonId, NarGraph.of(Person.Field.name)),
+			personService.get(PersonDemoData.RonId, NarGraph.of(Person.Field.email)),
+			personService.get(PersonDemoData.RonId, NarGraph.of(Person.Field.boat))
+		);
+
+		for (int round = 0; round < 100; ++round) {
+
+			cache.clear();
+
+			// merge every part from its own thread, while others keep reading
+			CountDownLatch start = new CountDownLatch(1);
+			List<Thread> threads = new ArrayList<>();
+			for (Person part : parts)
+				threads.add(new Thread(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					cache.get(PersonDemoData.RonId);
+					cache.merge(part);
+					cache.get(PersonDemoData.RonId);
+				}));
+			threads.forEach(Thread::start);
+			start.countDown();
+			for (Thread thread : threads)
+				thread.join();
+
+			Person person = cache.get(PersonDemoData.RonId);
+			Assert.assertNotNull("person should not be null", person);
+			Assert.assertEquals("No merged field should be lost", EnumSet.of(Person.Field.name, Person.Field.email, Person.Field.boat), person.getFields());
+
+		}
+
+	}
+
 	@Test
 	public void testClearEntityFields() {
 
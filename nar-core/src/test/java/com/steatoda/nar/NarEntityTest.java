@@ -1,20 +1,31 @@
 package com.steatoda.nar;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.steatoda.nar.demo.model.berth.Berth;
+import com.steatoda.nar.demo.model.berth.BerthDemoService;
 import com.steatoda.nar.demo.model.boat.Boat;
+import com.steatoda.nar.demo.model.boat.BoatDemoService;
 import com.steatoda.nar.demo.model.marina.Marina;
+import com.steatoda.nar.demo.model.marina.MarinaDemoData;
+import com.steatoda.nar.demo.model.marina.MarinaDemoService;
 import com.steatoda.nar.demo.model.person.Person;
 import com.steatoda.nar.demo.model.person.PersonAsyncService;
 import com.steatoda.nar.demo.model.person.PersonDemoAsyncService;
@@ -221,6 +232,69 @@ public class NarEntityTest {
 
 	}
 
+	@Test
+	public void testGetAll() {
+
+		Map<String, Person> persons = personService.getAll(Arrays.asList(PersonDemoData.RonId, PersonDemoData.PirateId, "nonexisting"), NarGraph.of(Person.Field.name));
+
+		Assert.assertEquals("Only existing persons should be returned", 2, persons.size());
+		Assert.assertEquals("Ron should be mapped by his ID", PersonDemoData.RonId, persons.get(PersonDemoData.RonId).getId());
+		Assert.assertNotNull("name should not be null", persons.get(PersonDemoData.PirateId).getIfPresent(persons.get(PersonDemoData.PirateId)::getName, Person.Field.name));
+
+	}
+
+	@Test
+	public void testGetAllAsync() throws InterruptedException {
+
+		CountDownLatch lock = new CountDownLatch(1);
+
+		AtomicReference<Map<String, Person>> personsRef = new AtomicReference<>(null);
+
+		personAsyncService.getAll(Arrays.asList(PersonDemoData.RonId, PersonDemoData.PirateId, "nonexisting"), NarGraph.of(Person.Field.name), persons -> {
+			personsRef.set(persons);
+			lock.countDown();
+		});
+
+		lock.await();
+
+		Assert.assertEquals("Only existing persons should be returned", 2, personsRef.get().size());
+		Assert.assertEquals("Ron should be mapped by his ID", PersonDemoData.RonId, personsRef.get().get(PersonDemoData.RonId).getId());
+
+	}
+
+	@Test
+	public void testGetBatchedByGraph() throws InterruptedException {
+
+		AtomicInteger realGetAllCount = new AtomicInteger(0);
+
+		NarBatcher<String, Person, Person.Field> testPersonBatcher = new NarBatcher<>(new PersonDemoAsyncService() {
+			@Override
+			public NarRequest getAll(Collection<String> ids, NarGraph<Person.Field> graph, NarServiceHandler<Map<String, Person>> handler) {
+				realGetAllCount.incrementAndGet();
+				return super.getAll(ids, graph, handler);
+			}
+		});
+
+		final NarGraph<Person.Field> PersonView = NarGraph.of(Person.Field.name);
+
+		CountDownLatch lock = new CountDownLatch(3);
+
+		Map<String, Person> persons = new ConcurrentHashMap<>();
+		for (String id : Arrays.asList(PersonDemoData.RonId, PersonDemoData.PirateId, PersonDemoData.JohnId))
+			testPersonBatcher.get(id, PersonView, person -> {
+				persons.put(person.getId(), person);
+				lock.countDown();
+			});
+
+		testPersonBatcher.run();
+
+		lock.await();
+
+		Assert.assertEquals("There should be exactly 1 call to PersonService.getAll", 1, realGetAllCount.get());
+		Assert.assertEquals("All persons should be retrieved", 3, persons.size());
+
+	}
+
 	@Test
 	public void testGetBatched() throws InterruptedException {
 
@@ -338,6 +412,244 @@ public class NarEntityTest {
 
 	}
 	
+	@Test
+	public void testExtendAllWithService() {
+
+		AtomicInteger getCount = new AtomicInteger(0);
+		PersonService countingService = new PersonDemoService() {
+			@Override
+			public Person get(String id, NarGraph<Person.Field> graph) {
+				getCount.incrementAndGet();
+				return super.get(id, graph);
+			}
+		};
+
+		List<Person> persons = Arrays.asList(
+			personService.get(PersonDemoData.RonId, NarGraph.of(Person.Field.name)),
+			personService.get(PersonDemoData.PirateId, NarGraph.of(Person.Field.name)),
+			personService.get(PersonDemoData.JohnId, NarGraph.of(Person.Field.name, Person.Field.email)),
+			personService.get(PersonDemoData.RonId, NarGraph.of(Person.Field.name))
+		);
+
+		Assert.assertTrue("Persons should be extended", NarEntity.extendAll(persons, NarGraph.of(Person.Field.name, Person.Field.email), countingService));
+		Assert.assertEquals("Each distinct missing person should be fetched once", 2, getCount.get());
+		for (Person person : persons)
+			Assert.assertNotNull("Email is not extended", person.getIfPresent(person::getEmail, Person.Field.email));
+
+		Assert.assertFalse("Nothing should be extended", NarEntity.extendAll(persons, NarGraph.of(Person.Field.email), countingService));
+		Assert.assertEquals("Nothing should be fetched", 2, getCount.get());
+
+	}
+
+	@Test
+	public void testExtendAllAsync() throws InterruptedException {
+
+		List<Person> persons = Arrays.asList(
+			personService.get(PersonDemoData.RonId, NarGraph.of(Person.Field.name)),
+			personService.get(PersonDemoData.PirateId, NarGraph.of(Person.Field.email)),
+			personService.get(PersonDemoData.JohnId, NarGraph.of(Person.Field.name, Person.Field.email))
+		);
+
+		CountDownLatch lock = new CountDownLatch(1);
+
+		AtomicReference<Collection<Person>> personsRef = new AtomicReference<>(null);
+		AtomicBoolean isFinished = new AtomicBoolean(false);
+
+		NarEntity.extendAll(persons, NarGraph.of(Person.Field.name, Person.Field.email), personAsyncService, new NarServiceHandler<Collection<Person>>() {
+			@Override
+			public void onSuccess(Collection<Person> value) {
+				personsRef.set(value);
+			}
+			@Override
+			public void onFinish() {
+				isFinished.set(true);
+			}
+			@Override
+			public void onDestroy() {
+				lock.countDown();
+			}
+		});
+
+		lock.await();
+
+		Assert.assertSame("Extended persons should be returned", persons, personsRef.get());
+		Assert.assertTrue("isFinished should be set", isFinished.get());
+		for (Person person : persons) {
+			Assert.assertNotNull("Name is not extended", person.getIfPresent(person::getName, Person.Field.name));
+			Assert.assertNotNull("Email is not extended", person.getIfPresent(person::getEmail, Person.Field.email));
+		}
+
+	}
+
+	@Test
+	public void testExtendAllAsyncWithoutId() {
+
+		List<Person> persons = Arrays.asList(
+			personService.get(PersonDemoData.RonId, NarGraph.of(Person.Field.name)),
+			new Person()
+		);
+
+		AtomicBoolean isFailed = new AtomicBoolean(false);
+		AtomicBoolean isFinished = new AtomicBoolean(false);
+		AtomicBoolean isDestroyed = new AtomicBoolean(false);
+
+		NarEntity.extendAll(persons, NarGraph.of(Person.Field.name, Person.Field.email), personAsyncService, new NarServiceHandler<Collection<Person>>() {
+			@Override
+			public void onSuccess(Collection<Person> value) {
+				Assert.fail("Extending entity without ID should not succeed");
+			}
+			@Override
+			public void onFail() {
+				isFailed.set(true);
+			}
+			@Override
+			public void onFinish() {
+				isFinished.set(true);
+			}
+			@Override
+			public void onDestroy() {
+				isDestroyed.set(true);
+			}
+		});
+
+		Assert.assertTrue("isFailed should be set", isFailed.get());
+		Assert.assertTrue("isFinished should be set", isFinished.get());
+		Assert.assertTrue("isDestroyed should be set", isDestroyed.get());
+
+	}
+
+	@Test
+	public void testGraphResolver() {
+
+		Map<Class<?>, AtomicInteger> getAllCounts = new HashMap<>();
+		for (Class<?> clazz : Arrays.asList(Person.Field.class, Boat.Field.class, Marina.Field.class))
+			getAllCounts.put(clazz, new AtomicInteger(0));
+
+		NarGraphResolver resolver = new NarGraphResolver()
+			.register(Person.Field.class, new PersonDemoService() {
+				@Override
+				public Map<String, Person> getAll(Collection<String> ids, NarGraph<Person.Field> graph) {
+					getAllCounts.get(Person.Field.class).incrementAndGet();
+					return super.getAll(ids, graph);
+				}
+			})
+			.register(Boat.Field.class, new BoatDemoService() {
+				@Override
+				public Map<String, Boat> getAll(Collection<String> ids, NarGraph<Boat.Field> graph) {
+					getAllCounts.get(Boat.Field.class).incrementAndGet();
+					return super.getAll(ids, graph);
+				}
+			})
+			.register(Marina.Field.class, new MarinaDemoService() {
+				@Override
+				public Map<String, Marina> getAll(Collection<String> ids, NarGraph<Marina.Field> graph) {
+					getAllCounts.get(Marina.Field.class).incrementAndGet();
+					return super.getAll(ids, graph);
+				}
+			});
+
+		NarGraph<Person.Field> View = NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.name)
+			.add(Person.Field.boat, NarGraph.Builder.of(Boat.Field.class)
+				.add(Boat.Field.name)
+				.add(Boat.Field.homeport, NarGraph.Builder.of(Marina.Field.class)
+					.add(Marina.Field.name)
+					.add(Marina.Field.manager, NarGraph.of(Person.Field.name))
+					.build()
+				)
+				.add(Boat.Field.crew, NarGraph.of(Person.Field.name, Person.Field.email))
+				.build()
+			)
+			.build()
+		;
+
+		List<String> ids = Arrays.asList(PersonDemoData.RonId, PersonDemoData.PirateId, PersonDemoData.JohnId, PersonDemoData.CapoId);
+
+		Map<String, Person> persons = resolver.getAll(ids, View);
+
+		Assert.assertEquals("Boats should be fetched at once", 1, getAllCounts.get(Boat.Field.class).get());
+		Assert.assertEquals("Marinas should be fetched at once", 1, getAllCounts.get(Marina.Field.class).get());
+		Assert.assertEquals("Persons should be fetched once per level (roots, crews, managers)", 3, getAllCounts.get(Person.Field.class).get());
+
+		for (String id : ids) {
+			Person person = persons.get(id);
+			Assert.assertNotNull("Person " + id + " should be resolved", person);
+			Assert.assertTrue("Person " + id + " should have whole graph", person.getMissingGraph(View).isEmpty());
+			Person expected = personService.get(id, View);
+			Assert.assertEquals("Person " + id + " has wrong name", expected.getName(), person.getName());
+			if (expected.getBoat() == null) {
+				Assert.assertNull("Person " + id + " should not have boat", person.getBoat());
+				continue;
+			}
+			Assert.assertEquals("Person " + id + " has wrong boat", expected.getBoat().getName(), person.getBoat().getName());
+			Assert.assertEquals("Person " + id + " has wrong homeport",
+				Optional.ofNullable(expected.getBoat().getHomeport()).map(m -> m.getName() + "/" + m.getManager().getName()).orElse(null),
+				Optional.ofNullable(person.getBoat().getHomeport()).map(m -> m.getName() + "/" + m.getManager().getName()).orElse(null)
+			);
+			Assert.assertEquals("Person " + id + " has wrong crew",
+				expected.getBoat().getCrew().stream().map(p -> p.getName() + "/" + p.getEmail()).collect(Collectors.toList()),
+				person.getBoat().getCrew().stream().map(p -> p.getName() + "/" + p.getEmail()).collect(Collectors.toList())
+			);
+		}
+
+		Assert.assertFalse("Nothing should be extended", resolver.extendAll(persons.values(), View));
+
+	}
+
+	@Test
+	public void testExtendCollectionElementsWithResolver() {
+
+		AtomicInteger marinaGetAllCount = new AtomicInteger(0);
+		List<String> fetchedBerthIds = new ArrayList<>();
+
+		NarGraphResolver resolver = new NarGraphResolver()
+			.register(Marina.Field.class, new MarinaDemoService() {
+				@Override
+				public Map<String, Marina> getAll(Collection<String> ids, NarGraph<Marina.Field> graph) {
+					marinaGetAllCount.incrementAndGet();
+					return super.getAll(ids, graph);
+				}
+			})
+			.register(Berth.Field.class, new BerthDemoService() {
+				@Override
+				public Map<String, Berth> getAll(Collection<String> ids, NarGraph<Berth.Field> graph) {
+					fetchedBerthIds.addAll(ids);
+					return super.getAll(ids, graph);
+				}
+			});
+
+		NarGraph<Marina.Field> View = NarGraph.Builder.of(Marina.Field.class)
+			.add(Marina.Field.name)
+			.add(Marina.Field.berths, NarGraph.Builder.of(Berth.Field.class)
+				.add(Berth.Field.boat, NarGraph.of(Boat.Field.name))
+				.build()
+			)
+			.build()
+		;
+
+		Marina marina = new MarinaDemoService().get(MarinaDemoData.KornatiId, View);
+
+		Assert.assertTrue("Marina should have at least 3 berths", marina.getBerths().size() >= 3);
+
+		// strip boats from 3 berths
+		List<String> strippedBerthIds = new ArrayList<>();
+		for (int i = 0; i < 3; ++i) {
+			Berth berth = marina.getBerths().get(i);
+			berth.clearFields(Berth.Field.boat);
+			strippedBerthIds.add(berth.getId());
+		}
+
+		List<Berth> berths = new ArrayList<>(marina.getBerths());
+
+		Assert.assertTrue("Marina should be extended", marina.extend(View, resolver));
+		Assert.assertEquals("Marina itself should not be fetched", 0, marinaGetAllCount.get());
+		Assert.assertEquals("Only stripped berths should be fetched", strippedBerthIds, fetchedBerthIds);
+		Assert.assertTrue("Marina should have whole graph", marina.getMissingGraph(View).isEmpty());
+		for (int i = 0; i < berths.size(); ++i)
+			Assert.assertSame("Berths should be extended in place", berths.get(i), marina.getBerths().get(i));
+
+	}
+
 	@Test
 	public void testExtendHierarchyWithService() {
 
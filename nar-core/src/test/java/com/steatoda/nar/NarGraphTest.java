@@ -1,6 +1,9 @@
 package com.steatoda.nar;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -370,6 +373,60 @@ public class NarGraphTest {
 		}
 	}
 
+	@Test
+	public void testFromString_Error_SubfieldsOnScalar() {
+		String str = "name{email}";
+		try {
+			NarGraph.of(str, Person.Field.class);
+			Assert.fail("Should have throw ParseException");
+		} catch (ParseException e) {
+			Assert.assertEquals("ParseException reported wrong error offset", 0, e.getErrorOffset());
+		}
+	}
+
+	@Test
+	public void testFromString_DuplicateField() throws ParseException {
+		Assert.assertEquals("later declaration should override previous one", NarGraph.of(Person.Field.boat), NarGraph.of("boat{name},boat", Person.Field.class));
+		Assert.assertEquals("later declaration should override previous one", NarGraph.Builder.of(Person.Field.class).add(Person.Field.boat, NarGraph.of(Boat.Field.type)).build(), NarGraph.of("boat{name},boat{type}", Person.Field.class));
+	}
+
+	@Test
+	public void testParser_Bytes() throws ParseException {
+		NarGraph<Person.Field> expected = NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.name)
+			.add(Person.Field.boat, NarGraph.of(Boat.Field.name, Boat.Field.type))
+			.build();
+		byte[] bytes = "xxname,boat{name,type}xx".getBytes(StandardCharsets.UTF_8);
+		Assert.assertEquals("graph should be parsed from bytes", expected, NarGraphByteParser.parse(bytes, 2, bytes.length - 4, Person.Field.class));
+		Assert.assertEquals("graph should be parsed from heap buffer", expected, NarGraphByteParser.parse(ByteBuffer.wrap(bytes, 2, bytes.length - 4), Person.Field.class));
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).position(2).limit(bytes.length - 2);
+		Assert.assertEquals("graph should be parsed from direct buffer", expected, NarGraphByteParser.parse(direct, Person.Field.class));
+		Assert.assertEquals("parsing should not change buffer's position", 2, direct.position());
+		Assert.assertTrue("blank bytes should parse to empty graph", NarGraphByteParser.parse(" ".getBytes(StandardCharsets.UTF_8), Person.Field.class).isEmpty());
+	}
+
+	@Test
+	public void testParser_Bytes_Error() {
+		try {
+			NarGraphByteParser.parse("name,boat{name,email},email".getBytes(StandardCharsets.UTF_8), Person.Field.class);
+			Assert.fail("Should have throw UnknownFieldException");
+		} catch (UnknownFieldException e) {
+			Assert.assertEquals("UnknownFieldException reported wrong error value", "email", e.getValue());
+			Assert.assertEquals("UnknownFieldException reported wrong error offset", 15, e.getErrorOffset());
+		} catch (ParseException e) {
+			throw new AssertionError("Unknown ParseException throws", e);
+		}
+		try {
+			NarGraphByteParser.parse("name,boat{name,\u017eaba}".getBytes(StandardCharsets.UTF_8), Person.Field.class);
+			Assert.fail("Should have throw UnknownFieldException");
+		} catch (UnknownFieldException e) {
+			Assert.assertEquals("UnknownFieldException reported wrong error value", "\u017eaba", e.getValue());
+		} catch (ParseException e) {
+			throw new AssertionError("Unknown ParseException throws", e);
+		}
+	}
+
 	@Test
 	public void testEquals() {
 		NarGraph<Person.Field> fields1 = NarGraph.Builder.of(Person.Field.class)
@@ -398,6 +455,271 @@ public class NarGraphTest {
 		Assert.assertEquals("fields 3 and 4 should be equal", fields3, fields4);
 	}
 
+	@Test
+	public void testBuilder_BuiltGraphIsImmutable() {
+		NarGraph.Builder<Person.Field> builder = NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.name);
+		NarGraph<Person.Field> fields = builder.build();
+		builder.add(Person.Field.email).add(Person.Field.boat, NarGraph.of(Boat.Field.name));
+		Assert.assertEquals("built graph should not change when builder is modified", EnumSet.of(Person.Field.name), top(fields));
+		Assert.assertNull("built graph should not change when builder is modified", fields.getGraph(Person.Field.boat));
+	}
+
+	@Test
+	public void testContainsAll() {
+		NarGraph<Person.Field> fields = NarGraph.of(Person.Field.name, Person.Field.email, Person.Field.boat);
+		Assert.assertTrue("graph should contain its subset", fields.containsAll(NarGraph.of(Person.Field.name, Person.Field.boat)));
+		Assert.assertTrue("graph should contain its subset", fields.containsAll(EnumSet.of(Person.Field.email)));
+		Assert.assertFalse("graph should not contain its superset", fields.containsAll(NarGraph.allOf(Person.Field.class)));
+		Assert.assertFalse("graph should not contain fields of other type", fields.containsAll(EnumSet.of(Boat.Field.name)));
+	}
+
+	@Test
+	public void testJumbo() throws ParseException {
+		NarGraph<Jumbo> all = NarGraph.allOf(Jumbo.class);
+		Assert.assertEquals("allOf should contain all jumbo fields", EnumSet.allOf(Jumbo.class), top(all));
+		NarGraph<Jumbo> fields = NarGraph.Builder.of(Jumbo.class)
+			.add(Jumbo.f00)
+			.add(Jumbo.f63)
+			.add(Jumbo.f64)
+			.add(Jumbo.f69)
+			.build();
+		Assert.assertEquals("fields should contain only requested jumbo fields", EnumSet.of(Jumbo.f00, Jumbo.f63, Jumbo.f64, Jumbo.f69), top(fields));
+		Assert.assertEquals("jumbo fields should be iterated in declaration order", Arrays.asList(Jumbo.f00, Jumbo.f63, Jumbo.f64, Jumbo.f69), new ArrayList<>(fields));
+		Assert.assertTrue("allOf should contain all jumbo subsets", all.containsAll(fields));
+		Assert.assertFalse("jumbo subset should not contain allOf", fields.containsAll(all));
+		Assert.assertEquals("jumbo graph should survive string round-trip", fields, NarGraph.of(fields.toString(), Jumbo.class));
+		Assert.assertEquals("jumbo complement should contain remaining fields", Jumbo.values().length - 4, NarGraph.complementOf(fields).size());
+	}
+
+	@Test
+	public void testHashCode() {
+		NarGraph<Person.Field> fields1 = NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.email)
+			.add(Person.Field.boat, NarGraph.of(Boat.Field.name, Boat.Field.type))
+			.build();
+		NarGraph<Person.Field> fields2 = NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.boat, NarGraph.of(Boat.Field.type, Boat.Field.name))
+			.add(Person.Field.email)
+			.build();
+		NarGraph<Person.Field> fields3 = NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.email)
+			.add(Person.Field.boat, NarGraph.noneOf(Boat.Field.class))
+			.build();
+		Assert.assertEquals("equal graphs should have equal hash codes", fields1.hashCode(), fields2.hashCode());
+		Assert.assertEquals("empty and missing subgraphs should hash the same", NarGraph.of(Person.Field.email, Person.Field.boat).hashCode(), fields3.hashCode());
+		Assert.assertNotEquals("subgraphs should contribute to hash code", fields1.hashCode(), fields3.hashCode());
+	}
+
+	@Test
+	public void testIntern() throws ParseException {
+		NarGraph<Person.Field> fields1 = NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.email)
+			.add(Person.Field.boat, NarGraph.of(Boat.Field.name))
+			.buildInterned();
+		NarGraph<Person.Field> fields2 = NarGraph.of("email,boat{name}", Person.Field.class).intern();
+		NarGraph<Person.Field> fields3 = NarGraph.Builder.of(Person.Field.class)
+			.add(Person.Field.email)
+			.add(Person.Field.boat, NarGraph.noneOf(Boat.Field.class))
+			.build();
+		Assert.assertTrue("interned graph should report being interned", fields1.isInterned());
+		Assert.assertFalse("regular graph should not report being interned", fields3.isInterned());
+		Assert.assertSame("structurally equal graphs should intern to same instance", fields1, fields2);
+		Assert.assertSame("interned subgraphs should be interned too", NarGraph.of(Boat.Field.name).intern(), fields1.getGraph(Person.Field.boat));
+		Assert.assertSame("empty subgraph should intern same as missing subgraph", NarGraph.of(Person.Field.email, Person.Field.boat).intern(), fields3.intern());
+		Assert.assertNull("interned graph should drop empty subgraphs", fields3.intern().getGraph(Person.Field.boat));
+		Assert.assertNotEquals("different interned graphs should not be equal", fields1, fields3.intern());
+	}
+
+	@Test
+	public void testParseCache() throws ParseException {
+		NarGraphParseCache cache = new NarGraphParseCache(2);
+		NarGraph<Person.Field> fields1 = cache.get("name,boat{name}", Person.Field.class);
+		NarGraph<Person.Field> fields2 = cache.get("name,boat{name}", Person.Field.class);
+		Assert.assertSame("same string should return same cached graph", fields1, fields2);
+		Assert.assertTrue("cached graph should be interned", fields1.isInterned());
+		Assert.assertEquals("cache should record one miss", 1, cache.getMissCount());
+		Assert.assertEquals("cache should record one hit", 1, cache.getHitCount());
+		Assert.assertNotEquals("same string should be parsed per field type", fields1, cache.get("name", Boat.Field.class));
+		cache.get("email", Person.Field.class);
+		cache.get("permissions", Person.Field.class);
+		Assert.assertTrue("cache should be bounded", cache.size() <= 2);
+		try {
+			cache.get("name,boat{email}", Person.Field.class);
+			Assert.fail("Should have throw UnknownFieldException");
+		} catch (UnknownFieldException ignored) {
+		}
+	}
+
+	@Test
+	public void testUnion() throws ParseException {
+		NarGraph<Person.Field> fields1 = NarGraph.of("name,boat{name}", Person.Field.class);
+		NarGraph<Person.Field> fields2 = NarGraph.of("email,boat{type}", Person.Field.class);
+		Assert.assertEquals("union should merge fields and subgraphs", NarGraph.of("name,email,boat{name,type}", Person.Field.class), fields1.union(fields2));
+		Assert.assertSame("union with subgraph should return same graph", fields1, fields1.union(NarGraph.of("boat", Person.Field.class)));
+		Assert.assertSame("union with supergraph should return supergraph", fields1, NarGraph.of(Person.Field.boat).union(fields1));
+		Assert.assertSame("union with empty graph should return same graph", fields1, fields1.union(NarGraph.noneOf(Person.Field.class)));
+	}
+
+	@Test
+	public void testIntersect() throws ParseException {
+		NarGraph<Person.Field> fields1 = NarGraph.of("name,email,boat{name,type}", Person.Field.class);
+		NarGraph<Person.Field> fields2 = NarGraph.of("email,boat{type,skipper},permissions", Person.Field.class);
+		Assert.assertEquals("intersection should keep only common fields and subgraphs", NarGraph.of("email,boat{type}", Person.Field.class), fields1.intersect(fields2));
+		Assert.assertEquals("intersection with flat field should drop subgraph", NarGraph.of("boat", Person.Field.class), fields1.intersect(NarGraph.of(Person.Field.boat)));
+		NarGraph<Person.Field> subgraph = NarGraph.of("email,boat{name}", Person.Field.class);
+		Assert.assertSame("intersection with supergraph should return same graph", subgraph, subgraph.intersect(fields1));
+		Assert.assertTrue("intersection of disjoint graphs should be empty", NarGraph.of(Person.Field.name).intersect(NarGraph.of(Person.Field.email)).isEmpty());
+	}
+
+	@Test
+	public void testMinus() throws ParseException {
+		NarGraph<Person.Field> requested = NarGraph.of("name,email,boat{name,type}", Person.Field.class);
+		Assert.assertEquals("difference should keep missing fields and missing parts of subgraphs", NarGraph.of("email,boat{type}", Person.Field.class), requested.minus(NarGraph.of("name,boat{name,skipper}", Person.Field.class)));
+		Assert.assertEquals("field without subgraph should not cover requested subgraph", NarGraph.of("boat{name,type}", Person.Field.class), requested.minus(NarGraph.of("name,email,boat", Person.Field.class)));
+		Assert.assertTrue("difference with supergraph should be empty", requested.minus(NarGraph.of("name,email,permissions,boat{name,type,skipper}", Person.Field.class)).isEmpty());
+		Assert.assertSame("difference with disjoint graph should return same graph", requested, requested.minus(NarGraph.of(Person.Field.permissions)));
+	}
+
+	@Test
+	public void testIsSubgraphOf() throws ParseException {
+		NarGraph<Person.Field> graph = NarGraph.of("name,boat{name,type}", Person.Field.class);
+		Assert.assertTrue("graph should be subgraph of itself", graph.isSubgraphOf(graph));
+		Assert.assertTrue("flat subset should be subgraph", NarGraph.of("boat", Person.Field.class).isSubgraphOf(graph));
+		Assert.assertTrue("partial subgraph should be subgraph", NarGraph.of("boat{type}", Person.Field.class).isSubgraphOf(graph));
+		Assert.assertFalse("deeper subgraph should not be subgraph", NarGraph.of("boat{skipper}", Person.Field.class).isSubgraphOf(graph));
+		Assert.assertFalse("graph with subgraph should not be subgraph of flat graph", graph.isSubgraphOf(NarGraph.of(Person.Field.name, Person.Field.boat)));
+		Assert.assertTrue("empty graph should be subgraph of any graph", NarGraph.noneOf(Person.Field.class).isSubgraphOf(graph));
+	}
+
+	@Test
+	public void testBuilder_CopyOnWrite() throws ParseException {
+		NarGraph<Person.Field> graph = NarGraph.of("name,boat{name,type}", Person.Field.class);
+		Assert.assertSame("unmodified builder should return initial graph", graph, NarGraph.Builder.of(graph).build());
+		Assert.assertSame("extending with subset should not modify builder", graph, NarGraph.Builder.of(graph).add(NarGraph.of("boat{type}", Person.Field.class)).add(Person.Field.name).build());
+		NarGraph.Builder<Person.Field> builder = NarGraph.Builder.of(graph);
+		NarGraph<Person.Field> extended = builder.add(Person.Field.email).build();
+		Assert.assertSame("repeated build without modification should return same graph", extended, builder.build());
+		builder.remove(Person.Field.boat);
+		Assert.assertEquals("initial graph should not change when builder is modified", NarGraph.of("name,boat{name,type}", Person.Field.class), graph);
+		Assert.assertEquals("built graph should not change when builder is modified", NarGraph.of("name,email,boat{name,type}", Person.Field.class), extended);
+		Assert.assertEquals(NarGraph.of("name,email", Person.Field.class), builder.build());
+	}
+
+	@Test
+	public void testBuilder_MergeMany() throws ParseException {
+		NarGraph<Person.Field> first = NarGraph.of("name,boat{name}", Person.Field.class);
+		NarGraph<Person.Field> second = NarGraph.of("email,boat{type}", Person.Field.class);
+		NarGraph.Builder<Person.Field> builder = NarGraph.Builder.of(Person.Field.class);
+		for (int i = 0; i < 1000; ++i)
+			builder.add(i % 2 == 0 ? first : second);
+		Assert.assertEquals(NarGraph.of("name,email,boat{name,type}", Person.Field.class), builder.build());
+	}
+
+	@Test
+	public void testToString_Cached() throws ParseException {
+		NarGraph<Person.Field> graph = NarGraph.of("name,boat{name}", Person.Field.class);
+		Assert.assertSame("string representation should be built only once", graph.toString(), graph.toString());
+	}
+
+	@Test
+	public void testCodec() throws ParseException {
+		NarGraph<Person.Field> graph = NarGraph.of("name,email,boat{name,skipper{name}}", Person.Field.class);
+		byte[] bytes = NarGraphCodec.encode(graph);
+		Assert.assertEquals(NarGraphCodec.getEncodedSize(graph), bytes.length);
+		Assert.assertTrue("encoded graph should be shorter than its string representation", bytes.length < graph.toString().length());
+		Assert.assertEquals(graph, NarGraphCodec.decode(bytes, Person.Field.class));
+		Assert.assertEquals(NarGraph.noneOf(Person.Field.class), NarGraphCodec.decode(NarGraphCodec.encode(NarGraph.noneOf(Person.Field.class)), Person.Field.class));
+		NarGraph<Jumbo> jumbo = NarGraph.of(Jumbo.f01, Jumbo.f64, Jumbo.f69);
+		Assert.assertEquals(jumbo, NarGraphCodec.decode(NarGraphCodec.encode(jumbo), Jumbo.class));
+	}
+
+	@Test
+	public void testCodec_Buffer() throws ParseException {
+		NarGraph<Person.Field> first = NarGraph.of("name,boat{name}", Person.Field.class);
+		NarGraph<Boat.Field> second = NarGraph.of(Boat.Field.type);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(NarGraphCodec.getEncodedSize(first) + NarGraphCodec.getEncodedSize(second));
+		NarGraphCodec.encode(first, buffer);
+		NarGraphCodec.encode(second, buffer);
+		Assert.assertFalse(buffer.hasRemaining());
+		buffer.flip();
+		Assert.assertEquals(first, NarGraphCodec.decode(buffer, Person.Field.class));
+		Assert.assertEquals(second, NarGraphCodec.decode(buffer, Boat.Field.class));
+		Assert.assertFalse("decoding should consume whole buffer", buffer.hasRemaining());
+	}
+
+	@Test
+	public void testCodec_Error() {
+		byte[] bytes = NarGraphCodec.encode(NarGraph.of(Person.Field.name, Person.Field.boat));
+		try {
+			NarGraphCodec.decode(Arrays.copyOf(bytes, bytes.length - 1), Person.Field.class);
+			Assert.fail("Expected ParseException");
+		} catch (ParseException e) {
+			Assert.assertEquals(bytes.length - 1, e.getErrorOffset());
+		}
+		try {
+			NarGraphCodec.decode(new byte[] { 2, 0, 0 }, Person.Field.class);
+			Assert.fail("Expected ParseException");
+		} catch (ParseException e) {
+			Assert.assertEquals(0, e.getErrorOffset());
+		}
+		try {
+			NarGraphCodec.decode(NarGraphCodec.encode(NarGraph.of(Jumbo.f69)), Boat.Field.class);
+			Assert.fail("Expected ParseException");
+		} catch (ParseException e) {
+			Assert.assertEquals(1, e.getErrorOffset());
+		}
+	}
+
+	@Test
+	public void testAllOfDepth() {
+		Assert.assertEquals(NarGraph.allOf(Person.Field.class), NarGraph.allOf(Person.Field.class, 1));
+		NarGraph<Person.Field> graph = NarGraph.allOf(Person.Field.class, 3);
+		Assert.assertSame("expansions should be memoized", graph, NarGraph.allOf(Person.Field.class, 3));
+		Assert.assertEquals(NarGraph.allOf(Boat.Field.class, 2), graph.getGraph(Person.Field.boat));
+		Assert.assertEquals(NarGraph.allOf(Person.Field.class), graph.getGraph(Person.Field.boat, Boat.Field.class).getGraph(Boat.Field.skipper));
+		Assert.assertSame("expansions should share subgraphs", graph.getGraph(Person.Field.boat, Boat.Field.class).getGraph(Boat.Field.skipper),
+			graph.getGraph(Person.Field.boat, Boat.Field.class).getGraph(Boat.Field.crew));
+	}
+
+	@Test
+	public void testFromString_Wildcard() throws ParseException {
+		Assert.assertEquals(NarGraph.allOf(Person.Field.class), NarGraph.of("*", Person.Field.class));
+		Assert.assertEquals(NarGraph.Builder.of(Person.Field.class).add(Person.Field.name).add(Person.Field.boat, NarGraph.allOf(Boat.Field.class)).build(),
+			NarGraph.of("name,boat{*}", Person.Field.class));
+		Assert.assertEquals(NarGraph.Builder.of(Person.Field.class).add(Person.Field.boat, NarGraph.allOf(Boat.Field.class, 2)).build(),
+			NarGraph.of("boat{**:2}", Person.Field.class));
+		Assert.assertEquals("explicit subgraphs should be merged with expansion",
+			NarGraph.allOf(Person.Field.class).union(NarGraph.of("boat{skipper{name}}", Person.Field.class)),
+			NarGraph.of("*,boat{skipper{name}}", Person.Field.class));
+		Assert.assertEquals(NarGraph.allOf(Person.Field.class, 2), NarGraph.of("email,**:2,*", Person.Field.class));
+	}
+
+	@Test
+	public void testFromString_Error_Wildcard() {
+		for (String value : new String[] { "**", "**:", "**:0", "**:x", "name,*{name}", "**:1000" }) {
+			try {
+				NarGraphParser.parse(value, Person.Field.class);
+				Assert.fail("Expected ParseException for " + value);
+			} catch (ParseException e) {
+				// expected
+			}
+		}
+	}
+
+	/** Field type too large to fit into single {@code long} bitmask */
+	private enum Jumbo implements NarField {
+		f00, f01, f02, f03, f04, f05, f06, f07, f08, f09,
+		f10, f11, f12, f13, f14, f15, f16, f17, f18, f19,
+		f20, f21, f22, f23, f24, f25, f26, f27, f28, f29,
+		f30, f31, f32, f33, f34, f35, f36, f37, f38, f39,
+		f40, f41, f42, f43, f44, f45, f46, f47, f48, f49,
+		f50, f51, f52, f53, f54, f55, f56, f57, f58, f59,
+		f60, f61, f62, f63, f64, f65, f66, f67, f68, f69;
+		@Override
+		public <F extends Enum<F> & NarField> Class<F> getNarFieldClass() { return null; }
+	}
+
 	private <F extends Enum<F> & NarField> Set<F> top(NarGraph<F> fields) {
 		return new HashSet<>(fields);
 	}
@@ -1,8 +1,11 @@
 package com.steatoda.nar;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.junit.Assert;
@@ -10,10 +13,12 @@ import org.junit.Test;
 
 import com.google.common.collect.Sets;
 
+import com.steatoda.nar.demo.model.berth.Berth;
 import com.steatoda.nar.demo.model.boat.Boat;
 import com.steatoda.nar.demo.model.boat.BoatDemoData;
 import com.steatoda.nar.demo.model.marina.Marina;
 import com.steatoda.nar.demo.model.person.Person;
+import com.steatoda.nar.model.carrier.Carrier;
 
 public class NarObjectTest {
 
@@ -677,6 +682,299 @@ public class NarObjectTest {
 
 	}
 
+	@Test
+	public void testFieldsView() {
+
+		Person dummy = buildDummy();
+
+		Set<Person.Field> fields = dummy.getFields();
+		Assert.assertEquals(EnumSet.allOf(Person.Field.class), fields);
+
+		dummy.clearFields(Person.Field.email);
+		Assert.assertFalse("fields view should reflect cleared field", fields.contains(Person.Field.email));
+		Assert.assertFalse(dummy.hasFields(Person.Field.name, Person.Field.email));
+		Assert.assertTrue(dummy.hasFields(NarGraph.of(Person.Field.name, Person.Field.boat)));
+
+		fields.remove(Person.Field.name);
+		Assert.assertNull("field removed through view should be unavailable", dummy.getIfPresent(dummy::getName, Person.Field.name));
+
+		Set<Person.Field> newFields = EnumSet.of(Person.Field.name);
+		dummy.setFields(newFields);
+		newFields.add(Person.Field.email);
+		Assert.assertEquals("set fields should be copied", EnumSet.of(Person.Field.name), dummy.getFields());
+
+		dummy.setEmail("dummy@bar.com");
+		Assert.assertEquals("setter should initialize field", EnumSet.of(Person.Field.name, Person.Field.email), fields);
+
+		fields.removeIf(field -> field == Person.Field.name);
+		Assert.assertEquals(EnumSet.of(Person.Field.email), fields);
+
+	}
+
+	@Test
+	public void testHasFieldsAsString() {
+
+		Person dummy = buildDummy();
+		dummy.clearFields(Person.Field.email);
+
+		Assert.assertTrue(dummy.hasFieldsAsString("name"));
+		Assert.assertFalse(dummy.hasFieldsAsString("email"));
+		Assert.assertTrue(dummy.hasFieldsAsString("name", "boat"));
+		Assert.assertFalse(dummy.hasFieldsAsString(Arrays.asList("name", "email")));
+		Assert.assertEquals(Person.Field.permissions, dummy.parseField("permissions"));
+
+		try {
+			dummy.hasFieldsAsString("nickname");
+			Assert.fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+	}
+
+	@Test
+	public void testFieldAccessor() {
+
+		Marina marina = Marina.ref("marina");
+		marina.setName("Marina");
+		marina.setDepths(new Integer[][] { { 1, 2 }, { 3 } });
+
+		NarFieldAccessor<Marina, Marina.Field> accessor = marina.getFieldAccessor();
+		Assert.assertEquals("Marina", marina.getFieldValue(Marina.Field.name));
+		Assert.assertSame(marina.getDepths(), accessor.get(marina, Marina.Field.depths));
+
+		accessor.set(marina, Marina.Field.latitude, 45.0);
+		Assert.assertTrue("setting value should initialize field", marina.hasFields(Marina.Field.latitude));
+		Assert.assertEquals(Double.valueOf(45.0), marina.getLatitude());
+
+		Assert.assertTrue(marina.clearFields(Marina.Field.name, Marina.Field.berths));
+		Assert.assertEquals(EnumSet.of(Marina.Field.latitude, Marina.Field.depths), marina.getFields());
+
+		// default accessor can only clear values
+		Person dummy = buildDummy();
+		try {
+			dummy.getFieldAccessor().set(dummy, Person.Field.name, "Foo");
+			Assert.fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		dummy.getFieldAccessor().set(dummy, Person.Field.name, null);
+		Assert.assertNull(dummy.getName());
+
+	}
+
+	@Test
+	public void testMissingGraphSignature() {
+
+		Person first = buildDummy();
+		Person second = buildDummy();
+		second.setId("other");
+		Assert.assertEquals(first.getFieldsSignature(), second.getFieldsSignature());
+
+		NarGraph<Person.Field> graph = NarGraph.of(Person.Field.name, Person.Field.email, Person.Field.boat);
+		Assert.assertTrue(first.hasGraph(graph));
+		Assert.assertTrue(first.getMissingGraph(graph).isEmpty());
+
+		first.clearFields(Person.Field.email);
+		second.clearFields(Person.Field.email);
+		NarGraph<Person.Field> missing = first.getMissingGraph(graph);
+		Assert.assertEquals(NarGraph.of(Person.Field.email), missing);
+		Assert.assertSame("objects with same fields should share missing graph", missing, second.getMissingGraph(graph));
+		Assert.assertFalse(second.hasGraph(graph));
+
+		// same result as walking the graph
+		NarGraph.Builder<Person.Field> builder = NarGraph.Builder.of(Person.Field.class);
+		second._appendMissingGraph(graph, builder);
+		Assert.assertEquals(builder.build(), missing);
+
+		Assert.assertSame(graph, Person.ref("empty").getMissingGraph(graph));
+
+		// interleaved field sets keep sharing missing graphs
+		Person third = buildDummy();
+		third.clearFields(Person.Field.name);
+		NarGraph<Person.Field> missingName = third.getMissingGraph(graph);
+		Assert.assertSame(missing, second.getMissingGraph(graph));
+		Assert.assertSame(missingName, third.getMissingGraph(graph));
+
+	}
+
+	@Test
+	public void testMissingGraphOverriddenHook() {
+
+		List<Carrier.Field> visited = new ArrayList<>();
+		Carrier carrier = new Carrier() {
+			@Override
+			public void appendMissingGraph(Carrier.Field field, NarGraph<Carrier.Field> requestedGraph, NarGraph.Builder<Carrier.Field> missingGraphBuilder) {
+				visited.add(field);
+				super.appendMissingGraph(field, requestedGraph, missingGraphBuilder);
+			}
+		};
+		carrier.setName("Enterprise");
+
+		// hook is invoked for flat graphs, too
+		Assert.assertEquals(NarGraph.of(Carrier.Field.list), carrier.getMissingGraph(NarGraph.of(Carrier.Field.name, Carrier.Field.list)));
+		Assert.assertEquals(Arrays.asList(Carrier.Field.name, Carrier.Field.list), visited);
+
+	}
+
+	@Test
+	public void testCloneShared() {
+
+		Marina marina = Marina.ref("marina");
+		marina.setName("Marina");
+		marina.setManager(buildDummy());
+		marina.setDepths(new Integer[][] { { 1, 2 }, { 3 } });
+		Integer[][] depths = marina.getDepths();
+		Person manager = marina.getManager();
+
+		Marina clone = marina.cloneShared();
+		Assert.assertEquals(marina.getFields(), clone.getFields());
+		Assert.assertTrue("depths should be shared", clone.isShared(Marina.Field.depths));
+
+		// reading doesn't copy anything
+		Assert.assertSame(marina.getName(), clone.getName());
+		Assert.assertSame(depths, clone.getDepths());
+		Assert.assertSame(manager, clone.getManager());
+		Assert.assertTrue("depths should still be shared", clone.isShared(Marina.Field.depths));
+
+		// mutable values are copied when unshared, before being modified in place
+		clone.unshare(Marina.Field.depths);
+		Assert.assertNotSame(depths, clone.getDepths());
+		Assert.assertFalse("depths should not be shared anymore", clone.isShared(Marina.Field.depths));
+		Assert.assertSame(clone.getDepths(), clone.getDepths());
+		clone.getDepths()[0][0] = 42;
+		Assert.assertEquals(Integer.valueOf(1), marina.getDepths()[0][0]);
+
+		// modifying sub-objects in place (e.g. intersecting) unshares them first
+		clone.intersect(NarGraph.Builder.of(Marina.Field.class)
+			.add(Marina.Field.manager, NarGraph.of(Person.Field.name))
+			.build()
+		);
+		Assert.assertNotSame(manager, clone.getManager());
+		Assert.assertFalse("clone's manager should be intersected", clone.getManager().getFields().contains(Person.Field.email));
+		Assert.assertTrue("original manager should be left intact", manager.getFields().contains(Person.Field.email));
+
+		// replaced values are never copied
+		clone.setManager(Person.ref("other"));
+		Assert.assertFalse("manager should not be shared anymore", clone.isShared(Marina.Field.manager));
+		Assert.assertSame(manager, marina.getManager());
+		Assert.assertEquals("Dummy", marina.getManager().getName());
+
+		// objects without dedicated field accessor fall back to full clones
+		Person dummy = buildDummy();
+		Person dummyClone = dummy.cloneShared();
+		Assert.assertNotSame(dummy.getBoat(), dummyClone.getBoat());
+
+	}
+
+	@Test
+	public void testFreeze() {
+
+		Marina marina = Marina.ref("marina");
+		marina.setName("Marina");
+		marina.setManager(buildDummy());
+		marina.setBerths(new ArrayList<>(Arrays.asList(Berth.ref("first"), Berth.ref("second"))));
+
+		Assert.assertSame(marina, marina.freeze());
+		Assert.assertTrue("marina should be frozen", marina.isFrozen());
+		Assert.assertTrue("manager should be frozen", marina.getManager().isFrozen());
+		Assert.assertTrue("berths should be frozen", marina.getBerths().get(0).isFrozen());
+
+		assertUnsupported(() -> marina.setName("Other"));
+		assertUnsupported(() -> marina.setId("other"));
+		assertUnsupported(() -> marina.getFields().remove(Marina.Field.name));
+		assertUnsupported(() -> marina.setFields(EnumSet.of(Marina.Field.name)));
+		assertUnsupported(() -> marina.clearFields(Marina.Field.name));
+		assertUnsupported(() -> marina.getBerths().add(Berth.ref("third")));
+		assertUnsupported(() -> marina.getManager().setName("Other"));
+		Assert.assertEquals("Marina", marina.getName());
+
+		Marina thawed = marina.thaw();
+		Assert.assertNotSame(marina, thawed);
+		Assert.assertFalse("thawed copy should not be frozen", thawed.isFrozen());
+		thawed.setName("Other");
+		thawed.unshare(Marina.Field.berths);
+		thawed.getBerths().add(Berth.ref("third"));
+		thawed.unshare(Marina.Field.manager);
+		thawed.getManager().setName("Other");
+		Assert.assertEquals("Marina", marina.getName());
+		Assert.assertEquals(2, marina.getBerths().size());
+		Assert.assertEquals("Dummy", marina.getManager().getName());
+
+		Person dummy = buildDummy();
+		Assert.assertSame(dummy, dummy.thaw());
+
+	}
+
+	@Test
+	public void testFreezeRejectedView() {
+
+		// accessor that accepts only ArrayList berths, like field declared as ArrayList would
+		Marina marina = new Marina() {
+			@Override
+			public NarFieldAccessor<Marina, Field> getFieldAccessor() {
+				NarFieldAccessor<Marina, Field> accessor = super.getFieldAccessor();
+				return new NarFieldAccessor<>() {
+					@Override
+					public Object get(Marina object, Field field) {
+						return accessor.get(object, field);
+					}
+					@Override
+					public void set(Marina object, Field field, Object value) {
+						accessor.set(object, field, field == Field.berths ? (ArrayList<?>) value : value);
+					}
+				};
+			}
+		};
+		marina.setId("marina");
+		List<Berth> berths = new ArrayList<>(Arrays.asList(Berth.ref("first")));
+		marina.setBerths(berths);
+
+		try {
+			marina.freeze();
+			Assert.fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			Assert.assertTrue("exception should name the field", e.getMessage().contains(Marina.Field.berths.name()));
+		}
+		Assert.assertFalse("marina should not be frozen", marina.isFrozen());
+		Assert.assertSame("berths should be left as they were", berths, marina.getBerths());
+		marina.setName("Marina");
+
+	}
+
+	@Test
+	public void testArrays() {
+
+		int[][] matrix = { { 1, 2 }, null, { 3 } };
+		int[][] matrixCopy = NarArrays.copyOf(matrix);
+		Assert.assertNotSame(matrix, matrixCopy);
+		Assert.assertNotSame(matrix[0], matrixCopy[0]);
+		Assert.assertTrue(Arrays.deepEquals(matrix, matrixCopy));
+
+		Object[][] mixed = { { 1, new double[] { 0.5 } }, { buildDummy() } };
+		Object[][] mixedCopy = NarArrays.copyOf(mixed);
+		Assert.assertNotSame(mixed[0][1], mixedCopy[0][1]);
+		Assert.assertTrue(Arrays.deepEquals(mixed, mixedCopy));
+		Assert.assertSame("plain copy should keep Nar objects", mixed[1][0], mixedCopy[1][0]);
+
+		Person[][] persons = { { buildDummy() } };
+		Person[][] personsClone = NarArrays.clone(persons, Boat.Field.crew, NarGraph.Builder.of(Boat.Field.class).add(Boat.Field.crew, NarGraph.of(Person.Field.name)).build());
+		Assert.assertNotSame(persons[0][0], personsClone[0][0]);
+		Assert.assertEquals(EnumSet.of(Person.Field.name), personsClone[0][0].getFields());
+
+		Assert.assertNull(NarArrays.copyOf((Integer[][]) null));
+
+	}
+
+	private static void assertUnsupported(Runnable runnable) {
+		try {
+			runnable.run();
+			Assert.fail("Expected UnsupportedOperationException");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
 	private static Person buildDummy() {
 		Person dummy = new Person();
 		dummy.setId("dummy");
@@ -10,6 +10,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import com.steatoda.nar.NarArrays;
 import com.steatoda.nar.NarField;
 import com.steatoda.nar.NarGraph;
 import com.steatoda.nar.FieldUnavailableException;
@@ -31,7 +32,9 @@ public class Carrier extends NarEntityBase<String, Carrier, Carrier.Field> {
 		maplist			(Person.Field.class),
 		mapset			(Person.Field.class),
 		mapmap			(Person.Field.class),
-		mapentitylist	(Person.Field.class);
+		mapentitylist	(Person.Field.class),
+		array			(Person.Field.class),
+		arrayarray		(Person.Field.class);
 		
 		Field() { this(null); }
 		<F extends Enum<F> & NarField> Field(Class<F> clazz) { this.clazz = clazz; }
@@ -83,6 +86,12 @@ public class Carrier extends NarEntityBase<String, Carrier, Carrier.Field> {
 	public Map<Person, List<Person>> getMapEntityList() { return fieldGet(Field.mapentitylist, mapentitylist); }
 	public Carrier setMapEntityList(Map<Person, List<Person>> mapentitylist) { this.mapentitylist = fieldSet(Field.mapentitylist, Optional.ofNullable(mapentitylist).orElse(new HashMap<>(0))); return this; }
 
+	public Person[] getArray() { return fieldGet(Field.array, array); }
+	public Carrier setArray(Person[] array) { this.array = fieldSet(Field.array, Optional.ofNullable(array).orElse(new Person[0])); return this; }
+
+	public Person[][] getArrayArray() { return fieldGet(Field.arrayarray, arrayarray); }
+	public Carrier setArrayArray(Person[][] arrayarray) { this.arrayarray = fieldSet(Field.arrayarray, Optional.ofNullable(arrayarray).orElse(new Person[0][0])); return this; }
+
 	@Override
 	public Object pull(Field field, Carrier other, NarGraph<Field> graph) {
 		switch (field) {
@@ -97,6 +106,8 @@ public class Carrier extends NarEntityBase<String, Carrier, Carrier.Field> {
 			case mapset:		return pull(other, other::getMapSet,		this::setMapSet,		value -> value.entrySet().stream().map(entry -> new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().stream().map(object -> object.clone(field, graph)).collect(Collectors.toSet()))).collect(Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue)));
 			case mapmap:		return pull(other, other::getMapMap,		this::setMapMap,		value -> value.entrySet().stream().map(entry -> new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().entrySet().stream().map(entry2 -> new AbstractMap.SimpleEntry<>(entry2.getKey(), entry2.getValue().clone(field, graph))).collect(Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue)))).collect(Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue)));
 			case mapentitylist:	return pull(other, other::getMapEntityList,	this::setMapEntityList,	value -> value.entrySet().stream().map(entry -> new AbstractMap.SimpleEntry<>(entry.getKey().clone(field, graph), entry.getValue().stream().map(object -> object.clone(field, graph)).collect(Collectors.toList()))).collect(Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue)));
+			case array:			return pull(other, other::getArray,			this::setArray,			value -> NarArrays.clone(value, field, graph));
+			case arrayarray:	return pull(other, other::getArrayArray,	this::setArrayArray,	value -> NarArrays.clone(value, field, graph));
 		}
 		throw new FieldUnavailableException(field);
 	}
@@ -125,5 +136,7 @@ public class Carrier extends NarEntityBase<String, Carrier, Carrier.Field> {
 	private Map<String, Set<Person>> mapset;
 	private Map<String, Map<String, Person>> mapmap;
 	private Map<Person, List<Person>> mapentitylist;
+	private Person[] array;
+	private Person[][] arrayarray;
 	
 }
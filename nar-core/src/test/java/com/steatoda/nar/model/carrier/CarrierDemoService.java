@@ -105,6 +105,18 @@ public class CarrierDemoService implements CarrierService {
 					carrier.setMapEntityList(mapentitylist);
 					break;
 
+				case array:
+					carrier.setArray(buildList(personGraph).toArray(new Person[0]));
+					break;
+
+				case arrayarray:
+					carrier.setArrayArray(new Person[][] {
+						buildList(personGraph).toArray(new Person[0]),
+						null,
+						buildList(personGraph).toArray(new Person[0]),
+					});
+					break;
+
 			}
 			
 		}
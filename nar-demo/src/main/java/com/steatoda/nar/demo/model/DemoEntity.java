@@ -21,4 +21,10 @@ public abstract class DemoEntity<I, C extends DemoEntity<I, C, F>, F extends Enu
 		return super.getId();
 	}
 
+	/** Demo entities don't customize missing graph calculation */
+	@Override
+	public boolean isMissingGraphBySignature() {
+		return true;
+	}
+
 }
@@ -1,13 +1,17 @@
 package com.steatoda.nar.demo.model.berth;
 
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -41,6 +45,22 @@ public class BerthDemoService implements BerthService {
 		
 	}
 
+	@Override
+	public Map<String, Berth> getAll(Collection<String> ids, NarGraph<Berth.Field> fields) {
+
+		if (fields.isEmpty())
+			return ids.stream().distinct().collect(Collectors.toMap(Function.identity(), Berth::ref));
+
+		// NOTE: if this was SQL service, here we would build SELECT ... WHERE id IN (...) statement with only selected columns
+
+		Set<String> idSet = new HashSet<>(ids);
+
+		return BerthDemoData.$().parallelStream()
+			.filter(r -> idSet.contains(r.id))
+			.collect(Collectors.toMap(r -> r.id, r -> read(r, fields)));
+
+	}
+
 	@Override
 	public void create(Berth berth) {
 		
@@ -1,20 +1,20 @@
 package com.steatoda.nar.demo.model.marina;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.steatoda.nar.NarGenerate;
 import com.steatoda.nar.NarGraph;
 import com.steatoda.nar.NarField;
-import com.steatoda.nar.FieldUnavailableException;
+import com.steatoda.nar.NarFieldAccessor;
 import com.steatoda.nar.demo.model.DemoEntity;
 import com.steatoda.nar.demo.model.berth.Berth;
 import com.steatoda.nar.demo.model.person.Person;
 
 /** Place where boats sleep */
+@NarGenerate
 public class Marina extends DemoEntity<String, Marina, Marina.Field> {
 
 	public enum Field implements NarField {
@@ -75,20 +75,22 @@ public class Marina extends DemoEntity<String, Marina, Marina.Field> {
 
 	@Override
 	public Object pull(Field field, Marina other, NarGraph<Field> graph) {
-		switch (field) {
-			case name:		return pull(other, other::getName,		this::setName);
-			case manager:	return pull(other, other::getManager,	this::setManager,	value -> value.clone(field, graph));
-			case latitude:	return pull(other, other::getLatitude,	this::setLatitude);
-			case longitude:	return pull(other, other::getLongitude,	this::setLongitude);
-			case berths:	return pull(other, other::getBerths,	this::setBerths,	value -> value.stream().map(object -> object.clone(field, graph)).collect(Collectors.toList()));
-			case depths:	return pull(other, other::getDepths,	this::setDepths,	value -> Arrays.stream(value).map(Integer[]::clone).toArray(Integer[][]::new));
-		}
-		throw new FieldUnavailableException(field);
+		return Marina_Nar.pull(this, field, other, graph);
+	}
+
+	@Override
+	public Marina clone(NarGraph<Field> graph) {
+		return Marina_Nar.clone(this, graph);
 	}
 
 	@Override
 	public Marina ref() {
-		return ref(getId());
+		return Marina_Nar.ref(this);
+	}
+
+	@Override
+	public NarFieldAccessor<Marina, Field> getFieldAccessor() {
+		return Marina_Nar.Accessor;
 	}
 
 	@Override
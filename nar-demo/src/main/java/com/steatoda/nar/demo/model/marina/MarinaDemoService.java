@@ -1,7 +1,7 @@
 package com.steatoda.nar.demo.model.marina;
 
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -15,6 +15,7 @@ import com.steatoda.nar.demo.DemoEventBus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.steatoda.nar.NarArrays;
 import com.steatoda.nar.NarGraph;
 import com.steatoda.nar.demo.model.berth.Berth;
 import com.steatoda.nar.demo.model.berth.BerthDemoService;
@@ -166,8 +167,12 @@ public class MarinaDemoService implements MarinaService {
 				case manager: marina.setManager(personService.get(record.managerId, graph.getGraph(field, Person.Field.class))); break;
 				case latitude: marina.setLatitude(record.latitute); break;
 				case longitude: marina.setLongitude(record.longitude); break;
-				case berths: marina.setBerths(record.berthIds.stream().map(id -> berthService.get(id, graph.getGraph(field, Berth.Field.class))).collect(Collectors.toList())); break;
-				case depths: marina.setDepths(Arrays.stream(record.depths).map(Integer[]::clone).toArray(Integer[][]::new)); break;
+				case berths: {
+					Map<String, Berth> berths = berthService.getAll(record.berthIds, graph.getGraph(field, Berth.Field.class));
+					marina.setBerths(record.berthIds.stream().map(berths::get).collect(Collectors.toList()));
+					break;
+				}
+				case depths: marina.setDepths(NarArrays.copyOf(record.depths)); break;
 			}
 
 		return marina;
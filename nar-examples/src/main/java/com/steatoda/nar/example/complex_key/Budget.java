@@ -1,12 +1,14 @@
 package com.steatoda.nar.example.complex_key;
 
-import com.steatoda.nar.FieldUnavailableException;
 import com.steatoda.nar.NarEntityBase;
 import com.steatoda.nar.NarField;
+import com.steatoda.nar.NarFieldAccessor;
+import com.steatoda.nar.NarGenerate;
 import com.steatoda.nar.NarGraph;
 import com.steatoda.nar.example.first_object.City;
 import com.steatoda.nar.example.first_object.Country;
 
+@NarGenerate
 public class Budget extends NarEntityBase<Budget.Key, Budget, Budget.Field> {
 
 	public static class Key {
@@ -75,17 +77,22 @@ public class Budget extends NarEntityBase<Budget.Key, Budget, Budget.Field> {
 
 	@Override
 	public Object pull(Field field, Budget other, NarGraph<Field> graph) {
-		switch (field) {
-			case country:	return pull(other, other::getCountry,	this::setCountry,	value -> value.clone(field, graph));
-			case city:		return pull(other, other::getCity,		this::setCity,		value -> value.clone(field, graph));
-			case amount:	return pull(other, other::getAmount,	this::setAmount);
-		}
-		throw new FieldUnavailableException(field);
+		return Budget_Nar.pull(this, field, other, graph);
+	}
+
+	@Override
+	public Budget clone(NarGraph<Field> graph) {
+		return Budget_Nar.clone(this, graph);
 	}
 
 	@Override
 	public Budget ref() {
-		return ref(getId());
+		return Budget_Nar.ref(this);
+	}
+
+	@Override
+	public NarFieldAccessor<Budget, Field> getFieldAccessor() {
+		return Budget_Nar.Accessor;
 	}
 
 	private Country country;
@@ -12,10 +12,14 @@ import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.Table;
 import org.jooq.exception.NoDataFoundException;
+import org.jooq.impl.DSL;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * <p>Implementation of {@link NarCRUDService} using <a href="https://www.jooq.org/">jOOQ</a>.</p>
@@ -60,6 +64,24 @@ public abstract class NarJooqService<I, C extends NarEntity<I, C, F>, F extends
 		}
 	}
 
+	@Override
+	public Map<I, C> getAll(Collection<I> ids, NarGraph<F> graph) {
+		Map<I, C> entities = new HashMap<>();
+		if (ids.isEmpty())
+			return entities;
+		getDSLContext()
+			.select(buildDQLFields(graph, true))
+			.from(table)
+			.where(buildIdentityCondition(ids))
+			.fetch()
+			.forEach(record -> {
+				C entity = resolveRecord(record.into(table), graph);
+				entities.put(entity.getId(), entity);
+			})
+		;
+		return entities;
+	}
+
 	/**
 	 * <p>Builds collection of jOOQ's {@link Field}s to retrieve from database for given Nar fields.</p>
 	 *
@@ -126,6 +148,19 @@ public abstract class NarJooqService<I, C extends NarEntity<I, C, F>, F extends
 	 */
 	protected abstract Condition buildIdentityCondition(I id);
 
+	/**
+	 * <p>Builds {@code WHERE} condition that selects entities with given IDs.</p>
+	 *
+	 * <p>Defaults to disjunction of {@link #buildIdentityCondition(Object)}s. Override to build {@code id IN (...)} condition instead.</p>
+	 *
+	 * @param ids IDs for which to build condition
+	 *
+	 * @return condition that matches given IDs
+	 */
+	protected Condition buildIdentityCondition(Collection<I> ids) {
+		return DSL.or(ids.stream().map(this::buildIdentityCondition).collect(Collectors.toList()));
+	}
+
 	/**
 	 * <p>Builds {@code WHERE} condition that selects exactly one entity equal to the given one.</p>
 	 *
@@ -0,0 +1,206 @@
+package com.steatoda.nar.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/** Model of class annotated with {@code NarGenerate}: its field enum and getter/setter pair for each field. */
+final class NarClass {
+
+	static final String NarObjectName = "com.steatoda.nar.NarObject";
+	static final String NarEntityName = "com.steatoda.nar.NarEntity";
+
+	/** One {@code NarField} constant together with its accessors */
+	static final class Property {
+
+		Property(String name, String getterName, TypeMirror type, String setterName, TypeMirror setterType) {
+			this.name = name;
+			this.getterName = getterName;
+			this.type = type;
+			this.setterName = setterName;
+			this.setterType = setterType;
+		}
+
+		/** Returns field enum constant name. */
+		String getName() { return name; }
+		String getGetterName() { return getterName; }
+		/** Returns getter's return type (as member of annotated class). */
+		TypeMirror getType() { return type; }
+		String getSetterName() { return setterName; }
+		/** Returns setter's parameter type (as member of annotated class). */
+		TypeMirror getSetterType() { return setterType; }
+
+		private final String name;
+		private final String getterName;
+		private final TypeMirror type;
+		private final String setterName;
+		private final TypeMirror setterType;
+
+	}
+
+	/**
+	 * Resolves model for annotated {@code element}.
+	 *
+	 * @param env processing environment
+	 * @param element annotated element
+	 *
+	 * @return resolved model
+	 *
+	 * @throws ProcessingException if {@code element} is not suitable for code generation
+	 */
+	static NarClass resolve(ProcessingEnvironment env, Element element) throws ProcessingException {
+
+		Elements elements = env.getElementUtils();
+		Types types = env.getTypeUtils();
+
+		if (element.getKind() != ElementKind.CLASS)
+			throw new ProcessingException("@NarGenerate can only be applied to classes", element);
+		TypeElement clazz = (TypeElement) element;
+		Set<Modifier> modifiers = clazz.getModifiers();
+		if (modifiers.contains(Modifier.ABSTRACT))
+			throw new ProcessingException("@NarGenerate can't be applied to abstract classes", clazz);
+		if (modifiers.contains(Modifier.PRIVATE))
+			throw new ProcessingException("@NarGenerate can't be applied to private classes", clazz);
+		if (!clazz.getTypeParameters().isEmpty())
+			throw new ProcessingException("@NarGenerate can't be applied to generic classes", clazz);
+		if (clazz.getNestingKind() != NestingKind.TOP_LEVEL && (clazz.getNestingKind() != NestingKind.MEMBER || !modifiers.contains(Modifier.STATIC)))
+			throw new ProcessingException("@NarGenerate can only be applied to top-level or static nested classes", clazz);
+		if (ElementFilter.constructorsIn(clazz.getEnclosedElements()).stream().noneMatch(constructor -> constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)))
+			throw new ProcessingException("@NarGenerate requires non-private no-arg constructor", clazz);
+
+		TypeElement narObject = elements.getTypeElement(NarObjectName);
+		if (narObject == null)
+			throw new ProcessingException(NarObjectName + " not found on classpath", clazz);
+		DeclaredType narObjectType = findSupertype(types, clazz.asType(), narObject);
+		if (narObjectType == null || narObjectType.getTypeArguments().size() != 2)
+			throw new ProcessingException("@NarGenerate can only be applied to " + NarObjectName + " implementations", clazz);
+		TypeMirror fieldsType = narObjectType.getTypeArguments().get(1);
+		if (fieldsType.getKind() != TypeKind.DECLARED || ((DeclaredType) fieldsType).asElement().getKind() != ElementKind.ENUM)
+			throw new ProcessingException("Can't resolve field enum for " + clazz.getQualifiedName(), clazz);
+		TypeElement fields = (TypeElement) ((DeclaredType) fieldsType).asElement();
+
+		TypeElement narEntity = elements.getTypeElement(NarEntityName);
+		boolean entity = narEntity != null && findSupertype(types, clazz.asType(), narEntity) != null;
+
+		DeclaredType type = (DeclaredType) clazz.asType();
+		List<ExecutableElement> methods = new ArrayList<>();
+		for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(clazz)))
+			if (!method.getModifiers().contains(Modifier.STATIC) && !method.getModifiers().contains(Modifier.PRIVATE))
+				methods.add(method);
+
+		List<Property> properties = new ArrayList<>();
+		for (Element constant : fields.getEnclosedElements()) {
+			if (constant.getKind() != ElementKind.ENUM_CONSTANT)
+				continue;
+			String name = constant.getSimpleName().toString();
+			String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			ExecutableElement getter = findGetter(methods, "get" + suffix);
+			if (getter == null)
+				getter = findGetter(methods, "is" + suffix);
+			if (getter == null)
+				throw new ProcessingException("No getter found for field " + name + " (expected get" + suffix + "() or is" + suffix + "())", clazz);
+			TypeMirror valueType = ((ExecutableType) types.asMemberOf(type, getter)).getReturnType();
+			ExecutableElement setter = null;
+			TypeMirror setterType = null;
+			for (ExecutableElement method : methods) {
+				if (!method.getSimpleName().contentEquals("set" + suffix) || method.getParameters().size() != 1)
+					continue;
+				TypeMirror parameterType = ((ExecutableType) types.asMemberOf(type, method)).getParameterTypes().get(0);
+				if (types.isAssignable(valueType, parameterType)) {
+					setter = method;
+					setterType = parameterType;
+					break;
+				}
+			}
+			if (setter == null)
+				throw new ProcessingException("No setter found for field " + name + " (expected set" + suffix + "(" + valueType + "))", clazz);
+			properties.add(new Property(name, getter.getSimpleName().toString(), valueType, setter.getSimpleName().toString(), setterType));
+		}
+
+		return new NarClass(clazz, fields, entity, properties, elements.getPackageOf(clazz).getQualifiedName().toString());
+
+	}
+
+	/**
+	 * Finds parameterization of {@code supertype} among {@code type}'s supertypes.
+	 *
+	 * @param types type utilities
+	 * @param type type whose supertypes to search
+	 * @param supertype supertype to find
+	 *
+	 * @return {@code supertype} as parameterized by {@code type}'s hierarchy, or {@code null} if {@code type} doesn't extend it
+	 */
+	static DeclaredType findSupertype(Types types, TypeMirror type, TypeElement supertype) {
+		if (type.getKind() != TypeKind.DECLARED)
+			return null;
+		if (((DeclaredType) type).asElement().equals(supertype))
+			return (DeclaredType) type;
+		for (TypeMirror direct : types.directSupertypes(type)) {
+			DeclaredType found = findSupertype(types, direct, supertype);
+			if (found != null)
+				return found;
+		}
+		return null;
+	}
+
+	private static ExecutableElement findGetter(List<ExecutableElement> methods, String name) {
+		for (ExecutableElement method : methods)
+			if (method.getSimpleName().contentEquals(name) && method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID)
+				return method;
+		return null;
+	}
+
+	private NarClass(TypeElement element, TypeElement fieldsElement, boolean entity, List<Property> properties, String packageName) {
+		this.element = element;
+		this.fieldsElement = fieldsElement;
+		this.entity = entity;
+		this.properties = Collections.unmodifiableList(properties);
+		this.packageName = packageName;
+	}
+
+	/** Returns annotated class. */
+	TypeElement getElement() { return element; }
+	/** Returns class' field enum. */
+	TypeElement getFieldsElement() { return fieldsElement; }
+	/** Returns {@code true} if annotated class implements {@code NarEntity}. */
+	boolean isEntity() { return entity; }
+	/** Returns properties in field enum's order. */
+	List<Property> getProperties() { return properties; }
+	String getPackageName() { return packageName; }
+
+	/** Returns simple name of generated class ({@code Outer_Inner_Nar} for nested classes). */
+	String getGeneratedSimpleName() {
+		StringBuilder name = new StringBuilder(element.getSimpleName());
+		for (Element enclosing = element.getEnclosingElement(); enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement())
+			name.insert(0, '_').insert(0, enclosing.getSimpleName());
+		return name.append("_Nar").toString();
+	}
+
+	/** Returns fully qualified name of generated class. */
+	String getGeneratedName() {
+		return packageName.isEmpty() ? getGeneratedSimpleName() : packageName + "." + getGeneratedSimpleName();
+	}
+
+	private final TypeElement element;
+	private final TypeElement fieldsElement;
+	private final boolean entity;
+	private final List<Property> properties;
+	private final String packageName;
+
+}
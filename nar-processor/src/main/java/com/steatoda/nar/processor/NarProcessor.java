@@ -0,0 +1,47 @@
+package com.steatoda.nar.processor;
+
+import java.io.IOException;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+
+/**
+ * <p>Generates {@code *_Nar} classes with field access code (direct getter/setter table exposed as
+ * {@code NarFieldAccessor}, {@code ref}, {@code pull} and {@code clone}) for classes annotated with
+ * {@code com.steatoda.nar.NarGenerate}.</p>
+ *
+ * <p>Processor doesn't depend on {@code nar-core}, Nar types are referenced by name only.</p>
+ */
+@SupportedAnnotationTypes(NarProcessor.AnnotationName)
+public class NarProcessor extends AbstractProcessor {
+
+	static final String AnnotationName = "com.steatoda.nar.NarGenerate";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				try {
+					new NarSourceWriter(processingEnv, NarClass.resolve(processingEnv, element)).write();
+				} catch (ProcessingException e) {
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.getElement());
+				} catch (IOException e) {
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write generated source: " + e.getMessage(), element);
+				}
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,479 @@
+package com.steatoda.nar.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * <p>Writes {@code *_Nar} class for resolved {@link NarClass}.</p>
+ *
+ * <p>Types are always written fully qualified, so generated source needs no imports. Values pulled from other objects
+ * are copied by {@code copy*} helpers generated per field (one helper per nesting level of collections, maps and arrays).</p>
+ */
+final class NarSourceWriter {
+
+	NarSourceWriter(ProcessingEnvironment env, NarClass narClass) {
+		this.env = env;
+		this.types = env.getTypeUtils();
+		this.narClass = narClass;
+		this.className = narClass.getElement().getQualifiedName().toString();
+		this.fieldsName = narClass.getFieldsElement().getQualifiedName().toString();
+		this.graphName = "com.steatoda.nar.NarGraph<" + fieldsName + ">";
+		this.narObject = env.getElementUtils().getTypeElement(NarClass.NarObjectName);
+		this.collection = env.getElementUtils().getTypeElement("java.util.Collection");
+		this.map = env.getElementUtils().getTypeElement("java.util.Map");
+		this.sortedSet = env.getElementUtils().getTypeElement("java.util.SortedSet");
+		this.sortedMap = env.getElementUtils().getTypeElement("java.util.SortedMap");
+		this.object = env.getElementUtils().getTypeElement("java.lang.Object").asType();
+	}
+
+	/**
+	 * Generates and writes source file.
+	 *
+	 * @throws IOException if source file couldn't be written
+	 */
+	void write() throws IOException {
+		String source = generate();
+		JavaFileObject file = env.getFiler().createSourceFile(narClass.getGeneratedName(), narClass.getElement());
+		try (Writer writer = file.openWriter()) {
+			writer.write(source);
+		}
+	}
+
+	private String generate() {
+
+		StringBuilder out = new StringBuilder();
+
+		if (!narClass.getPackageName().isEmpty())
+			out.append("package ").append(narClass.getPackageName()).append(";\n\n");
+
+		out.append("/**\n");
+		out.append(" * <p>Field access code for {@link ").append(className).append("}.</p>\n");
+		out.append(" *\n");
+		out.append(" * <p>Generated by {@code ").append(NarProcessor.class.getName()).append("}, do not edit.</p>\n");
+		out.append(" */\n");
+		out.append("final class ").append(narClass.getGeneratedSimpleName()).append(" {\n\n");
+
+		writeAccessor(out);
+		writeRef(out);
+		writeGet(out);
+		writeSet(out);
+		writePull(out);
+		writeClone(out);
+
+		out.append(helpers);
+
+		out.append("\tprivate ").append(narClass.getGeneratedSimpleName()).append("() {}\n\n");
+		out.append("}\n");
+
+		return out.toString();
+
+	}
+
+	private void writeAccessor(StringBuilder out) {
+		String generated = narClass.getGeneratedSimpleName();
+		String accessor = "com.steatoda.nar.NarFieldAccessor<" + className + ", " + fieldsName + ">";
+		out.append("\t/** {@link com.steatoda.nar.NarFieldAccessor} backed by {@link #get} and {@link #set}. */\n");
+		out.append("\tstatic final ").append(accessor).append(" Accessor = new com.steatoda.nar.NarFieldAccessor<>() {\n");
+		out.append("\t\t@Override\n");
+		out.append("\t\tpublic Object get(").append(className).append(" object, ").append(fieldsName).append(" field) {\n");
+		out.append("\t\t\treturn ").append(generated).append(".get(object, field);\n");
+		out.append("\t\t}\n");
+		out.append("\t\t@Override\n");
+		out.append("\t\tpublic void set(").append(className).append(" object, ").append(fieldsName).append(" field, Object value) {\n");
+		out.append("\t\t\t").append(generated).append(".set(object, field, value);\n");
+		out.append("\t\t}\n");
+		out.append("\t};\n\n");
+	}
+
+	private void writeRef(StringBuilder out) {
+		out.append("\t/** Creates new instance").append(narClass.isEntity() ? " with the same ID as {@code object}" : "").append(". */\n");
+		out.append("\tstatic ").append(className).append(" ref(").append(className).append(" object) {\n");
+		out.append("\t\t").append(className).append(" ref = new ").append(className).append("();\n");
+		if (narClass.isEntity())
+			out.append("\t\tref.setId(object.getId());\n");
+		out.append("\t\treturn ref;\n");
+		out.append("\t}\n\n");
+	}
+
+	private void writeGet(StringBuilder out) {
+		out.append("\t/** Reads {@code field} through its getter. */\n");
+		out.append("\tstatic Object get(").append(className).append(" object, ").append(fieldsName).append(" field) {\n");
+		out.append("\t\tswitch (field) {\n");
+		for (NarClass.Property property : narClass.getProperties()) {
+			out.append("\t\t\tcase ").append(property.getName()).append(":\n");
+			out.append("\t\t\t\treturn object.").append(property.getGetterName()).append("();\n");
+		}
+		out.append("\t\t}\n");
+		out.append("\t\tthrow new com.steatoda.nar.FieldUnavailableException(field);\n");
+		out.append("\t}\n\n");
+	}
+
+	private void writeSet(StringBuilder out) {
+		StringBuilder cases = new StringBuilder();
+		boolean unchecked = false;
+		for (NarClass.Property property : narClass.getProperties()) {
+			TypeMirror type = property.getSetterType();
+			String value;
+			if (type.getKind().isPrimitive()) {
+				value = "value == null ? " + defaultValue(type.getKind()) + " : (" + types.boxedClass(types.getPrimitiveType(type.getKind())).getQualifiedName() + ") value";
+			} else {
+				String typeName = typeName(type);
+				unchecked |= typeName.indexOf('<') >= 0 || type.getKind() == TypeKind.TYPEVAR;
+				value = "(" + typeName + ") value";
+			}
+			cases.append("\t\t\tcase ").append(property.getName()).append(":\n");
+			cases.append("\t\t\t\tobject.").append(property.getSetterName()).append("(").append(value).append(");\n");
+			cases.append("\t\t\t\treturn;\n");
+		}
+		out.append("\t/** Writes {@code field} through its setter ({@code null} is written as default value for primitive fields). */\n");
+		if (unchecked)
+			out.append("\t@SuppressWarnings(\"unchecked\")\n");
+		out.append("\tstatic void set(").append(className).append(" object, ").append(fieldsName).append(" field, Object value) {\n");
+		out.append("\t\tswitch (field) {\n");
+		out.append(cases);
+		out.append("\t\t}\n");
+		out.append("\t\tthrow new com.steatoda.nar.FieldUnavailableException(field);\n");
+		out.append("\t}\n\n");
+	}
+
+	private void writePull(StringBuilder out) {
+		out.append("\t/** Implements {@code pull(field, other, graph)} for {@code object}. */\n");
+		out.append("\tstatic Object pull(").append(className).append(" object, ").append(fieldsName).append(" field, ").append(className).append(" other, ").append(graphName).append(" graph) {\n");
+		out.append("\t\tswitch (field) {\n");
+		for (NarClass.Property property : narClass.getProperties()) {
+			String copy = copyExpression(property.getType(), "value", property.getName());
+			out.append("\t\t\tcase ").append(property.getName()).append(": {\n");
+			out.append("\t\t\t\t").append(typeName(property.getType())).append(" value = other.").append(property.getGetterName()).append("();\n");
+			if (copy.equals("value")) {
+				out.append("\t\t\t\tif (other != object)\n");
+				out.append("\t\t\t\t\tobject.").append(property.getSetterName()).append("(value);\n");
+			} else {
+				out.append("\t\t\t\tif (other != object) {\n");
+				out.append("\t\t\t\t\tvalue = ").append(copy).append(";\n");
+				out.append("\t\t\t\t\tobject.").append(property.getSetterName()).append("(value);\n");
+				out.append("\t\t\t\t}\n");
+			}
+			out.append("\t\t\t\treturn value;\n");
+			out.append("\t\t\t}\n");
+		}
+		out.append("\t\t}\n");
+		out.append("\t\tthrow new com.steatoda.nar.FieldUnavailableException(field);\n");
+		out.append("\t}\n\n");
+	}
+
+	private void writeClone(StringBuilder out) {
+		out.append("\t/** Implements {@code clone(graph)} for {@code object}. */\n");
+		out.append("\tstatic ").append(className).append(" clone(").append(className).append(" object, ").append(graphName).append(" graph) {\n");
+		out.append("\t\tif (!object.getFields().containsAll(graph)) {\n");
+		out.append("\t\t\tjava.util.Set<").append(fieldsName).append("> missing = java.util.EnumSet.noneOf(").append(fieldsName).append(".class);\n");
+		out.append("\t\t\tmissing.addAll(graph);\n");
+		out.append("\t\t\tmissing.removeAll(object.getFields());\n");
+		out.append("\t\t\tthrow new com.steatoda.nar.FieldUnavailableException(missing);\n");
+		out.append("\t\t}\n");
+		out.append("\t\t").append(className).append(" clone = ref(object);\n");
+		for (NarClass.Property property : narClass.getProperties()) {
+			String field = fieldsName + "." + property.getName();
+			out.append("\t\tif (graph.contains(").append(field).append("))\n");
+			out.append("\t\t\tpull(clone, ").append(field).append(", object, graph);\n");
+		}
+		out.append("\t\treturn clone;\n");
+		out.append("\t}\n\n");
+	}
+
+	/**
+	 * Returns expression that copies {@code value} of given {@code type}, generating helper methods if needed.
+	 * Expression may refer to {@code field} and {@code graph} variables.
+	 */
+	private String copyExpression(TypeMirror type, String value, String property) {
+		switch (type.getKind()) {
+			case ARRAY: {
+				if (!needsCopy(((ArrayType) type).getComponentType()))
+					return value + " == null ? null : " + value + ".clone()";
+				return writeArrayHelper((ArrayType) type, property) + "(" + value + ", field, graph)";
+			}
+			case DECLARED: {
+				if (isSubtype(type, narObject))
+					return value + " == null ? null : " + value + ".clone(field, graph)";
+				if (isSubtype(type, collection) || isSubtype(type, map)) {
+					String helper = writeContainerHelper((DeclaredType) type, property);
+					if (helper != null)
+						return helper + "(" + value + ", field, graph)";
+					env.getMessager().printMessage(Diagnostic.Kind.WARNING, "Don't know how to copy " + type + " (field " + property + "), copying it by reference", narClass.getElement());
+				}
+				return value;
+			}
+			default:
+				return value;
+		}
+	}
+
+	private boolean needsCopy(TypeMirror type) {
+		switch (type.getKind()) {
+			case ARRAY:
+				return true;
+			case DECLARED:
+				return isSubtype(type, narObject) || isSubtype(type, collection) || isSubtype(type, map);
+			default:
+				return false;
+		}
+	}
+
+	private String writeArrayHelper(ArrayType type, String property) {
+
+		String name = nextHelperName(property);
+		String typeName = typeName(type);
+
+		TypeMirror base = type;
+		int dimensions = 0;
+		while (base.getKind() == TypeKind.ARRAY) {
+			base = ((ArrayType) base).getComponentType();
+			++dimensions;
+		}
+		String creation = "new " + typeName(types.erasure(base)) + "[value.length]" + "[]".repeat(dimensions - 1);
+		boolean unchecked = typeName.indexOf('<') >= 0;
+		if (unchecked)
+			creation = "(" + typeName + ") " + creation;
+
+		String element = copyExpression(type.getComponentType(), "value[i]", property);
+
+		StringBuilder out = new StringBuilder();
+		if (unchecked)
+			out.append("\t@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+		out.append("\tprivate static ").append(typeName).append(" ").append(name).append("(").append(typeName).append(" value, ").append(fieldsName).append(" field, ").append(graphName).append(" graph) {\n");
+		out.append("\t\tif (value == null)\n");
+		out.append("\t\t\treturn null;\n");
+		out.append("\t\t").append(typeName).append(" copy = ").append(creation).append(";\n");
+		out.append("\t\tfor (int i = 0; i < value.length; ++i)\n");
+		out.append("\t\t\tcopy[i] = ").append(element).append(";\n");
+		out.append("\t\treturn copy;\n");
+		out.append("\t}\n\n");
+		helpers.append(out);
+
+		return name;
+
+	}
+
+	/** Returns helper name, or {@code null} if there's no known way to instantiate copy of {@code type} */
+	private String writeContainerHelper(DeclaredType type, String property) {
+
+		boolean isMap = isSubtype(type, map);
+		boolean sorted = isSubtype(type, isMap ? sortedMap : sortedSet);
+
+		List<? extends TypeMirror> arguments = NarClass.findSupertype(types, type, isMap ? map : collection).getTypeArguments();
+		TypeMirror key = isMap && !arguments.isEmpty() ? upperBound(arguments.get(0)) : null;
+		TypeMirror element = arguments.isEmpty() ? object : upperBound(arguments.get(isMap ? 1 : 0));
+
+		// resolve implementation to instantiate
+		TypeElement typeElement = (TypeElement) type.asElement();
+		String implementation;
+		String variableType;
+		if (typeElement.getKind() == ElementKind.CLASS && !typeElement.getModifiers().contains(Modifier.ABSTRACT) && hasPublicNoArgConstructor(typeElement)) {
+			implementation = typeElement.getQualifiedName().toString();
+			StringBuilder resolved = new StringBuilder(implementation);
+			if (!type.getTypeArguments().isEmpty()) {
+				implementation += "<>";
+				resolved.append('<');
+				for (int i = 0; i < type.getTypeArguments().size(); ++i)
+					resolved.append(i == 0 ? "" : ", ").append(typeName(upperBound(type.getTypeArguments().get(i))));
+				resolved.append('>');
+			}
+			variableType = resolved.toString();
+		} else {
+			String mapped = mapInterface(typeElement.getQualifiedName().toString());
+			if (mapped == null)
+				return null;
+			implementation = mapped + "<>";
+			variableType = mapped + "<" + (isMap ? typeName(key) + ", " : "") + typeName(element) + ">";
+		}
+
+		String creation;
+		if (sorted)
+			creation = "new " + implementation + "(value.comparator())";
+		else if (implementation.equals("java.util.ArrayList<>") || implementation.equals("java.util.ArrayDeque<>"))
+			creation = "new " + implementation + "(value.size())";
+		else
+			creation = "new " + implementation + "()";
+
+		String name = nextHelperName(property);
+		String typeName = typeName(type);
+
+		StringBuilder out = new StringBuilder();
+		out.append("\tprivate static ").append(typeName).append(" ").append(name).append("(").append(typeName).append(" value, ").append(fieldsName).append(" field, ").append(graphName).append(" graph) {\n");
+		out.append("\t\tif (value == null)\n");
+		out.append("\t\t\treturn null;\n");
+		out.append("\t\t").append(variableType).append(" copy = ").append(creation).append(";\n");
+		if (isMap) {
+			String keyCopy = copyExpression(key, "entry.getKey()", property);
+			String valueCopy = copyExpression(element, "entry.getValue()", property);
+			if (keyCopy.equals("entry.getKey()") && valueCopy.equals("entry.getValue()")) {
+				out.append("\t\tcopy.putAll(value);\n");
+			} else {
+				out.append("\t\tfor (java.util.Map.Entry<? extends ").append(typeName(key)).append(", ? extends ").append(typeName(element)).append("> entry : value.entrySet())\n");
+				out.append("\t\t\tcopy.put(").append(keyCopy).append(", ").append(valueCopy).append(");\n");
+			}
+		} else {
+			String elementCopy = copyExpression(element, "element", property);
+			if (elementCopy.equals("element")) {
+				out.append("\t\tcopy.addAll(value);\n");
+			} else {
+				out.append("\t\tfor (").append(typeName(element)).append(" element : value)\n");
+				out.append("\t\t\tcopy.add(").append(elementCopy).append(");\n");
+			}
+		}
+		out.append("\t\treturn copy;\n");
+		out.append("\t}\n\n");
+		helpers.append(out);
+
+		return name;
+
+	}
+
+	/** Returns implementation used when copying collection or map declared as given interface (or abstract class) */
+	private static String mapInterface(String name) {
+		switch (name) {
+			case "java.util.Collection":
+			case "java.util.List":
+				return "java.util.ArrayList";
+			case "java.util.Set":
+				return "java.util.HashSet";
+			case "java.util.SortedSet":
+			case "java.util.NavigableSet":
+				return "java.util.TreeSet";
+			case "java.util.Queue":
+			case "java.util.Deque":
+				return "java.util.ArrayDeque";
+			case "java.util.Map":
+				return "java.util.HashMap";
+			case "java.util.SortedMap":
+			case "java.util.NavigableMap":
+				return "java.util.TreeMap";
+			default:
+				return null;
+		}
+	}
+
+	private static boolean hasPublicNoArgConstructor(TypeElement element) {
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements()))
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC))
+				return true;
+		return false;
+	}
+
+	private String nextHelperName(String property) {
+		String base = "copy" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+		String name = base;
+		for (int i = 2; !helperNames.add(name); ++i)
+			name = base + i;
+		return name;
+	}
+
+	private boolean isSubtype(TypeMirror type, Element supertype) {
+		return supertype != null && types.isSubtype(types.erasure(type), types.erasure(supertype.asType()));
+	}
+
+	/** Resolves wildcards and type variables to their upper bounds, so they can be used in declarations */
+	private TypeMirror upperBound(TypeMirror type) {
+		switch (type.getKind()) {
+			case WILDCARD: {
+				TypeMirror bound = ((WildcardType) type).getExtendsBound();
+				return bound != null ? upperBound(bound) : object;
+			}
+			case TYPEVAR:
+				return upperBound(((TypeVariable) type).getUpperBound());
+			default:
+				return type;
+		}
+	}
+
+	/** Renders type as source code (fully qualified, without type annotations) */
+	private String typeName(TypeMirror type) {
+		switch (type.getKind()) {
+			case BOOLEAN:
+			case BYTE:
+			case SHORT:
+			case INT:
+			case LONG:
+			case CHAR:
+			case FLOAT:
+			case DOUBLE:
+				return type.getKind().name().toLowerCase(Locale.ROOT);
+			case ARRAY:
+				return typeName(((ArrayType) type).getComponentType()) + "[]";
+			case DECLARED: {
+				DeclaredType declared = (DeclaredType) type;
+				StringBuilder name = new StringBuilder(((TypeElement) declared.asElement()).getQualifiedName());
+				List<? extends TypeMirror> arguments = declared.getTypeArguments();
+				if (!arguments.isEmpty()) {
+					name.append('<');
+					for (int i = 0; i < arguments.size(); ++i)
+						name.append(i == 0 ? "" : ", ").append(typeName(arguments.get(i)));
+					name.append('>');
+				}
+				return name.toString();
+			}
+			case WILDCARD: {
+				WildcardType wildcard = (WildcardType) type;
+				if (wildcard.getExtendsBound() != null)
+					return "? extends " + typeName(wildcard.getExtendsBound());
+				if (wildcard.getSuperBound() != null)
+					return "? super " + typeName(wildcard.getSuperBound());
+				return "?";
+			}
+			case TYPEVAR:
+				return ((TypeVariable) type).asElement().getSimpleName().toString();
+			default:
+				return type.toString();
+		}
+	}
+
+	private static String defaultValue(TypeKind kind) {
+		switch (kind) {
+			case BOOLEAN:	return "false";
+			case BYTE:		return "(byte) 0";
+			case SHORT:		return "(short) 0";
+			case CHAR:		return "'\\0'";
+			case LONG:		return "0L";
+			case FLOAT:		return "0f";
+			case DOUBLE:	return "0d";
+			default:		return "0";
+		}
+	}
+
+	private final ProcessingEnvironment env;
+	private final Types types;
+	private final NarClass narClass;
+	private final String className;
+	private final String fieldsName;
+	private final String graphName;
+	private final TypeElement narObject;
+	private final TypeElement collection;
+	private final TypeElement map;
+	private final TypeElement sortedSet;
+	private final TypeElement sortedMap;
+	private final TypeMirror object;
+	/** Generated {@code copy*} helpers */
+	private final StringBuilder helpers = new StringBuilder();
+	private final Set<String> helperNames = new HashSet<>();
+
+}
@@ -0,0 +1,19 @@
+package com.steatoda.nar.processor;
+
+import javax.lang.model.element.Element;
+
+/** Signals that source element can't be processed; reported as compilation error on {@link #getElement()}. */
+class ProcessingException extends Exception {
+
+	ProcessingException(String message, Element element) {
+		super(message);
+		this.element = element;
+	}
+
+	Element getElement() { return element; }
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient Element element;
+
+}
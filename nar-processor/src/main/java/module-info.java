@@ -0,0 +1,10 @@
+/**
+ * <p>Annotation processor generating field access code for classes annotated with {@code com.steatoda.nar.NarGenerate}.</p>
+ */
+module com.steatoda.nar.processor {
+
+	requires java.compiler;
+
+	provides javax.annotation.processing.Processor with com.steatoda.nar.processor.NarProcessor;
+
+}
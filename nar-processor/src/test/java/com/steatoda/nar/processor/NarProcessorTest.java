@@ -0,0 +1,399 @@
+package com.steatoda.nar.processor;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import com.steatoda.nar.NarFieldAccessor;
+import com.steatoda.nar.NarGraph;
+import com.steatoda.nar.NarObject;
+
+// generated classes are compiled and loaded at runtime, so they can only be used through raw Nar types
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class NarProcessorTest {
+
+	@Test
+	public void testGeneratedSource() throws IOException {
+		Compilation compilation = compile(Part, Ship);
+		assertThat(compilation).succeededWithoutWarnings();
+		String source = compilation.generatedSourceFile("test.Ship_Nar").orElseThrow(AssertionError::new).getCharContent(false).toString();
+		Assert.assertTrue("primitive field should be set to its default value on null", source.contains("object.setLength(value == null ? 0 : (java.lang.Integer) value);"));
+		Assert.assertTrue("sub-object should be cloned using field's subgraph", source.contains("value == null ? null : value.clone(field, graph)"));
+		Assert.assertTrue("array of primitives should be cloned", source.contains("value == null ? null : value.clone()"));
+	}
+
+	@Test
+	public void testGetSet() throws ReflectiveOperationException {
+
+		Loader loader = new Loader(compile(Part, Ship));
+		NarObject ship = loader.create("test.Ship");
+		NarFieldAccessor accessor = ship.getFieldAccessor();
+		Enum name = field(ship, "name");
+		Enum length = field(ship, "length");
+
+		accessor.set(ship, name, "Flying Dutchman");
+		accessor.set(ship, length, 42);
+		Assert.assertEquals("name should be set through setter", "Flying Dutchman", accessor.get(ship, name));
+		Assert.assertEquals("length should be set through setter", 42, accessor.get(ship, length));
+		Assert.assertTrue("setters should mark fields as present", ship.getFields().containsAll(Arrays.asList(name, length)));
+
+		accessor.set(ship, length, null);
+		Assert.assertEquals("null should be written as primitive's default value", 0, accessor.get(ship, length));
+
+	}
+
+	@Test
+	public void testPull() throws ReflectiveOperationException {
+
+		Loader loader = new Loader(compile(Part, Ship));
+		NarObject ship = loader.createShip();
+		NarObject pulled = loader.create("test.Ship");
+		NarGraph graph = NarGraph.allOf(ship.getFieldsClass(), 2);
+		NarFieldAccessor accessor = ship.getFieldAccessor();
+
+		for (Enum field : (Enum[]) ship.getFieldsClass().getEnumConstants()) {
+			Object value = pulled.pull(field, ship, graph);
+			Assert.assertSame("pull should return value written to target", accessor.get(pulled, field), value);
+		}
+
+		assertCopied(ship, pulled);
+
+		Enum owner = field(ship, "owner");
+		Object value = accessor.get(ship, owner);
+		Assert.assertSame("pulling from itself should keep value", value, ship.pull(owner, ship, graph));
+		Assert.assertSame("pulling from itself shouldn't copy value", value, accessor.get(ship, owner));
+
+	}
+
+	@Test
+	public void testClone() throws ReflectiveOperationException {
+
+		Loader loader = new Loader(compile(Part, Ship));
+		NarObject ship = loader.createShip();
+
+		NarObject clone = ship.clone(NarGraph.allOf(ship.getFieldsClass(), 2));
+		Assert.assertEquals("clone should hold all fields", ship.getFields(), clone.getFields());
+		assertCopied(ship, clone);
+
+		Enum name = field(ship, "name");
+		NarObject partial = ship.clone(NarGraph.of((List) Arrays.asList(name)));
+		Assert.assertEquals("clone should hold only requested fields", Arrays.asList(name), new ArrayList<>(partial.getFields()));
+		Assert.assertEquals("clone should copy requested fields", "Flying Dutchman", partial.getFieldAccessor().get(partial, name));
+
+	}
+
+	@Test
+	public void testMissingGetter() {
+		Compilation compilation = compile(JavaFileObjects.forSourceLines("test.Bad",
+			"package test;",
+			"",
+			"import com.steatoda.nar.NarField;",
+			"import com.steatoda.nar.NarGenerate;",
+			"import com.steatoda.nar.NarGraph;",
+			"import com.steatoda.nar.NarObjectBase;",
+			"",
+			"@NarGenerate",
+			"public class Bad extends NarObjectBase<Bad, Bad.Field> {",
+			"	public enum Field implements NarField {",
+			"		name;",
+			"		@Override public <F extends Enum<F> & NarField> Class<F> getNarFieldClass() { return null; }",
+			"	}",
+			"	public Bad() { super(Field.class); }",
+			"	public void setName(String name) { fieldSet(Field.name, name); }",
+			"	@Override public Object pull(Field field, Bad other, NarGraph<Field> graph) { return null; }",
+			"	@Override public Bad ref() { return new Bad(); }",
+			"}"
+		));
+		assertThat(compilation).failed();
+		assertThat(compilation).hadErrorContaining("No getter found for field name (expected getName() or isName())");
+	}
+
+	@Test
+	public void testMissingSetter() {
+		Compilation compilation = compile(JavaFileObjects.forSourceLines("test.Bad",
+			"package test;",
+			"",
+			"import com.steatoda.nar.NarField;",
+			"import com.steatoda.nar.NarGenerate;",
+			"import com.steatoda.nar.NarGraph;",
+			"import com.steatoda.nar.NarObjectBase;",
+			"",
+			"@NarGenerate",
+			"public class Bad extends NarObjectBase<Bad, Bad.Field> {",
+			"	public enum Field implements NarField {",
+			"		name;",
+			"		@Override public <F extends Enum<F> & NarField> Class<F> getNarFieldClass() { return null; }",
+			"	}",
+			"	public Bad() { super(Field.class); }",
+			"	public String getName() { return fieldGet(Field.name, null); }",
+			"	public void setName(Integer name) {}",
+			"	@Override public Object pull(Field field, Bad other, NarGraph<Field> graph) { return null; }",
+			"	@Override public Bad ref() { return new Bad(); }",
+			"}"
+		));
+		assertThat(compilation).failed();
+		assertThat(compilation).hadErrorContaining("No setter found for field name (expected setName(java.lang.String))");
+	}
+
+	@Test
+	public void testNonEnumFields() {
+		Compilation compilation = compile(JavaFileObjects.forSourceLines("test.Bad",
+			"package test;",
+			"",
+			"import com.steatoda.nar.NarGenerate;",
+			"import com.steatoda.nar.NarGraph;",
+			"import com.steatoda.nar.NarObjectBase;",
+			"",
+			"@NarGenerate",
+			"public class Bad extends NarObjectBase<Bad, Bad.Field> {",
+			"	public Bad() { super(null); }",
+			"	@Override public Object pull(Field field, Bad other, NarGraph<Field> graph) { return null; }",
+			"	@Override public Bad ref() { return new Bad(); }",
+			"}"
+		));
+		assertThat(compilation).failed();
+		assertThat(compilation).hadErrorContaining("Can't resolve field enum for test.Bad");
+	}
+
+	@Test
+	public void testNotNarObject() {
+		Compilation compilation = compile(JavaFileObjects.forSourceLines("test.Bad",
+			"package test;",
+			"",
+			"import com.steatoda.nar.NarGenerate;",
+			"",
+			"@NarGenerate",
+			"public class Bad {",
+			"}"
+		));
+		assertThat(compilation).failed();
+		assertThat(compilation).hadErrorContaining("@NarGenerate can only be applied to com.steatoda.nar.NarObject implementations");
+	}
+
+	/** Checks that {@code copy} holds {@code ship}'s values, with sub-objects, collections, maps and arrays copied. */
+	private static void assertCopied(NarObject ship, NarObject copy) {
+
+		NarFieldAccessor accessor = ship.getFieldAccessor();
+
+		Assert.assertEquals("scalar should be copied", "Flying Dutchman", accessor.get(copy, field(ship, "name")));
+		Assert.assertEquals("primitive should be copied", 42, accessor.get(copy, field(ship, "length")));
+
+		NarObject owner = (NarObject) accessor.get(ship, field(ship, "owner"));
+		NarObject ownerCopy = (NarObject) accessor.get(copy, field(ship, "owner"));
+		Assert.assertNotSame("sub-object should be cloned", owner, ownerCopy);
+		Assert.assertEquals("sub-object should be cloned with its fields", "Davy Jones", label(ownerCopy));
+
+		List<NarObject> parts = (List<NarObject>) accessor.get(ship, field(ship, "parts"));
+		List<NarObject> partsCopy = (List<NarObject>) accessor.get(copy, field(ship, "parts"));
+		Assert.assertNotSame("collection should be copied", parts, partsCopy);
+		Assert.assertEquals("collection should be copied with all elements", parts.size(), partsCopy.size());
+		Assert.assertNotSame("collection elements should be cloned", parts.get(0), partsCopy.get(0));
+		Assert.assertEquals("collection elements should be cloned with their fields", "mast", label(partsCopy.get(0)));
+
+		Map<String, NarObject> spares = (Map<String, NarObject>) accessor.get(ship, field(ship, "spares"));
+		Map<String, NarObject> sparesCopy = (Map<String, NarObject>) accessor.get(copy, field(ship, "spares"));
+		Assert.assertNotSame("map should be copied", spares, sparesCopy);
+		Assert.assertEquals("map should be copied with all keys", spares.keySet(), sparesCopy.keySet());
+		Assert.assertNotSame("map values should be cloned", spares.get("sail"), sparesCopy.get("sail"));
+		Assert.assertEquals("map values should be cloned with their fields", "jib", label(sparesCopy.get("sail")));
+
+		int[] decks = (int[]) accessor.get(ship, field(ship, "decks"));
+		int[] decksCopy = (int[]) accessor.get(copy, field(ship, "decks"));
+		Assert.assertNotSame("array should be copied", decks, decksCopy);
+		Assert.assertArrayEquals("array should be copied with all elements", decks, decksCopy);
+
+		Object[] boats = (Object[]) accessor.get(ship, field(ship, "boats"));
+		Object[] boatsCopy = (Object[]) accessor.get(copy, field(ship, "boats"));
+		Assert.assertNotSame("array of sub-objects should be copied", boats, boatsCopy);
+		Assert.assertEquals("array of sub-objects should keep its component type", boats.getClass(), boatsCopy.getClass());
+		Assert.assertNotSame("array elements should be cloned", boats[0], boatsCopy[0]);
+		Assert.assertEquals("array elements should be cloned with their fields", "dinghy", label((NarObject) boatsCopy[0]));
+
+	}
+
+	private static Compilation compile(JavaFileObject... sources) {
+		return javac().withProcessors(new NarProcessor()).compile(sources);
+	}
+
+	private static Enum field(NarObject object, String name) {
+		return Enum.valueOf(object.getFieldsClass(), name);
+	}
+
+	private static Object label(NarObject part) {
+		return part.getFieldAccessor().get(part, field(part, "label"));
+	}
+
+	/** Loads classes compiled (and generated) by {@link #compile(JavaFileObject...)} */
+	private static class Loader extends ClassLoader {
+
+		Loader(Compilation compilation) {
+			super(NarProcessorTest.class.getClassLoader());
+			assertThat(compilation).succeeded();
+			this.compilation = compilation;
+		}
+
+		NarObject createShip() throws ReflectiveOperationException {
+
+			NarObject ship = create("test.Ship");
+			NarFieldAccessor accessor = ship.getFieldAccessor();
+
+			List<NarObject> parts = new ArrayList<>();
+			parts.add(createPart("mast"));
+			Map<String, NarObject> spares = new HashMap<>();
+			spares.put("sail", createPart("jib"));
+			Object[] boats = (Object[]) java.lang.reflect.Array.newInstance(loadClass("test.Part"), 1);
+			boats[0] = createPart("dinghy");
+
+			accessor.set(ship, field(ship, "name"), "Flying Dutchman");
+			accessor.set(ship, field(ship, "length"), 42);
+			accessor.set(ship, field(ship, "owner"), createPart("Davy Jones"));
+			accessor.set(ship, field(ship, "parts"), parts);
+			accessor.set(ship, field(ship, "spares"), spares);
+			accessor.set(ship, field(ship, "decks"), new int[] { 1, 2, 3 });
+			accessor.set(ship, field(ship, "boats"), boats);
+
+			return ship;
+
+		}
+
+		NarObject createPart(String label) throws ReflectiveOperationException {
+			NarObject part = create("test.Part");
+			part.getFieldAccessor().set(part, field(part, "label"), label);
+			return part;
+		}
+
+		NarObject create(String name) throws ReflectiveOperationException {
+			return (NarObject) loadClass(name).getConstructor().newInstance();
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			String path = "/" + name.replace('.', '/') + ".class";
+			for (JavaFileObject file : compilation.generatedFiles()) {
+				if (file.getKind() != JavaFileObject.Kind.CLASS || !file.toUri().getPath().endsWith(path))
+					continue;
+				try (InputStream input = file.openInputStream()) {
+					byte[] bytes = input.readAllBytes();
+					return defineClass(name, bytes, 0, bytes.length);
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
+				}
+			}
+			throw new ClassNotFoundException(name);
+		}
+
+		private final Compilation compilation;
+
+	}
+
+	private static final JavaFileObject Part = JavaFileObjects.forSourceLines("test.Part",
+		"package test;",
+		"",
+		"import com.steatoda.nar.NarField;",
+		"import com.steatoda.nar.NarFieldAccessor;",
+		"import com.steatoda.nar.NarGenerate;",
+		"import com.steatoda.nar.NarGraph;",
+		"import com.steatoda.nar.NarObjectBase;",
+		"",
+		"@NarGenerate",
+		"public class Part extends NarObjectBase<Part, Part.Field> {",
+		"",
+		"	public enum Field implements NarField {",
+		"		label;",
+		"		@Override public <F extends Enum<F> & NarField> Class<F> getNarFieldClass() { return null; }",
+		"	}",
+		"",
+		"	public Part() { super(Field.class); }",
+		"",
+		"	public String getLabel() { return fieldGet(Field.label, label); }",
+		"	public void setLabel(String label) { this.label = fieldSet(Field.label, label); }",
+		"",
+		"	@Override public Object pull(Field field, Part other, NarGraph<Field> graph) { return Part_Nar.pull(this, field, other, graph); }",
+		"	@Override public Part clone(NarGraph<Field> graph) { return Part_Nar.clone(this, graph); }",
+		"	@Override public Part ref() { return Part_Nar.ref(this); }",
+		"	@Override public NarFieldAccessor<Part, Field> getFieldAccessor() { return Part_Nar.Accessor; }",
+		"",
+		"	private String label;",
+		"",
+		"}"
+	);
+
+	private static final JavaFileObject Ship = JavaFileObjects.forSourceLines("test.Ship",
+		"package test;",
+		"",
+		"import java.util.List;",
+		"import java.util.Map;",
+		"",
+		"import com.steatoda.nar.NarField;",
+		"import com.steatoda.nar.NarFieldAccessor;",
+		"import com.steatoda.nar.NarGenerate;",
+		"import com.steatoda.nar.NarGraph;",
+		"import com.steatoda.nar.NarObjectBase;",
+		"",
+		"@NarGenerate",
+		"public class Ship extends NarObjectBase<Ship, Ship.Field> {",
+		"",
+		"	public enum Field implements NarField {",
+		"		name,",
+		"		length,",
+		"		owner	(Part.Field.class),",
+		"		parts	(Part.Field.class),",
+		"		spares	(Part.Field.class),",
+		"		decks,",
+		"		boats	(Part.Field.class);",
+		"		Field() { this(null); }",
+		"		<F extends Enum<F> & NarField> Field(Class<F> clazz) { this.clazz = clazz; }",
+		"		@Override",
+		"		@SuppressWarnings(\"unchecked\")",
+		"		public <F extends Enum<F> & NarField> Class<F> getNarFieldClass() { return (Class<F>) clazz; }",
+		"		private final Class<?> clazz;",
+		"	}",
+		"",
+		"	public Ship() { super(Field.class); }",
+		"",
+		"	public String getName() { return fieldGet(Field.name, name); }",
+		"	public void setName(String name) { this.name = fieldSet(Field.name, name); }",
+		"	public int getLength() { return fieldGet(Field.length, length); }",
+		"	public void setLength(int length) { this.length = fieldSet(Field.length, length); }",
+		"	public Part getOwner() { return fieldGet(Field.owner, owner); }",
+		"	public void setOwner(Part owner) { this.owner = fieldSet(Field.owner, owner); }",
+		"	public List<Part> getParts() { return fieldGet(Field.parts, parts); }",
+		"	public void setParts(List<Part> parts) { this.parts = fieldSet(Field.parts, parts); }",
+		"	public Map<String, Part> getSpares() { return fieldGet(Field.spares, spares); }",
+		"	public void setSpares(Map<String, Part> spares) { this.spares = fieldSet(Field.spares, spares); }",
+		"	public int[] getDecks() { return fieldGet(Field.decks, decks); }",
+		"	public void setDecks(int[] decks) { this.decks = fieldSet(Field.decks, decks); }",
+		"	public Part[] getBoats() { return fieldGet(Field.boats, boats); }",
+		"	public void setBoats(Part[] boats) { this.boats = fieldSet(Field.boats, boats); }",
+		"",
+		"	@Override public Object pull(Field field, Ship other, NarGraph<Field> graph) { return Ship_Nar.pull(this, field, other, graph); }",
+		"	@Override public Ship clone(NarGraph<Field> graph) { return Ship_Nar.clone(this, graph); }",
+		"	@Override public Ship ref() { return Ship_Nar.ref(this); }",
+		"	@Override public NarFieldAccessor<Ship, Field> getFieldAccessor() { return Ship_Nar.Accessor; }",
+		"",
+		"	private String name;",
+		"	private int length;",
+		"	private Part owner;",
+		"	private List<Part> parts;",
+		"	private Map<String, Part> spares;",
+		"	private int[] decks;",
+		"	private Part[] boats;",
+		"",
+		"}"
+	);
+
+}